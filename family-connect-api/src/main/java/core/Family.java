@@ -35,4 +35,37 @@ public interface Family {
     ConnectionEdge getConnection(Member p1, Member p2, boolean doBatchConnect);
 
     Member getPersonById(String fromPid);
+
+    /**
+     * Checks if two persons are connected directly or indirectly
+     *
+     * @param p1 Member 1
+     * @param p2 Member 2
+     * @return True if p1 and p2 are connected
+     */
+    default boolean areRelated(Member p1, Member p2) {
+        return getConnection(p1, p2, false) != null;
+    }
+
+    /**
+     * Cheap check to skip searches between persons, that can never be connected. False only if they are certainly not
+     * connected directly or indirectly, true doesn't mean they are.
+     *
+     * @param p1 Member 1
+     * @param p2 Member 2
+     * @return False if p1 and p2 are certainly not connected
+     */
+    default boolean mayBeRelated(Member p1, Member p2) {
+        return true;
+    }
+
+    /**
+     * Returns an immutable, consistent view of the family as of now, for long running reads that should neither block
+     * writers nor see their changes half applied.
+     *
+     * @return Snapshot of the family
+     */
+    default Family snapshot() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support snapshots");
+    }
 }
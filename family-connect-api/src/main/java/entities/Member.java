@@ -4,8 +4,6 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NonNull;
 
-import java.util.Objects;
-
 /**
  * Class to represent Member.
  */
@@ -37,7 +35,7 @@ public final class Member {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return id.hashCode(); // Cached by the String, unlike a hash of varargs
     }
 
     @Override
@@ -0,0 +1,36 @@
+package relationship;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+
+/**
+ * Relation along with the level its name implies, like GRANDFATHER at level 3 for "great-grandfather"
+ */
+@Getter
+@Accessors(fluent = true)
+@EqualsAndHashCode
+@ToString
+public final class LeveledRelation {
+    private final Relation relation;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final GenericRelation genericRelation;
+    private final int relationLevel;
+
+    public LeveledRelation(@NonNull Relation relation, int relationLevel) {
+        this.relation = relation;
+        this.genericRelation = (relation instanceof GenericRelation) ? (GenericRelation) relation
+                : ((SpecificRelation) relation).getGenericRelation();
+        this.relationLevel = relationLevel;
+    }
+
+    /**
+     * @return Gender of the relation, null if the relation is generic or gender neutral
+     */
+    public Boolean isRelationMale() {
+        return (relation instanceof SpecificRelation) ? ((SpecificRelation) relation).isRelationMale() : null;
+    }
+}
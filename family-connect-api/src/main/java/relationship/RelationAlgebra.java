@@ -0,0 +1,76 @@
+package relationship;
+
+/**
+ * Relation algebra of {@link GenericRelation} compiled into flat tables indexed by relation ordinal. Tables are generated
+ * once from the enum definitions, so hot paths resolve a composition with an array load instead of a virtual call into
+ * the enum constant bodies.
+ */
+public final class RelationAlgebra {
+    private static final GenericRelation[] RELATIONS = GenericRelation.values();
+    public static final int RELATION_COUNT = RELATIONS.length;
+    public static final byte NO_RELATION = -1;
+
+    private static final byte[] COMPOSITION = new byte[RELATION_COUNT * RELATION_COUNT];
+    private static final byte[] REVERSE = new byte[RELATION_COUNT];
+    private static final byte[] ALTERNATE = new byte[RELATION_COUNT];
+    private static final byte[] RELATION_LEVEL = new byte[RELATION_COUNT];
+
+    static {
+        for (GenericRelation relation : RELATIONS) {
+            int ordinal = relation.ordinal();
+            for (GenericRelation previousRelation : RELATIONS) {
+                COMPOSITION[ordinal * RELATION_COUNT + previousRelation.ordinal()] =
+                        ordinalOf(relation.getNextGenericRelation(previousRelation));
+            }
+            REVERSE[ordinal] = ordinalOf(relation.getReverseRelation());
+            ALTERNATE[ordinal] = ordinalOf(relation.getAlternateRelation());
+            RELATION_LEVEL[ordinal] = (byte) relation.getRelationLevel();
+        }
+    }
+
+    private RelationAlgebra() {
+    }
+
+    /**
+     * Composes a relation with the aggregate relation found so far, same as
+     * {@code relation.getNextGenericRelation(previousRelation)}
+     *
+     * @param relation         Ordinal of relation of the next hop
+     * @param previousRelation Ordinal of aggregate relation till the previous hop
+     * @return Ordinal of aggregate relation, {@link #NO_RELATION} if undefined
+     */
+    public static byte compose(int relation, int previousRelation) {
+        return COMPOSITION[relation * RELATION_COUNT + previousRelation];
+    }
+
+    public static GenericRelation compose(GenericRelation relation, GenericRelation previousRelation) {
+        return relationOf(compose(relation.ordinal(), previousRelation.ordinal()));
+    }
+
+    public static byte reverse(int relation) {
+        return REVERSE[relation];
+    }
+
+    public static byte alternate(int relation) {
+        return ALTERNATE[relation];
+    }
+
+    public static boolean isAlternate(GenericRelation relation, GenericRelation otherRelation) {
+        return relation == otherRelation || ALTERNATE[relation.ordinal()] == otherRelation.ordinal();
+    }
+
+    /**
+     * @return Default relation level of the relation, positive for elder generations
+     */
+    public static int relationLevel(int relation) {
+        return RELATION_LEVEL[relation];
+    }
+
+    public static GenericRelation relationOf(int ordinal) {
+        return ordinal == NO_RELATION ? null : RELATIONS[ordinal];
+    }
+
+    private static byte ordinalOf(GenericRelation relation) {
+        return relation == null ? NO_RELATION : (byte) relation.ordinal();
+    }
+}
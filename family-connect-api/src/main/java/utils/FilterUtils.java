@@ -24,9 +24,17 @@ public interface FilterUtils {
     static Collection<ConnectionEdge> filterConnectionsBySpecificRelation(GenericRelation genericRelation,
                                                                           Boolean isRelationGenderMale, int relationLevel,
                                                                           Collection<ConnectionEdge> allConnections) {
-        return filter(allConnections, connection -> connection.relationLevel() == relationLevel
-                && (isRelationGenderMale != null && connection.to().isGenderMale() == isRelationGenderMale)
-                && connection.relation().equals(genericRelation));
+        return filter(allConnections, bySpecificRelation(genericRelation, isRelationGenderMale, relationLevel));
+    }
+
+    /**
+     * @param isRelationGenderMale Gender of the relative, null for any
+     */
+    static Predicate<ConnectionEdge> bySpecificRelation(GenericRelation genericRelation, Boolean isRelationGenderMale,
+                                                        int relationLevel) {
+        return connection -> connection.relationLevel() == relationLevel
+                && (isRelationGenderMale == null || connection.to().isGenderMale() == isRelationGenderMale)
+                && connection.relation().equals(genericRelation);
     }
 
     static <T> Collection<T> filter(Collection<T> allConnections, Predicate<T> filterFunction) {
@@ -0,0 +1,199 @@
+package utils;
+
+import relationship.GenericRelation;
+import relationship.LeveledRelation;
+import relationship.Relation;
+import relationship.SpecificRelation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Relation names, looked up case-insensitively straight from the characters given, without allocating. Names cover
+ * generic and specific relations, their plurals and common aliases. Relations that span generations may be prefixed
+ * with any number of "great", each adding a generation to the level. Spaces, hyphens and underscores are ignored, so
+ * "Great-Grandfather", "great grandfather" and "GREAT_GRANDFATHER" are the same name.
+ */
+final class RelationLexicon {
+    private static final int MAX_NAME_LETTERS = 16; // Letters of a name, packed into two longs a letter per byte
+    private static final long GREAT = pack("great")[0];
+    private static final int MAX_CACHED_GREATS = 8; // Leveled relations with up to that many "great" are shared
+
+    private static final long[] lowKeys; // First 8 letters of names by slot, folded to lower case
+    private static final long[] highKeys; // Letters after the first 8
+    private static final Entry[] entries;
+    private static final int mask;
+
+    static {
+        List<Entry> lexicon = new ArrayList<>();
+        add(lexicon, GenericRelation.PARENT, "parent", "parents");
+        add(lexicon, GenericRelation.KIN, "kin", "kins");
+        add(lexicon, GenericRelation.CHILD, "child", "children", "kid", "kids");
+        add(lexicon, GenericRelation.NIBLING, "nibling", "niblings");
+        add(lexicon, GenericRelation.GRANDPARENT, "grandparent", "grandparents");
+        add(lexicon, GenericRelation.GRANDCHILD, "grandchild", "grandchildren", "grandkid", "grandkids");
+        add(lexicon, GenericRelation.SPOUSE, "spouse", "spouses");
+        add(lexicon, GenericRelation.SIBLING, "sibling", "siblings");
+        add(lexicon, GenericRelation.COUSIN, "cousin", "cousins");
+
+        add(lexicon, SpecificRelation.HUSBAND, "husband", "husbands", "hubby");
+        add(lexicon, SpecificRelation.WIFE, "wife", "wives");
+        add(lexicon, SpecificRelation.FATHER, "father", "fathers", "dad", "dads", "daddy", "papa", "pa");
+        add(lexicon, SpecificRelation.MOTHER, "mother", "mothers", "mom", "moms", "mum", "mums", "mommy", "mummy",
+                "mama", "ma");
+        add(lexicon, SpecificRelation.SON, "son", "sons");
+        add(lexicon, SpecificRelation.DAUGHTER, "daughter", "daughters");
+        add(lexicon, SpecificRelation.GRANDFATHER, "grandfather", "grandfathers", "grandpa", "grandpas", "granddad",
+                "granddads", "grandad", "gramps");
+        add(lexicon, SpecificRelation.GRANDMOTHER, "grandmother", "grandmothers", "grandma", "grandmas", "granny",
+                "gran", "nana");
+        add(lexicon, SpecificRelation.GRANDSON, "grandson", "grandsons");
+        add(lexicon, SpecificRelation.GRANDDAUGHTER, "granddaughter", "granddaughters");
+        add(lexicon, SpecificRelation.BROTHER, "brother", "brothers", "bro");
+        add(lexicon, SpecificRelation.SISTER, "sister", "sisters", "sis");
+        add(lexicon, SpecificRelation.UNCLE, "uncle", "uncles");
+        add(lexicon, SpecificRelation.AUNT, "aunt", "aunts", "auntie", "aunty");
+        add(lexicon, SpecificRelation.NEPHEW, "nephew", "nephews");
+        add(lexicon, SpecificRelation.NIECE, "niece", "nieces");
+        // A grand uncle is a great uncle, a generation beyond the uncle
+        addWithLevel(lexicon, SpecificRelation.UNCLE, 2, "granduncle", "granduncles");
+        addWithLevel(lexicon, SpecificRelation.AUNT, 2, "grandaunt", "grandaunts");
+        addWithLevel(lexicon, SpecificRelation.NEPHEW, -2, "grandnephew", "grandnephews");
+        addWithLevel(lexicon, SpecificRelation.NIECE, -2, "grandniece", "grandnieces");
+
+        int capacity = Integer.highestOneBit(lexicon.size() * 4 - 1) << 1; // Short probes, misses end fast
+        lowKeys = new long[capacity];
+        highKeys = new long[capacity];
+        entries = new Entry[capacity];
+        mask = capacity - 1;
+        for (Entry entry : lexicon) {
+            long[] key = pack(entry.name);
+            int slot = slotOf(key[0], key[1]);
+            while (entries[slot] != null) {
+                if (entries[slot].name.equals(entry.name)) {
+                    throw new IllegalStateException("Relation name " + entry.name + " defined twice");
+                }
+                slot = (slot + 1) & mask;
+            }
+            lowKeys[slot] = key[0];
+            highKeys[slot] = key[1];
+            entries[slot] = entry;
+        }
+    }
+
+    private RelationLexicon() {
+    }
+
+    /**
+     * Folds letters of the name into two longs in a single pass, dropping "great" prefixes as they are read, and
+     * probes the table with them
+     *
+     * @param name Relation name, in any case
+     * @return Relation with the level the name implies, null if the name is unknown
+     */
+    static LeveledRelation lookup(CharSequence name) {
+        long low = 0, high = 0;
+        int letters = 0, greats = 0;
+        for (int i = 0, length = name.length(); i < length; i++) {
+            char c = name.charAt(i);
+            if (c == ' ' || c == '-' || c == '_') {
+                continue;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c < 'a' || c > 'z' || letters == MAX_NAME_LETTERS) {
+                return null;
+            }
+            if (letters < Long.BYTES) {
+                low |= (long) c << (letters * Byte.SIZE);
+            } else {
+                high |= (long) c << ((letters - Long.BYTES) * Byte.SIZE);
+            }
+            // No name starts with "great", so it is always a prefix. Nothing is left of "great" alone, which is unknown.
+            if (++letters == 5 && low == GREAT) {
+                greats++;
+                low = 0;
+                letters = 0;
+            }
+        }
+        for (int slot = slotOf(low, high); entries[slot] != null; slot = (slot + 1) & mask) {
+            if (lowKeys[slot] == low && highKeys[slot] == high) {
+                return (greats == 0) ? entries[slot].leveledRelations[0] : entries[slot].withGreats(greats);
+            }
+        }
+        return null;
+    }
+
+    private static int slotOf(long low, long high) {
+        long hash = (low * 0x9E3779B97F4A7C15L + high) * 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash >>> 40) & mask;
+    }
+
+    private static long[] pack(String name) {
+        if (name.length() > MAX_NAME_LETTERS) {
+            throw new IllegalStateException("Relation name " + name + " is longer than " + MAX_NAME_LETTERS + " letters");
+        }
+        long[] key = new long[2];
+        for (int i = 0; i < name.length(); i++) {
+            key[i / Long.BYTES] |= (long) name.charAt(i) << ((i % Long.BYTES) * Byte.SIZE);
+        }
+        return key;
+    }
+
+    private static void add(List<Entry> lexicon, Relation relation, String... names) {
+        int relationLevel = (relation instanceof GenericRelation) ? ((GenericRelation) relation).getRelationLevel()
+                : ((SpecificRelation) relation).getGenericRelation().getRelationLevel();
+        addWithLevel(lexicon, relation, relationLevel, names);
+    }
+
+    private static void addWithLevel(List<Entry> lexicon, Relation relation, int relationLevel, String... names) {
+        for (String name : names) {
+            lexicon.add(new Entry(name, relation, relationLevel));
+        }
+    }
+
+    /**
+     * Relation of a name, along with its "great" forms if the relation spans generations
+     */
+    private static final class Entry {
+        private final String name;
+        private final LeveledRelation[] leveledRelations; // By number of "great"
+
+        private Entry(String name, Relation relation, int relationLevel) {
+            this.name = name;
+            var base = new LeveledRelation(relation, relationLevel);
+            if (!spansGenerations(base.genericRelation())) {
+                leveledRelations = new LeveledRelation[]{base};
+                return;
+            }
+            leveledRelations = new LeveledRelation[MAX_CACHED_GREATS + 1];
+            for (int greats = 0; greats <= MAX_CACHED_GREATS; greats++) {
+                leveledRelations[greats] = new LeveledRelation(relation, levelWithGreats(relationLevel, greats));
+            }
+        }
+
+        /**
+         * @return Relation of the name prefixed with "great" that many times, null if the relation doesn't take any
+         */
+        private LeveledRelation withGreats(int greats) {
+            if (leveledRelations.length == 1) {
+                return null;
+            }
+            if (greats < leveledRelations.length) {
+                return leveledRelations[greats];
+            }
+            LeveledRelation base = leveledRelations[0];
+            return new LeveledRelation(base.relation(), levelWithGreats(base.relationLevel(), greats));
+        }
+
+        private static int levelWithGreats(int relationLevel, int greats) {
+            return relationLevel > 0 ? relationLevel + greats : relationLevel - greats;
+        }
+
+        private static boolean spansGenerations(GenericRelation relation) {
+            return relation == GenericRelation.GRANDPARENT || relation == GenericRelation.GRANDCHILD
+                    || relation == GenericRelation.KIN || relation == GenericRelation.NIBLING;
+        }
+    }
+}
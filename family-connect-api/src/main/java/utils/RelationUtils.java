@@ -1,28 +1,41 @@
 package utils;
 
 import relationship.GenericRelation;
+import relationship.LeveledRelation;
 import relationship.Relation;
-import relationship.SpecificRelation;
 
 /**
  * Utility Class to deal with relation
  */
 public interface RelationUtils {
-    static GenericRelation parseToGenericRelation(String relation) {
-        relation = relation.toUpperCase();
-        try {
-            return GenericRelation.valueOf(relation);
-        } catch (IllegalArgumentException e) {
-            return SpecificRelation.valueOf(relation).getGenericRelation();
-        }
+    static GenericRelation parseToGenericRelation(CharSequence relation) {
+        return parseToLeveledRelation(relation).genericRelation();
+    }
+
+    static Relation parseToRelation(CharSequence relation) {
+        return parseToLeveledRelation(relation).relation();
     }
 
-    static Relation parseToRelation(String relation) {
-        relation = relation.toUpperCase();
-        try {
-            return GenericRelation.valueOf(relation);
-        } catch (IllegalArgumentException e) {
-            return SpecificRelation.valueOf(relation);
+    /**
+     * Parses a relation name in any case, including plurals, common aliases like "grandma", and "great" prefixes like
+     * "great-great-grandfather", into the relation and the level the name implies. Known names are parsed without
+     * allocating.
+     *
+     * @param relation Relation name
+     * @return Relation with its level
+     */
+    static LeveledRelation parseToLeveledRelation(CharSequence relation) {
+        LeveledRelation parsedRelation = RelationLexicon.lookup(relation);
+        if (parsedRelation == null) {
+            throw new IllegalArgumentException("No relation with name: " + relation);
         }
+        return parsedRelation;
+    }
+
+    /**
+     * @return True if the relation name can be parsed
+     */
+    static boolean isRelationName(CharSequence relation) {
+        return RelationLexicon.lookup(relation) != null;
     }
 }
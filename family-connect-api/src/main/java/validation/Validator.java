@@ -15,4 +15,20 @@ public interface Validator {
 
     boolean validate(Member p1, SpecificRelation specificRelation, Member p2, int relationLevel, Family family);
 
+    /**
+     * Links validators into a chain in the given order. The chain stops at the first validator that fails, so cheap
+     * validators on attributes of the persons should come before the ones that search the family.
+     *
+     * @param validators Validators in order
+     * @return First validator of the chain
+     */
+    static Validator chain(Validator... validators) {
+        if (validators.length == 0) {
+            throw new IllegalArgumentException("Validator chain needs at least one validator");
+        }
+        for (int i = 0; i + 1 < validators.length; i++) {
+            validators[i].setNextValidatorInChain(validators[i + 1]);
+        }
+        return validators[0];
+    }
 }
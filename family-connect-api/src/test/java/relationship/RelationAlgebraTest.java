@@ -0,0 +1,31 @@
+package relationship;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class RelationAlgebraTest {
+
+    @Test
+    public void testCompositionTableMatchesEnumDefinitions() {
+        for (GenericRelation relation : GenericRelation.values()) {
+            for (GenericRelation previousRelation : GenericRelation.values()) {
+                GenericRelation expected = relation.getNextGenericRelation(previousRelation);
+                assertNotNull(relation + " after " + previousRelation + " is undefined", expected);
+                assertEquals(expected, RelationAlgebra.compose(relation, previousRelation));
+                assertEquals(expected.ordinal(), RelationAlgebra.compose(relation.ordinal(), previousRelation.ordinal()));
+            }
+        }
+    }
+
+    @Test
+    public void testReverseAndAlternateTablesMatchEnumDefinitions() {
+        for (GenericRelation relation : GenericRelation.values()) {
+            assertEquals(relation.getReverseRelation().ordinal(), RelationAlgebra.reverse(relation.ordinal()));
+            assertEquals(relation.getAlternateRelation().ordinal(), RelationAlgebra.alternate(relation.ordinal()));
+            assertEquals(relation.getRelationLevel(), RelationAlgebra.relationLevel(relation.ordinal()));
+            assertEquals(relation, RelationAlgebra.relationOf(relation.ordinal()));
+        }
+    }
+}
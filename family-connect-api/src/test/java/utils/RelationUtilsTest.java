@@ -0,0 +1,50 @@
+package utils;
+
+import org.junit.Test;
+import relationship.GenericRelation;
+import relationship.LeveledRelation;
+import relationship.SpecificRelation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static utils.RelationUtils.isRelationName;
+import static utils.RelationUtils.parseToGenericRelation;
+import static utils.RelationUtils.parseToLeveledRelation;
+import static utils.RelationUtils.parseToRelation;
+
+public class RelationUtilsTest {
+
+    @Test
+    public void testNamesAliasesAndPluralsParsedInAnyCase() {
+        for (SpecificRelation relation : SpecificRelation.values()) {
+            if (relation != SpecificRelation.COUSIN) {
+                assertEquals(relation, parseToRelation(relation.name()));
+            }
+        }
+        for (GenericRelation relation : GenericRelation.values()) {
+            assertEquals(relation, parseToRelation(relation.name().toLowerCase()));
+        }
+        assertEquals(GenericRelation.PARENT, parseToRelation("Parents"));
+        assertEquals(GenericRelation.CHILD, parseToRelation(new StringBuilder("children")));
+        assertEquals(SpecificRelation.GRANDMOTHER, parseToRelation("grandMA"));
+        assertEquals(SpecificRelation.WIFE, parseToRelation("wives"));
+        assertEquals(GenericRelation.SIBLING, parseToGenericRelation("sis"));
+        assertFalse(isRelationName("stranger"));
+        assertFalse(isRelationName("great"));
+    }
+
+    @Test
+    public void testGreatPrefixesAddGenerations() {
+        assertEquals(new LeveledRelation(SpecificRelation.GRANDFATHER, 2), parseToLeveledRelation("grandfather"));
+        assertEquals(new LeveledRelation(SpecificRelation.GRANDFATHER, 4),
+                parseToLeveledRelation("Great-Great-Grandfather"));
+        assertEquals(new LeveledRelation(GenericRelation.GRANDCHILD, -3), parseToLeveledRelation("great grandchildren"));
+        assertEquals(new LeveledRelation(SpecificRelation.UNCLE, 3), parseToLeveledRelation("great_granduncle"));
+        assertEquals(new LeveledRelation(SpecificRelation.NIECE, -12),
+                parseToLeveledRelation("great".repeat(11) + "niece"));
+        assertSame(parseToLeveledRelation("great-aunt"), parseToLeveledRelation("GREAT AUNT"));
+        assertFalse(isRelationName("great-father"));
+        assertFalse(isRelationName("great-wife"));
+    }
+}
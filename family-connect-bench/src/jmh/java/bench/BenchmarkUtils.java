@@ -0,0 +1,35 @@
+package bench;
+
+import config.Config;
+import core.FamilyGraph;
+import entities.Member;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Utility class to prepare families for benchmarks
+ */
+public interface BenchmarkUtils {
+    long SEED = 42;
+
+    /**
+     * @param storage Storage engine as in property family.graph.storage
+     * @return Empty family with the validator chain of the application
+     */
+    static FamilyGraph newFamily(String storage) {
+        var config = new Config();
+        return new FamilyGraph(config.prepareValidator(), config.prepareGraphStore(storage, ""));
+    }
+
+    /**
+     * @return Members of tree in random order, to query them without a pattern
+     */
+    static Member[] shuffledMembers(FamilyTree tree) {
+        List<Member> members = new ArrayList<>(tree.getMembers());
+        Collections.shuffle(members, new Random(SEED));
+        return members.toArray(new Member[0]);
+    }
+}
@@ -0,0 +1,49 @@
+package bench;
+
+import core.FamilyGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import static bench.BenchmarkUtils.SEED;
+import static bench.BenchmarkUtils.newFamily;
+
+/**
+ * Builds the whole family tree per operation, connecting members one by one. Validation searches the family for every
+ * connection, so the tree is smaller than the one queried.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConnectBenchmark {
+    @Param({"6"})
+    public int depth;
+    @Param({"3"})
+    public int branching;
+    @Param({"100000"})
+    public int maxMembers;
+    @Param({"hash", "compact", "concurrent"})
+    public String storage;
+
+    private FamilyTree tree;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        tree = FamilyTree.generate(depth, branching, maxMembers, SEED);
+    }
+
+    @Benchmark
+    public FamilyGraph connectPersonsWithValidation() {
+        return tree.connectAll(newFamily(storage), true);
+    }
+
+    @Benchmark
+    public FamilyGraph connectPersonsWithoutValidation() {
+        return tree.connectAll(newFamily(storage), false);
+    }
+}
@@ -0,0 +1,78 @@
+package bench;
+
+import core.ClosureCache;
+import core.FamilyGraph;
+import core.SearchMode;
+import entities.ConnectionEdge;
+import entities.Member;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collection;
+import java.util.List;
+
+import static bench.BenchmarkUtils.SEED;
+import static bench.BenchmarkUtils.newFamily;
+import static bench.BenchmarkUtils.shuffledMembers;
+
+/**
+ * Queries on a family built once per trial, between members picked in random order
+ */
+@State(Scope.Thread)
+public class QueryBenchmark {
+    @Param({"8"})
+    public int depth;
+    @Param({"3"})
+    public int branching;
+    @Param({"1000000"})
+    public int maxMembers;
+    @Param({"hash", "compact", "concurrent"})
+    public String storage;
+    @Param({"FORWARD", "BIDIRECTIONAL"})
+    public SearchMode searchMode;
+    // 1 leaves every closure out of cache, as it can't hold even one
+    @Param({"1048576", "1"})
+    public long cachedConnections;
+
+    private FamilyGraph family;
+    private Member[] members;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void prepareFamily() {
+        FamilyTree tree = FamilyTree.generate(depth, branching, maxMembers, SEED);
+        family = tree.connectAll(newFamily(storage), false);
+        family.setSearchMode(searchMode);
+        family.setClosureCache(new ClosureCache(cachedConnections));
+        members = shuffledMembers(tree);
+    }
+
+    private Member nextMember() {
+        next = (next + 1 == members.length) ? 0 : next + 1;
+        return members[next];
+    }
+
+    @Benchmark
+    public ConnectionEdge getConnection() {
+        return family.getConnection(nextMember(), nextMember(), false);
+    }
+
+    @Benchmark
+    public List<ConnectionEdge> getShortestRelationChain() {
+        return family.getShortestRelationChain(nextMember(), nextMember());
+    }
+
+    @Benchmark
+    public Collection<ConnectionEdge> getAllConnectionsInFamilyForPerson() {
+        return family.getAllConnectionsInFamilyForPerson(nextMember(), false);
+    }
+
+    @Benchmark
+    public Collection<Member> getFamilyInOrderOfAge() {
+        return family.getFamilyInOrderOfAge(true);
+    }
+}
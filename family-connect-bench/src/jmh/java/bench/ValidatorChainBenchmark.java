@@ -0,0 +1,69 @@
+package bench;
+
+import core.FamilyGraph;
+import entities.ConnectionEdge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import validation.Validator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static bench.BenchmarkUtils.SEED;
+import static bench.BenchmarkUtils.newFamily;
+
+/**
+ * Validates connections of the family with the GenderValidator -> AgeValidator -> RelationshipValidator chain. Valid
+ * connections pass every validator, reversed parent connections fail on age before the relationship search.
+ */
+@State(Scope.Thread)
+public class ValidatorChainBenchmark {
+    @Param({"8"})
+    public int depth;
+    @Param({"3"})
+    public int branching;
+    @Param({"1000000"})
+    public int maxMembers;
+    @Param({"hash", "compact", "concurrent"})
+    public String storage;
+
+    private FamilyGraph family;
+    private Validator validator;
+    private ConnectionEdge[] connections;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void prepareFamily() {
+        FamilyTree tree = FamilyTree.generate(depth, branching, maxMembers, SEED);
+        family = tree.connectAll(newFamily(storage), false);
+        validator = family.getValidator();
+        List<ConnectionEdge> shuffledConnections = new ArrayList<>(tree.getConnections());
+        Collections.shuffle(shuffledConnections, new Random(SEED));
+        connections = shuffledConnections.toArray(new ConnectionEdge[0]);
+    }
+
+    private ConnectionEdge nextConnection() {
+        next = (next + 1 == connections.length) ? 0 : next + 1;
+        return connections[next];
+    }
+
+    @Benchmark
+    public boolean validateValidConnection() {
+        ConnectionEdge connection = nextConnection();
+        return validator.validate(connection.from(), connection.relation(), connection.to(), connection.relationLevel(),
+                family);
+    }
+
+    @Benchmark
+    public boolean validateReversedConnection() {
+        ConnectionEdge connection = nextConnection();
+        return validator.validate(connection.to(), connection.relation(), connection.from(), connection.relationLevel(),
+                family);
+    }
+}
@@ -0,0 +1,117 @@
+package bench;
+
+import core.FamilyGraph;
+import entities.ConnectionEdge;
+import entities.Member;
+import relationship.GenericRelation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic family tree, that starts with a couple and grows generation by generation. Every child is married to a new
+ * spouse and every couple has the same number of children, until depth or the maximum number of members is reached.
+ * Connections are valid in the order they are generated, so they can be replayed with validation on.
+ */
+public final class FamilyTree {
+    private static final int GENERATION_GAP = 25;
+
+    private final List<Member> members = new ArrayList<>();
+    private final List<ConnectionEdge> connections = new ArrayList<>();
+    private final int depth;
+
+    private FamilyTree(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Generates a family tree
+     *
+     * @param depth      Number of generations after the first couple
+     * @param branching  Number of children of every couple
+     * @param maxMembers Maximum number of members
+     * @param seed       Seed for genders and ages, same seed generates the same tree
+     * @return Family tree
+     */
+    public static FamilyTree generate(int depth, int branching, int maxMembers, long seed) {
+        if (depth < 0 || branching < 1 || maxMembers < 2) {
+            throw new IllegalArgumentException("Family tree needs depth >= 0, branching >= 1 and maxMembers >= 2, but got "
+                    + depth + ", " + branching + ", " + maxMembers);
+        }
+        var random = new Random(seed);
+        var tree = new FamilyTree(depth);
+        // Every generation is younger than the one before, as age validation expects
+        int oldestAge = (depth + 2) * GENERATION_GAP;
+        Member husband = tree.newMember(oldestAge, true);
+        Member wife = tree.newMember(oldestAge - 1, false);
+        tree.connections.add(new ConnectionEdge(husband, GenericRelation.SPOUSE, wife, 0));
+
+        List<Member[]> couples = Collections.singletonList(new Member[]{husband, wife});
+        for (int generation = 1; generation <= depth && tree.members.size() + 2 <= maxMembers; generation++) {
+            List<Member[]> nextCouples = new ArrayList<>(couples.size() * branching);
+            int age = oldestAge - generation * GENERATION_GAP;
+            for (Member[] couple : couples) {
+                for (int child = 0; child < branching && tree.members.size() + 2 <= maxMembers; child++) {
+                    boolean isMale = random.nextBoolean();
+                    Member member = tree.newMember(age - random.nextInt(GENERATION_GAP / 2), isMale);
+                    tree.connections.add(new ConnectionEdge(couple[0], GenericRelation.PARENT, member, 1));
+                    tree.connections.add(new ConnectionEdge(couple[1], GenericRelation.PARENT, member, 1));
+                    Member spouse = tree.newMember(age - random.nextInt(GENERATION_GAP / 2), !isMale);
+                    tree.connections.add(new ConnectionEdge(member, GenericRelation.SPOUSE, spouse, 0));
+                    nextCouples.add(new Member[]{member, spouse});
+                }
+            }
+            couples = nextCouples;
+        }
+        return tree;
+    }
+
+    private Member newMember(int age, boolean isMale) {
+        var member = new Member(String.valueOf(members.size()), "Member" + members.size(), age, isMale);
+        members.add(member);
+        return member;
+    }
+
+    /**
+     * Connects all the members of tree in family, in the order they were generated
+     *
+     * @param family     Family to connect members in
+     * @param doValidate Switch to turn validation on or off
+     * @return family
+     */
+    public FamilyGraph connectAll(FamilyGraph family, boolean doValidate) {
+        for (ConnectionEdge connection : connections) {
+            family.connectPersons(connection.from(), connection.relation(), connection.to(), connection.relationLevel(),
+                    doValidate);
+        }
+        return family;
+    }
+
+    public List<Member> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+
+    public List<ConnectionEdge> getConnections() {
+        return Collections.unmodifiableList(connections);
+    }
+
+    /**
+     * @return Generations requested, the tree may be shallower if it reached the maximum members
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public Member getRoot() {
+        return members.get(0);
+    }
+
+    /**
+     * @return Last member generated, from the youngest generation
+     */
+    public Member getLeaf() {
+        return members.get(members.size() - 1);
+    }
+}
@@ -0,0 +1,189 @@
+package bench;
+
+import entities.ConnectionEdge;
+import entities.Member;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Closed-loop load generator for the family REST service. Seeds the service with a synthetic family tree, then keeps a
+ * number of clients sending queries back to back for a while, each sending its next query once the last one returns.
+ * Prints throughput, latency percentiles and response statuses.
+ * <p>
+ * Queries are a mix of 70% connections between two random members, 20% children of a random member and 10%
+ * generations of a random member.
+ * <p>
+ * Run with: RestLoadGenerator baseUrl [clients=64] [seconds=30] [members=10000] [seed=true]
+ */
+public final class RestLoadGenerator {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build();
+    private final String baseUrl;
+    private final List<Member> members;
+
+    private RestLoadGenerator(String baseUrl, List<Member> members) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.members = members;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: RestLoadGenerator baseUrl [clients=64] [seconds=30] [members=10000] [seed=true]");
+            System.exit(1);
+        }
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int maxMembers = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        boolean doSeed = args.length <= 4 || Boolean.parseBoolean(args[4]);
+
+        var tree = FamilyTree.generate(32, 3, maxMembers, 42);
+        var generator = new RestLoadGenerator(args[0], tree.getMembers());
+        if (doSeed) {
+            long start = System.nanoTime();
+            generator.seed(tree.getConnections());
+            System.out.printf("Seeded %d members, %d connections in %d ms%n", tree.getMembers().size(),
+                    tree.getConnections().size(), (System.nanoTime() - start) / 1_000_000);
+        }
+        generator.run(clients, Duration.ofSeconds(seconds)).print(System.out::println);
+    }
+
+    /**
+     * Connects the members of tree one by one, in the order they were generated, so that validation passes
+     */
+    private void seed(List<ConnectionEdge> connections) throws IOException, InterruptedException {
+        for (ConnectionEdge connection : connections) {
+            var body = "{\"from\":" + toJson(connection.from()) + ",\"relation\":\"" + connection.relation().name()
+                    + "\",\"to\":" + toJson(connection.to()) + ",\"relationLevel\":" + connection.relationLevel() + "}";
+            var request = HttpRequest.newBuilder(URI.create(baseUrl + "/family/connections"))
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 != 2) {
+                throw new IllegalStateException("Seeding " + connection + " failed with " + response.statusCode() + ": "
+                        + response.body());
+            }
+        }
+    }
+
+    private Report run(int clients, Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        var report = new Report();
+        var threads = new ArrayList<Thread>(clients);
+        for (int i = 0; i < clients; i++) {
+            var thread = new Thread(() -> {
+                var latencies = new long[1 << 12];
+                int count = 0;
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    int status = send(nextQuery());
+                    long latency = System.nanoTime() - start;
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = latency;
+                    report.onResponse(status);
+                }
+                report.add(Arrays.copyOf(latencies, count));
+            }, "load-client-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report.elapsedNanos = duration.toNanos();
+        return report;
+    }
+
+    private URI nextQuery() {
+        var random = ThreadLocalRandom.current();
+        String memberId = members.get(random.nextInt(members.size())).getId();
+        int kind = random.nextInt(10);
+        if (kind < 7) {
+            String otherId = members.get(random.nextInt(members.size())).getId();
+            return URI.create(baseUrl + "/family/connection?from=" + memberId + "&to=" + otherId);
+        } else if (kind < 9) {
+            return URI.create(baseUrl + "/family/members/" + memberId + "/relatives?relation=CHILD");
+        }
+        return URI.create(baseUrl + "/family/members/" + memberId + "/generation?level=-1");
+    }
+
+    /**
+     * @return Status of response, 0 if no response came
+     */
+    private int send(URI uri) {
+        try {
+            var request = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT).GET().build();
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    private static String toJson(Member member) {
+        return "{\"id\":\"" + escapeJson(member.getId()) + "\",\"name\":\"" + escapeJson(member.getName())
+                + "\",\"age\":" + member.getAge() + ",\"male\":" + member.isGenderMale() + "}";
+    }
+
+    private static String escapeJson(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Latencies and statuses of responses, collected from all clients
+     */
+    private static final class Report {
+        private final List<long[]> latencies = new ArrayList<>();
+        private final Map<Integer, LongAdder> statusCounts = new ConcurrentSkipListMap<>();
+        private long elapsedNanos;
+
+        private synchronized void add(long[] clientLatencies) {
+            latencies.add(clientLatencies);
+        }
+
+        private void onResponse(int status) {
+            statusCounts.computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+
+        private void print(Consumer<String> out) {
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            if (all.length == 0) {
+                out.accept("No responses");
+                return;
+            }
+            out.accept(String.format("Requests: %d, throughput: %.0f/s", all.length,
+                    all.length * 1e9 / elapsedNanos));
+            out.accept(String.format("Latency us: p50 %d, p90 %d, p99 %d, p99.9 %d, max %d", percentile(all, 50),
+                    percentile(all, 90), percentile(all, 99), percentile(all, 99.9), all[all.length - 1] / 1_000));
+            // Status 0 counts requests that got no response
+            out.accept("Statuses: " + statusCounts);
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1_000;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.gakshintala.mylabspace.familyconnectdb.api.db;
+
+import core.Family;
+import core.FamilyGraph;
+import entities.ConnectionEdge;
+import entities.Member;
+import importer.FamilyImporter;
+import importer.ImportReport;
+import jooq.db.gen.tables.records.MemberRecord;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Record4;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Iterator;
+
+import static jooq.db.gen.tables.Member.MEMBER;
+import static jooq.db.gen.tables.RelationLine.RELATION_LINE;
+
+/**
+ * Rebuilds the in-memory family from the database on startup. Rows are streamed through a server-side cursor, a fetch
+ * size at a time, and go straight into a family pre-sized for them, without validation as they were validated before
+ * they were stored. Relation lines are connected in batches grouped by family component, in parallel if the family is
+ * thread-safe, as done by {@link FamilyImporter}.
+ */
+@Component
+public class FamilyHydrator {
+    static final int FETCH_SIZE = 10_000;
+
+    private final DSLContext dsl;
+    private final RelationRepo relationRepo;
+    private final Family family;
+    private final boolean isHydrateOnStartup;
+
+    public FamilyHydrator(DSLContext dsl, RelationRepo relationRepo, Family family,
+                          @Value("${family.db.hydrate-on-startup:true}") boolean isHydrateOnStartup) {
+        this.dsl = dsl;
+        this.relationRepo = relationRepo;
+        this.family = family;
+        this.isHydrateOnStartup = isHydrateOnStartup;
+    }
+
+    @PostConstruct
+    public void hydrateOnStartup() {
+        if (isHydrateOnStartup && family instanceof FamilyGraph) {
+            hydrate((FamilyGraph) family);
+        }
+    }
+
+    /**
+     * Adds all members and relation lines of the database to family. Those already present in family are ignored.
+     *
+     * @param family Family to add to
+     * @return Report of the relation lines connected
+     */
+    public ImportReport hydrate(FamilyGraph family) {
+        // Cursors stream only inside a transaction, otherwise the driver fetches whole result sets
+        return dsl.transactionResult(configuration -> {
+            DSLContext transaction = DSL.using(configuration);
+            family.ensureCapacity(transaction.fetchCount(MEMBER), transaction.fetchCount(RELATION_LINE));
+            try (Cursor<MemberRecord> members = transaction.selectFrom(MEMBER).fetchSize(FETCH_SIZE).fetchLazy()) {
+                for (MemberRecord member : members) {
+                    family.addPerson(new Member(String.valueOf(member.getId()), member.getName(),
+                            member.getAge() == null ? 0 : member.getAge(), Boolean.TRUE.equals(member.getIsGenderMale())));
+                }
+            }
+            try (Cursor<Record4<Long, Short, Long, Short>> relationLines = transaction
+                    .select(RELATION_LINE.FROM_MEMBER_ID, RELATION_LINE.RELATION, RELATION_LINE.TO_MEMBER_ID,
+                            RELATION_LINE.RELATION_LEVEL)
+                    .from(RELATION_LINE)
+                    .fetchSize(FETCH_SIZE)
+                    .fetchLazy()) {
+                var importer = new FamilyImporter(family);
+                importer.setDoValidate(false);
+                return importer.importConnections(new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return relationLines.hasNext();
+                    }
+
+                    @Override
+                    public ConnectionEdge next() {
+                        Record4<Long, Short, Long, Short> line = relationLines.fetchNext();
+                        return new ConnectionEdge(family.getPersonById(String.valueOf(line.value1())),
+                                relationRepo.relationOf(line.value2()), family.getPersonById(String.valueOf(line.value3())),
+                                line.value4());
+                    }
+                });
+            }
+        });
+    }
+}
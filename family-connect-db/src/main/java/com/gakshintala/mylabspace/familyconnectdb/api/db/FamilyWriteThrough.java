@@ -0,0 +1,260 @@
+package com.gakshintala.mylabspace.familyconnectdb.api.db;
+
+import core.Family;
+import core.FamilyGraph;
+import core.FamilyGraphListener;
+import entities.ConnectionEdge;
+import entities.Member;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import relationship.GenericRelation;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes changes of the in-memory family through to the database in batches. Changes are queued as they happen and
+ * written once a batch fills up, on a writer thread of its own, or every flush interval. Listening never blocks on or
+ * fails with the database. Batches are written in the order of the changes, each in a single transaction, and a batch
+ * that fails to write is kept and written again with the next one. A batch that fails {@value #MAX_WRITE_ATTEMPTS}
+ * times in a row is dead-lettered, dropped and counted, so that it doesn't hold back the changes after it for good.
+ * <p>
+ * At most {@value #MAX_PENDING_BATCHES} batches of changes are queued, changes beyond are dropped and counted while the
+ * database is behind. The database misses dropped and dead-lettered changes till it is hydrated from again.
+ * <p>
+ * Changes of members that don't fit the member table can never be written, they are rejected as they are queued
+ * instead of failing every batch after them.
+ * <p>
+ * A relation line stands for a connection in both directions, so it is deleted only once the members are not connected
+ * in either direction anymore.
+ */
+@Component
+@DependsOn("familyHydrator") // Listens only once the family is hydrated, not to write the hydrated rows back
+public class FamilyWriteThrough implements FamilyGraphListener {
+    static final int MAX_WRITE_ATTEMPTS = 3;
+    static final int MAX_PENDING_BATCHES = 8;
+
+    private final MemberRepo memberRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final FamilyGraph family;
+    private final int batchSize;
+    private final int maxPending;
+    private final ExecutorService writer; // Writes batches filled by listeners
+    // Set once a batch is handed to the writer, till a flush succeeds
+    private final AtomicBoolean isWriteRequested = new AtomicBoolean();
+    private final LongAdder rejectedChanges = new LongAdder();
+    private final LongAdder droppedChanges = new LongAdder();
+    private final LongAdder deadLetteredChanges = new LongAdder();
+    private final Object writeLock = new Object(); // Held while a batch is taken and written, to keep batches in order
+    private final Object pendingLock = new Object();
+    private List<Change> pending = new ArrayList<>();
+    private int failedAttempts; // Of the batch at the head of pending, guarded by the write lock
+
+    public FamilyWriteThrough(MemberRepo memberRepo, PlatformTransactionManager transactionManager, Family family,
+                              @Value("${family.db.write-through.batch-size:10000}") int batchSize) {
+        if (!(family instanceof FamilyGraph)) {
+            throw new IllegalArgumentException("Only changes of a FamilyGraph can be written through");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size should be positive, but got " + batchSize);
+        }
+        this.memberRepo = memberRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.family = (FamilyGraph) family;
+        this.batchSize = batchSize;
+        this.maxPending = (int) Math.min((long) batchSize * MAX_PENDING_BATCHES, Integer.MAX_VALUE);
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "family-db-write-through");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void register() {
+        family.addListener(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        family.removeListener(this);
+        writer.shutdown();
+        flush();
+    }
+
+    /**
+     * @return Number of changes rejected so far, as they can never be written
+     */
+    public long getRejectedChanges() {
+        return rejectedChanges.sum();
+    }
+
+    /**
+     * @return Number of changes dropped so far, as the queue was full
+     */
+    public long getDroppedChanges() {
+        return droppedChanges.sum();
+    }
+
+    /**
+     * @return Number of changes dead-lettered so far, as their batch failed to write every attempt
+     */
+    public long getDeadLetteredChanges() {
+        return deadLetteredChanges.sum();
+    }
+
+    @Override
+    public void onPersonAdded(Member member) {
+        add(new Change(ChangeType.ADD_MEMBER, member, null, null, 0));
+    }
+
+    @Override
+    public void onPersonsConnected(Member from, GenericRelation relation, Member to, int relationLevel) {
+        add(new Change(ChangeType.CONNECT, from, relation, to, relationLevel));
+    }
+
+    @Override
+    public void onDirectConnectionRemoved(Member from, Member to) {
+        if (!family.arePersonsDirectlyConnected(from, to) && !family.arePersonsDirectlyConnected(to, from)) {
+            add(new Change(ChangeType.DISCONNECT, from, null, to, 0));
+        }
+    }
+
+    /**
+     * Queues a change, and hands the batch to the writer once it is full. Called by listeners, so it never throws.
+     */
+    private void add(Change change) {
+        // A connection of a member that is rejected would break the reference to the member table
+        if (!MemberRepo.isStorable(change.from) || (change.to != null && !MemberRepo.isStorable(change.to))) {
+            rejectedChanges.increment();
+            return;
+        }
+        boolean isBatchFull;
+        synchronized (pendingLock) {
+            if (pending.size() >= maxPending) {
+                droppedChanges.increment();
+                return;
+            }
+            pending.add(change);
+            isBatchFull = pending.size() >= batchSize;
+        }
+        if (isBatchFull && isWriteRequested.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::writeRequested);
+            } catch (RuntimeException e) {
+                isWriteRequested.set(false); // Writer shut down, the last flush writes the batch
+            }
+        }
+    }
+
+    private void writeRequested() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Batch is kept, and left to the scheduled flush, which reports the failure, till a flush succeeds
+        }
+    }
+
+    /**
+     * Writes all queued changes, and dead-letters them if it is the last attempt of the batch at their head
+     */
+    @Scheduled(fixedDelayString = "${family.db.write-through.flush-interval-ms:1000}")
+    public void flush() {
+        synchronized (writeLock) {
+            List<Change> changes;
+            synchronized (pendingLock) {
+                changes = pending;
+                pending = new ArrayList<>();
+            }
+            if (changes.isEmpty()) {
+                return;
+            }
+            try {
+                // All or nothing, so a batch written again never finds part of itself written already
+                transactionTemplate.execute(status -> {
+                    write(changes);
+                    return null;
+                });
+                failedAttempts = 0;
+                isWriteRequested.set(false);
+            } catch (RuntimeException e) {
+                if (++failedAttempts >= MAX_WRITE_ATTEMPTS) {
+                    failedAttempts = 0;
+                    deadLetteredChanges.add(changes.size());
+                    isWriteRequested.set(false);
+                } else {
+                    synchronized (pendingLock) {
+                        changes.addAll(pending);
+                        pending = changes;
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes runs of changes of the same type with one call each, in order
+     */
+    private void write(List<Change> changes) {
+        int start = 0;
+        while (start < changes.size()) {
+            ChangeType type = changes.get(start).type;
+            int end = start;
+            while (end < changes.size() && changes.get(end).type == type) {
+                end++;
+            }
+            List<Change> run = changes.subList(start, end);
+            switch (type) {
+                case ADD_MEMBER:
+                    List<Member> members = new ArrayList<>(run.size());
+                    run.forEach(change -> members.add(change.from));
+                    memberRepo.createMembers(members);
+                    break;
+                case CONNECT:
+                    List<ConnectionEdge> connections = new ArrayList<>(run.size());
+                    run.forEach(change -> connections.add(
+                            new ConnectionEdge(change.from, change.relation, change.to, change.relationLevel)));
+                    memberRepo.createRelationLines(connections);
+                    break;
+                case DISCONNECT:
+                    List<Map.Entry<Member, Member>> pairs = new ArrayList<>(run.size());
+                    run.forEach(change -> pairs.add(Map.entry(change.from, change.to)));
+                    memberRepo.deleteRelationLines(pairs);
+                    break;
+            }
+            start = end;
+        }
+    }
+
+    private enum ChangeType {
+        ADD_MEMBER, CONNECT, DISCONNECT
+    }
+
+    private static final class Change {
+        private final ChangeType type;
+        private final Member from;
+        private final GenericRelation relation;
+        private final Member to;
+        private final int relationLevel;
+
+        private Change(ChangeType type, Member from, GenericRelation relation, Member to, int relationLevel) {
+            this.type = type;
+            this.from = from;
+            this.relation = relation;
+            this.to = to;
+            this.relationLevel = relationLevel;
+        }
+    }
+}
@@ -1,20 +1,69 @@
 package com.gakshintala.mylabspace.familyconnectdb.api.db;
 
 import com.gakshintala.mylabspace.familyconnectdb.api.model.Member;
+import com.gakshintala.mylabspace.familyconnectdb.api.model.Relative;
+import entities.ConnectionEdge;
 import jooq.db.gen.tables.records.MemberRecord;
+import jooq.db.gen.tables.records.RelationLineRecord;
 import org.jooq.DSLContext;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.jooq.InsertValuesStep4;
+import org.jooq.Row2;
+import org.jooq.impl.DSL;
+import org.postgresql.PGConnection;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 import static jooq.db.gen.tables.Member.MEMBER;
+import static jooq.db.gen.tables.RelationLine.RELATION_LINE;
 
+/**
+ * Members and the relation lines between them. Bulk writes go as multi-row inserts, and through COPY once there are
+ * enough rows for it to pay off, so a million members take a handful of statements instead of a million round trips.
+ * Ids of family members are stored as the ids of the member rows, so they have to be numeric.
+ */
 @Repository
 @Transactional
 public class MemberRepo {
+    static final int ROWS_PER_INSERT = 1_000;
+    static final int MIN_ROWS_TO_COPY = 10_000;
+    private static final int ROWS_PER_COPY = 50_000;
+    static final int MAX_HOPS = 16;
+    static final int MAX_NAME_LENGTH = 50;
+    // Walks relation lines in both directions, a level per hop. UNION drops a member reached again at the same depth,
+    // so every member is expanded at most once per depth.
+    private static final String RELATIVES_SQL = "WITH RECURSIVE hops (member_id, depth) AS ("
+            + " SELECT CAST(? AS BIGINT), 0"
+            + " UNION"
+            + " SELECT CASE WHEN line.from_member_id = hops.member_id THEN line.to_member_id ELSE line.from_member_id END,"
+            + " hops.depth + 1"
+            + " FROM hops JOIN relation_line line"
+            + " ON line.from_member_id = hops.member_id OR line.to_member_id = hops.member_id"
+            + " WHERE hops.depth < ?)"
+            + " SELECT member.id, member.name, member.age, nearest.hops"
+            + " FROM (SELECT member_id, MIN(depth) AS hops FROM hops GROUP BY member_id) nearest"
+            + " JOIN member ON member.id = nearest.member_id"
+            + " WHERE nearest.member_id <> ?"
+            + " ORDER BY nearest.hops, member.id";
+    // Ids of family members skip the identity, which would hand them out again to users created afterwards
+    private static final String ADVANCE_ID_SQL = "SELECT setval(pg_get_serial_sequence('member', 'id'),"
+            + " (SELECT max(id) FROM member))";
+
+    private final DSLContext dsl;
+    private final RelationRepo relationRepo;
 
-    @Autowired
-    private DSLContext dsl;
+    public MemberRepo(DSLContext dsl, RelationRepo relationRepo) {
+        this.dsl = dsl;
+        this.relationRepo = relationRepo;
+    }
 
     public void createUser(Member member) {
         dsl.insertInto(MEMBER)
@@ -33,4 +82,159 @@ public class MemberRepo {
         return new Member(user);
     }
 
+    /**
+     * Finds relatives of a member within some hops in the database, without loading the family
+     *
+     * @param memberId Id of the member
+     * @param maxHops  Maximum number of relation lines between the member and a relative
+     * @return Relatives in order of hops, nearest first
+     */
+    @Transactional(readOnly = true)
+    public List<Relative> getRelatives(long memberId, int maxHops) {
+        if (maxHops < 1 || maxHops > MAX_HOPS) {
+            throw new IllegalArgumentException("Hops should be between 1 and " + MAX_HOPS + ", but got " + maxHops);
+        }
+        return dsl.resultQuery(RELATIVES_SQL, memberId, maxHops, memberId)
+                .fetch(record -> new Relative(record.get(0, Long.class), record.get(1, String.class),
+                        record.get(2, Short.class), record.get(3, Integer.class)));
+    }
+
+    /**
+     * Inserts family members, in as few statements as possible, and moves the member id identity past their ids
+     *
+     * @param members Members with numeric ids, not present yet
+     */
+    public void createMembers(Collection<entities.Member> members) {
+        if (members.size() >= MIN_ROWS_TO_COPY) {
+            copyIn("COPY member (id, name, age, is_gender_male) FROM STDIN WITH (FORMAT csv)", members.iterator(),
+                    (member, csv) -> csv.append(idOf(member)).append(',').append(quoteCsv(member.getName())).append(',')
+                            .append(member.getAge()).append(',').append(member.isGenderMale()));
+        } else {
+            for (List<entities.Member> chunk : chunks(members, ROWS_PER_INSERT)) {
+                InsertValuesStep4<MemberRecord, Long, String, Short, Boolean> insert = dsl.insertInto(MEMBER,
+                        MEMBER.ID, MEMBER.NAME, MEMBER.AGE, MEMBER.IS_GENDER_MALE);
+                for (entities.Member member : chunk) {
+                    insert = insert.values(idOf(member), member.getName(), (short) member.getAge(),
+                            member.isGenderMale());
+                }
+                insert.execute();
+            }
+        }
+        if (!members.isEmpty()) {
+            dsl.fetch(ADVANCE_ID_SQL);
+        }
+    }
+
+    /**
+     * Inserts connections as relation lines, in as few statements as possible. Members of the connections should be
+     * present already.
+     *
+     * @param connections Connections to insert
+     */
+    public void createRelationLines(Collection<ConnectionEdge> connections) {
+        if (connections.size() >= MIN_ROWS_TO_COPY) {
+            copyIn("COPY relation_line (from_member_id, relation, to_member_id, relation_level) FROM STDIN WITH (FORMAT csv)",
+                    connections.iterator(), (connection, csv) -> csv.append(idOf(connection.from())).append(',')
+                            .append(relationRepo.idOf(connection.relation())).append(',')
+                            .append(idOf(connection.to())).append(',').append(connection.relationLevel()));
+            return;
+        }
+        for (List<ConnectionEdge> chunk : chunks(connections, ROWS_PER_INSERT)) {
+            InsertValuesStep4<RelationLineRecord, Long, Short, Long, Short> insert = dsl.insertInto(RELATION_LINE,
+                    RELATION_LINE.FROM_MEMBER_ID, RELATION_LINE.RELATION, RELATION_LINE.TO_MEMBER_ID,
+                    RELATION_LINE.RELATION_LEVEL);
+            for (ConnectionEdge connection : chunk) {
+                insert = insert.values(idOf(connection.from()), relationRepo.idOf(connection.relation()),
+                        idOf(connection.to()), (short) connection.relationLevel());
+            }
+            insert.execute();
+        }
+    }
+
+    /**
+     * Deletes the relation lines between the members of each pair, in either direction, one statement per chunk of pairs
+     *
+     * @param pairs Pairs of members to disconnect
+     */
+    public void deleteRelationLines(Collection<Map.Entry<entities.Member, entities.Member>> pairs) {
+        for (List<Map.Entry<entities.Member, entities.Member>> chunk : chunks(pairs, ROWS_PER_INSERT)) {
+            List<Row2<Long, Long>> rows = new ArrayList<>(chunk.size() * 2);
+            for (Map.Entry<entities.Member, entities.Member> pair : chunk) {
+                rows.add(DSL.row(idOf(pair.getKey()), idOf(pair.getValue())));
+                rows.add(DSL.row(idOf(pair.getValue()), idOf(pair.getKey())));
+            }
+            dsl.deleteFrom(RELATION_LINE)
+                    .where(DSL.row(RELATION_LINE.FROM_MEMBER_ID, RELATION_LINE.TO_MEMBER_ID).in(rows))
+                    .execute();
+        }
+    }
+
+    /**
+     * Streams rows into a COPY statement, a chunk of rows at a time, on the connection of the current transaction
+     */
+    private <T> void copyIn(String copySql, Iterator<T> rows, CsvWriter<T> csvWriter) {
+        dsl.connection(connection -> {
+            var copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            var csv = new StringBuilder();
+            while (rows.hasNext()) {
+                csv.setLength(0);
+                for (int i = 0; i < ROWS_PER_COPY && rows.hasNext(); i++) {
+                    csvWriter.write(rows.next(), csv);
+                    csv.append('\n');
+                }
+                try {
+                    copyManager.copyIn(copySql, new StringReader(csv.toString()));
+                } catch (IOException e) {
+                    throw new SQLException("Copy failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return True if the member fits the member table: a numeric id, a name of at most {@value #MAX_NAME_LENGTH}
+     * chars and a positive age
+     */
+    static boolean isStorable(entities.Member member) {
+        try {
+            Long.parseLong(member.getId());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return member.getName().length() <= MAX_NAME_LENGTH && member.getAge() > 0
+                && member.getAge() <= Short.MAX_VALUE;
+    }
+
+    static long idOf(entities.Member member) {
+        try {
+            return Long.parseLong(member.getId());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Member Id: " + member.getId() + " is not numeric, to store it", e);
+        }
+    }
+
+    static String quoteCsv(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    static <T> List<List<T>> chunks(Collection<T> rows, int chunkSize) {
+        List<List<T>> chunks = new ArrayList<>((rows.size() + chunkSize - 1) / chunkSize);
+        List<T> chunk = new ArrayList<>(Math.min(chunkSize, rows.size()));
+        for (T row : rows) {
+            chunk.add(row);
+            if (chunk.size() == chunkSize) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    @FunctionalInterface
+    private interface CsvWriter<T> {
+        void write(T row, StringBuilder csv);
+    }
 }
@@ -0,0 +1,105 @@
+package com.gakshintala.mylabspace.familyconnectdb.api.db;
+
+import jooq.db.gen.tables.records.RelationRecord;
+import org.jooq.DSLContext;
+import org.jooq.InsertValuesStep3;
+import org.jooq.Query;
+import org.jooq.Record2;
+import org.springframework.stereotype.Repository;
+import relationship.GenericRelation;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static jooq.db.gen.tables.Relation.RELATION;
+
+/**
+ * Lookup of the relation table, loaded once and kept in memory, so writing a relation line never queries it. Generic
+ * relations missing from the table are inserted on load, along with their reverse and alternate relations.
+ * <p>
+ * Thread-safe.
+ */
+@Repository
+public class RelationRepo {
+    private final DSLContext dsl;
+    private volatile Map<GenericRelation, Short> idsByRelation = Collections.emptyMap();
+    private volatile Map<Short, GenericRelation> relationsById = Collections.emptyMap();
+
+    public RelationRepo(DSLContext dsl) {
+        this.dsl = dsl;
+    }
+
+    /**
+     * Loads the relation table, inserting generic relations that are missing
+     */
+    @PostConstruct
+    public synchronized void preload() {
+        Map<GenericRelation, Short> ids = load();
+        List<GenericRelation> missing = new ArrayList<>();
+        for (GenericRelation relation : GenericRelation.values()) {
+            if (!ids.containsKey(relation)) {
+                missing.add(relation);
+            }
+        }
+        if (!missing.isEmpty()) {
+            InsertValuesStep3<RelationRecord, String, Boolean, Short> insert = dsl.insertInto(RELATION,
+                    RELATION.RELATION_, RELATION.IS_GENERIC_RELATION, RELATION.DEFAULT_RELATION_LEVEL);
+            for (GenericRelation relation : missing) {
+                insert = insert.values(relation.name(), true, (short) relation.getRelationLevel());
+            }
+            insert.execute();
+            ids = load();
+            List<Query> links = new ArrayList<>(missing.size());
+            for (GenericRelation relation : missing) {
+                links.add(dsl.update(RELATION)
+                        .set(RELATION.REVERSE_RELATION_ID, ids.get(relation.getReverseRelation()))
+                        .set(RELATION.ALTERNATE_RELATION_ID, ids.get(relation.getAlternateRelation()))
+                        .where(RELATION.ID.eq(ids.get(relation))));
+            }
+            dsl.batch(links).execute();
+        }
+        Map<Short, GenericRelation> relations = new HashMap<>();
+        ids.forEach((relation, id) -> relations.put(id, relation));
+        idsByRelation = ids;
+        relationsById = relations;
+    }
+
+    private Map<GenericRelation, Short> load() {
+        Map<GenericRelation, Short> ids = new EnumMap<>(GenericRelation.class);
+        for (Record2<Short, String> row : dsl.select(RELATION.ID, RELATION.RELATION_)
+                .from(RELATION)
+                .where(RELATION.IS_GENERIC_RELATION.isTrue())
+                .fetch()) {
+            ids.put(GenericRelation.valueOf(row.value2()), row.value1());
+        }
+        return ids;
+    }
+
+    /**
+     * @return Id of the row of relation
+     */
+    public short idOf(GenericRelation relation) {
+        Short id = idsByRelation.get(relation);
+        if (id == null) {
+            preload();
+            id = idsByRelation.get(relation);
+        }
+        return id;
+    }
+
+    /**
+     * @return Relation of the row with id
+     */
+    public GenericRelation relationOf(short id) {
+        GenericRelation relation = relationsById.get(id);
+        if (relation == null) {
+            throw new IllegalArgumentException("No generic relation with id: " + id);
+        }
+        return relation;
+    }
+}
@@ -0,0 +1,54 @@
+package com.gakshintala.mylabspace.familyconnectdb.api.model;
+
+/**
+ * Member found within some hops of another member
+ */
+public class Relative {
+    private Long id;
+    private String name;
+    private Short age;
+    private Integer hops;
+
+    public Relative(Long id, String name, Short age, Integer hops) {
+        this.id = id;
+        this.name = name;
+        this.age = age;
+        this.hops = hops;
+    }
+
+    public Relative() {
+
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Short getAge() {
+        return age;
+    }
+
+    public void setAge(Short age) {
+        this.age = age;
+    }
+
+    public Integer getHops() {
+        return hops;
+    }
+
+    public void setHops(Integer hops) {
+        this.hops = hops;
+    }
+}
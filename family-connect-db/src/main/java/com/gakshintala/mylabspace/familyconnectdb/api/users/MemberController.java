@@ -2,9 +2,12 @@ package com.gakshintala.mylabspace.familyconnectdb.api.users;
 
 import com.gakshintala.mylabspace.familyconnectdb.api.db.MemberRepo;
 import com.gakshintala.mylabspace.familyconnectdb.api.model.Member;
+import com.gakshintala.mylabspace.familyconnectdb.api.model.Relative;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/member")
 public class MemberController {
@@ -21,4 +24,10 @@ public class MemberController {
     public @ResponseBody Member getUser(@RequestParam("emailId") String emailId) {
         return userRepo.getUser(emailId);
     }
+
+    @GetMapping("/{id}/relatives")
+    public @ResponseBody List<Relative> getRelatives(@PathVariable("id") long id,
+                                                     @RequestParam(value = "maxHops", defaultValue = "2") int maxHops) {
+        return userRepo.getRelatives(id, maxHops);
+    }
 }
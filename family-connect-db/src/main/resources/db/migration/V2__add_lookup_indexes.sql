@@ -0,0 +1,7 @@
+-- Lookup of members by name, admin lookups filter on it
+CREATE INDEX member_name_idx ON member (name);
+
+-- Relation lines of a member in either direction. Other columns are part of the keys, so that walking the family is
+-- answered from the indexes alone.
+CREATE INDEX relation_line_from_member_idx ON relation_line (from_member_id, to_member_id, relation, relation_level);
+CREATE INDEX relation_line_to_member_idx ON relation_line (to_member_id, from_member_id, relation, relation_level);
@@ -0,0 +1,158 @@
+package com.gakshintala.mylabspace.familyconnectdb.api.db;
+
+import com.gakshintala.mylabspace.familyconnectdb.api.model.Relative;
+import com.opentable.db.postgres.junit.EmbeddedPostgresRules;
+import com.opentable.db.postgres.junit.SingleInstancePostgresRule;
+import core.ConcurrentGraphStore;
+import core.FamilyGraph;
+import entities.ConnectionEdge;
+import entities.Member;
+import org.flywaydb.core.Flyway;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
+import relationship.GenericRelation;
+import validation.GenderValidator;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+import static jooq.db.gen.tables.Member.MEMBER;
+import static jooq.db.gen.tables.RelationLine.RELATION_LINE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MemberRepoTest {
+    @ClassRule
+    public static SingleInstancePostgresRule postgres = EmbeddedPostgresRules.singleInstance();
+
+    private DataSource dataSource;
+    private DSLContext dsl;
+    private RelationRepo relationRepo;
+    private MemberRepo memberRepo;
+
+    @Before
+    public void migrate() {
+        dataSource = postgres.getEmbeddedPostgres().getPostgresDatabase();
+        Flyway flyway = Flyway.configure().dataSource(dataSource).load();
+        flyway.clean();
+        flyway.migrate();
+        // Joins the transactions of the write-through, as the jOOQ auto-configuration does
+        dsl = DSL.using(new TransactionAwareDataSourceProxy(dataSource), SQLDialect.POSTGRES);
+        relationRepo = new RelationRepo(dsl);
+        relationRepo.preload();
+        memberRepo = new MemberRepo(dsl, relationRepo);
+    }
+
+    @Test
+    public void testBatchedInsertsAndCopy() {
+        List<Member> members = new ArrayList<>();
+        List<ConnectionEdge> connections = new ArrayList<>();
+        for (int i = 1; i <= MemberRepo.MIN_ROWS_TO_COPY + 1; i++) {
+            members.add(new Member(String.valueOf(i), "Member \"" + i + "\", Jr", 30, i % 2 == 0));
+        }
+        for (int i = 1; i < members.size(); i++) {
+            connections.add(new ConnectionEdge(members.get(i - 1), GenericRelation.SIBLING, members.get(i), 0));
+        }
+        memberRepo.createMembers(members.subList(0, 10));
+        memberRepo.createMembers(members.subList(10, members.size()));
+        memberRepo.createRelationLines(connections.subList(0, 10));
+        memberRepo.createRelationLines(connections.subList(10, connections.size()));
+
+        assertEquals(members.size(), dsl.fetchCount(MEMBER));
+        assertEquals(connections.size(), dsl.fetchCount(RELATION_LINE));
+        // Users get ids past the family members
+        var user = new com.gakshintala.mylabspace.familyconnectdb.api.model.Member();
+        user.setName("user@family.org");
+        user.setAge((short) 30);
+        memberRepo.createUser(user);
+        assertEquals(members.size() + 1, dsl.fetchCount(MEMBER));
+        assertEquals("Member \"2\", Jr", dsl.select(MEMBER.NAME).from(MEMBER).where(MEMBER.ID.eq(2L)).fetchOne().value1());
+        assertEquals(GenericRelation.SIBLING, relationRepo.relationOf(
+                dsl.select(RELATION_LINE.RELATION).from(RELATION_LINE).limit(1).fetchOne().value1()));
+
+        memberRepo.deleteRelationLines(List.of(Map.entry(members.get(1), members.get(0))));
+        assertEquals(connections.size() - 1, dsl.fetchCount(RELATION_LINE));
+    }
+
+    @Test
+    public void testFamilyChangesAreWrittenThrough() {
+        var family = new FamilyGraph(new GenderValidator());
+        var writeThrough = new FamilyWriteThrough(memberRepo, new DataSourceTransactionManager(dataSource), family, 3);
+        writeThrough.register();
+        var rama = new Member("1", "Rama", 80, true);
+        var lava = new Member("2", "Lava", 50, true);
+        var kusha = new Member("3", "Kusha", 48, true);
+        family.connectPersons(rama, GenericRelation.PARENT, lava, 1, true);
+        family.connectPersons(rama, GenericRelation.PARENT, kusha, 1, true);
+
+        // Waits for the full batch the writer may be writing, and writes the rest
+        writeThrough.flush();
+        assertEquals(3, dsl.fetchCount(MEMBER));
+        assertEquals(2, dsl.fetchCount(RELATION_LINE));
+
+        // Still connected the other way round
+        family.removeDirectConnection(rama, kusha);
+        writeThrough.flush();
+        assertEquals(2, dsl.fetchCount(RELATION_LINE));
+        family.removeDirectConnection(kusha, rama);
+        writeThrough.unregister();
+        assertEquals(1, dsl.fetchCount(RELATION_LINE));
+    }
+
+    @Test
+    public void testHydrationFromDatabase() {
+        var family = new FamilyGraph(new GenderValidator(), new ConcurrentGraphStore());
+        var writeThrough = new FamilyWriteThrough(memberRepo, new DataSourceTransactionManager(dataSource), family,
+                100);
+        writeThrough.register();
+        var rama = new Member("1", "Rama", 80, true);
+        var lava = new Member("2", "Lava", 50, true);
+        var kusha = new Member("3", "Kusha", 48, true);
+        family.connectPersons(rama, GenericRelation.PARENT, lava, 1, true);
+        family.connectPersons(rama, GenericRelation.PARENT, kusha, 1, true);
+        family.addPerson(new Member("4", "Ravi", 70, true));
+        writeThrough.unregister();
+
+        var hydrated = new FamilyGraph(new GenderValidator(), new ConcurrentGraphStore());
+        var report = new FamilyHydrator(dsl, relationRepo, hydrated, false).hydrate(hydrated);
+        assertEquals(2, report.getRelationsImported());
+        assertEquals(4, hydrated.getAllPersonsInFamily().size());
+        assertEquals(GenericRelation.SIBLING, hydrated.getConnection(lava, kusha, false).relation());
+    }
+
+    @Test
+    public void testRelativesWithinHops() {
+        var rama = new Member("1", "Rama", 80, true);
+        var lava = new Member("2", "Lava", 50, true);
+        var kusha = new Member("3", "Kusha", 48, true);
+        var ravi = new Member("4", "Ravi", 20, true);
+        memberRepo.createMembers(List.of(rama, lava, kusha, ravi));
+        memberRepo.createRelationLines(List.of(new ConnectionEdge(rama, GenericRelation.PARENT, lava, 1),
+                new ConnectionEdge(rama, GenericRelation.PARENT, kusha, 1),
+                new ConnectionEdge(ravi, GenericRelation.CHILD, kusha, -1)));
+
+        assertEquals(List.of(1L, 3L), memberRepo.getRelatives(2, 2).stream().map(Relative::getId).collect(toList()));
+        var relatives = memberRepo.getRelatives(2, 3);
+        assertEquals(3, relatives.size());
+        assertEquals("Ravi", relatives.get(2).getName());
+        assertEquals(3, (int) relatives.get(2).getHops());
+    }
+
+    @Test
+    public void testOnlyMembersFittingTheTableAreStorable() {
+        assertTrue(MemberRepo.isStorable(new Member("1", "Rama", 80, true)));
+        assertFalse(MemberRepo.isStorable(new Member("R1", "Rama", 80, true)));
+        assertFalse(MemberRepo.isStorable(new Member("1", "Rama", 0, true)));
+        assertFalse(MemberRepo.isStorable(new Member("1", "R".repeat(MemberRepo.MAX_NAME_LENGTH + 1), 80, true)));
+    }
+}
@@ -1,7 +1,18 @@
 package config;
 
+import core.ClosureCache;
+import core.CompactGraphStore;
+import core.ConcurrentGraphStore;
+import core.Durability;
 import core.Family;
 import core.FamilyGraph;
+import core.GraphStore;
+import core.HashGraphStore;
+import core.MappedGraphStore;
+import core.MutationLog;
+import core.SearchMode;
+import core.ShardedFamily;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import validation.AgeValidator;
@@ -9,23 +20,118 @@ import validation.GenderValidator;
 import validation.RelationshipValidator;
 import validation.Validator;
 
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 @Configuration
 public class Config {
+    /**
+     * Validators on attributes of the persons go first, relationship validation searches the family only if they pass
+     */
     @Bean
     public Validator prepareValidator(){
-        Validator genderValidator = new GenderValidator();
-        Validator ageValidator = new AgeValidator();
-        Validator relationShipValidator = new RelationshipValidator();
-
-        genderValidator.setNextValidatorInChain(ageValidator);
-        ageValidator.setNextValidatorInChain(relationShipValidator);
-
-        return genderValidator;
+        return Validator.chain(new GenderValidator(), new AgeValidator(), new RelationshipValidator());
     }
     
+    /**
+     * Storage engine for the family graph, selected with property family.graph.storage
+     * hash - Object based, cheap to mutate, default
+     * compact - Primitive CSR arrays, for large families
+     * columnar - Compact, with members in columns and their names interned
+     * columnar-off-heap - Columnar, with ids and names of members off heap
+     * concurrent - Thread-safe, readers never block and writers lock per member stripe
+     * mapped - Read-only, served from the snapshot file at family.graph.snapshot-file
+     * Other stores are loaded from the snapshot file, if it is set and present.
+     */
+    @Bean
+    public GraphStore prepareGraphStore(@Value("${family.graph.storage:hash}") String storage,
+                                        @Value("${family.graph.snapshot-file:}") String snapshotFile) {
+        if (storage.equalsIgnoreCase("mapped")) {
+            if (snapshotFile.isEmpty()) {
+                throw new IllegalArgumentException("Mapped family graph storage needs family.graph.snapshot-file");
+            }
+            return MappedGraphStore.open(Paths.get(snapshotFile));
+        }
+        GraphStore graphStore = newGraphStore(storage);
+        if (!snapshotFile.isEmpty() && Files.exists(Paths.get(snapshotFile))) {
+            MappedGraphStore.open(Paths.get(snapshotFile)).copyTo(graphStore);
+        }
+        return graphStore;
+    }
+
+    private static GraphStore newGraphStore(String storage) {
+        switch (storage.toLowerCase()) {
+            case "hash":
+                return new HashGraphStore();
+            case "compact":
+                return new CompactGraphStore();
+            case "columnar":
+                return new CompactGraphStore(16, 64, CompactGraphStore.MemberLayout.COLUMNS);
+            case "columnar-off-heap":
+                return new CompactGraphStore(16, 64, CompactGraphStore.MemberLayout.OFF_HEAP_COLUMNS);
+            case "concurrent":
+                return new ConcurrentGraphStore();
+            default:
+                throw new IllegalArgumentException("Unknown family graph storage: " + storage);
+        }
+    }
+
+    /**
+     * Search mode between two members is selected with property family.graph.search (forward | bidirectional), and
+     * the connections held by closure cache are bounded with family.graph.closure-cache.max-connections.
+     * Mutations are logged into family.graph.log-file if it is set, with durability family.graph.log-durability
+     * (buffered | flushed | periodic_sync | sync), and the log is replayed before the family is used. Once the log grows
+     * beyond family.graph.log-compaction-bytes it is compacted into family.graph.snapshot-file, if set, which the store
+     * is loaded from on the next start. The family is closed on shutdown, through its inferred destroy method, so its
+     * log is synced.
+     * With family.graph.sharded the family is partitioned into a shard per family component, each over a store of
+     * family.graph.storage with a closure cache of family.graph.closure-cache.max-connections. Cold shards are evicted
+     * into family.graph.shard-eviction-dir every family.graph.shard-eviction-interval-ms, while shards in memory hold
+     * more than family.graph.shard-max-resident-bytes, if set. Sharded families are neither logged nor loaded from a
+     * snapshot file.
+     */
     @Bean
-    public Family getFamily(Validator validator){
-        return new FamilyGraph(validator);
+    public Family getFamily(Validator validator, GraphStore graphStore,
+                            @Value("${family.graph.search:forward}") String searchMode,
+                            @Value("${family.graph.closure-cache.max-connections:1048576}") long maxCachedConnections,
+                            @Value("${family.graph.log-file:}") String logFile,
+                            @Value("${family.graph.log-durability:periodic_sync}") String logDurability,
+                            @Value("${family.graph.log-compaction-bytes:67108864}") long logCompactionBytes,
+                            @Value("${family.graph.snapshot-file:}") String snapshotFile,
+                            @Value("${family.graph.sharded:false}") boolean isSharded,
+                            @Value("${family.graph.storage:hash}") String storage,
+                            @Value("${family.graph.shard-eviction-dir:}") String shardEvictionDir,
+                            @Value("${family.graph.shard-max-resident-bytes:0}") long shardMaxResidentBytes,
+                            @Value("${family.graph.shard-eviction-interval-ms:1000}") long shardEvictionIntervalMillis){
+        if (isSharded) {
+            if (!logFile.isEmpty()) {
+                throw new IllegalArgumentException("Sharded family can't be logged into family.graph.log-file");
+            }
+            if (!snapshotFile.isEmpty()) {
+                throw new IllegalArgumentException("Sharded family can't be loaded from family.graph.snapshot-file");
+            }
+            newGraphStore(storage); // Fails early on storage that can't be sharded
+            ShardedFamily shardedFamily = new ShardedFamily(validator, () -> newGraphStore(storage),
+                    shardEvictionDir.isEmpty() ? null : Paths.get(shardEvictionDir));
+            shardedFamily.setSearchMode(SearchMode.valueOf(searchMode.toUpperCase()));
+            shardedFamily.setMaxCachedConnectionsPerShard(maxCachedConnections);
+            if (shardMaxResidentBytes > 0) {
+                shardedFamily.evictColdShardsEvery(shardMaxResidentBytes, shardEvictionIntervalMillis);
+            }
+            return shardedFamily;
+        }
+        FamilyGraph familyGraph = new FamilyGraph(validator, graphStore);
+        familyGraph.setSearchMode(SearchMode.valueOf(searchMode.toUpperCase()));
+        familyGraph.setClosureCache(new ClosureCache(maxCachedConnections));
+        if (!logFile.isEmpty()) {
+            MutationLog mutationLog = MutationLog.open(Paths.get(logFile), Durability.valueOf(logDurability.toUpperCase()));
+            mutationLog.replay(familyGraph);
+            if (!snapshotFile.isEmpty()) {
+                mutationLog.compactAbove(logCompactionBytes, Paths.get(snapshotFile));
+            }
+            familyGraph.setMutationLog(mutationLog);
+        }
+        return familyGraph;
     }
 }
 
@@ -0,0 +1,83 @@
+package core;
+
+/**
+ * Read cursor over the direct connections of one member, positioned by {@link GraphStore#openAdjacency}. The cursor
+ * either wraps the arrays of the store or holds a copy in its own buffers, so reading it never allocates. What it shows
+ * stays consistent even if the store is changed by other threads after it was positioned.
+ * <p>
+ * Cursors are cheap to reuse and not thread-safe.
+ */
+public final class AdjacencyCursor {
+    private int[] neighbours;
+    private byte[] relations;
+    private byte[] relationLevels;
+    private int offset;
+    private int degree;
+
+    private int[] ownNeighbours = new int[0];
+    private byte[] ownRelations = new byte[0];
+    private byte[] ownRelationLevels = new byte[0];
+
+    /**
+     * @return Number of direct connections
+     */
+    public int degree() {
+        return degree;
+    }
+
+    public int neighbourAt(int position) {
+        return neighbours[offset + position];
+    }
+
+    /**
+     * @return Ordinal of the relation at that position, as used by {@link relationship.RelationAlgebra}
+     */
+    public int relationOrdinalAt(int position) {
+        return relations[offset + position];
+    }
+
+    public int relationLevelAt(int position) {
+        return relationLevels[offset + position];
+    }
+
+    /**
+     * @return Position of the first connection to neighbour, -1 if not connected
+     */
+    public int positionOf(int neighbour) {
+        for (int position = 0; position < degree; position++) {
+            if (neighbours[offset + position] == neighbour) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Positions cursor over a segment of store arrays
+     */
+    void wrap(int[] neighbours, byte[] relations, byte[] relationLevels, int offset, int degree) {
+        this.neighbours = neighbours;
+        this.relations = relations;
+        this.relationLevels = relationLevels;
+        this.offset = offset;
+        this.degree = degree;
+    }
+
+    /**
+     * Positions cursor over its own buffers, to be filled with {@link #set}
+     */
+    void reset(int degree) {
+        if (ownNeighbours.length < degree) {
+            ownNeighbours = new int[degree];
+            ownRelations = new byte[degree];
+            ownRelationLevels = new byte[degree];
+        }
+        wrap(ownNeighbours, ownRelations, ownRelationLevels, 0, degree);
+    }
+
+    void set(int position, int neighbour, int relation, int relationLevel) {
+        ownNeighbours[position] = neighbour;
+        ownRelations[position] = (byte) relation;
+        ownRelationLevels[position] = (byte) relationLevel;
+    }
+}
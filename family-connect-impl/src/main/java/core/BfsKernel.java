@@ -0,0 +1,385 @@
+package core;
+
+import relationship.GenericRelation;
+import relationship.RelationAlgebra;
+
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Breadth-First traversal over member indexes of a {@link GraphStore}. Scratch buffers (queue, visited stamps, parent
+ * pointers and the aggregate relation of every reached member) are pooled and reused across traversals. A new
+ * traversal only bumps the generation stamp instead of clearing the visited state. Kernels are pooled apart from
+ * threads, so a thread per request, virtual or not, doesn't hold a kernel sized to the family of its own.
+ * <p>
+ * Pair searches also record the path they found, as hops readable through {@link #pathLength()}. Buffers of the
+ * backward search and the path are allocated only once a search needs them. Use with try-with-resources, results of
+ * the last traversal are readable until the kernel is closed.
+ */
+final class BfsKernel implements AutoCloseable {
+    // Idle kernels, the most recently used first as their buffers are most likely sized to the family
+    private static final Deque<BfsKernel> POOL = new ConcurrentLinkedDeque<>();
+    private static final int MAX_POOLED_KERNELS = 2 * Runtime.getRuntime().availableProcessors();
+    private static final AtomicInteger pooledCount = new AtomicInteger();
+
+    private int[] queue = new int[0];
+    private int[] visitedGeneration = new int[0];
+    private int[] parents = new int[0];
+    private byte[] parentRelations = new byte[0];
+    private int[] parentRelationLevels = new int[0];
+    private byte[] relations = new byte[0];
+    private int[] relationLevels = new int[0];
+    private int[] depths = new int[0];
+
+    private int[] backwardQueue = new int[0];
+    private int[] backwardVisitedGeneration = new int[0];
+    private int[] backwardParents = new int[0];
+    private byte[] backwardParentRelations = new byte[0];
+    private int[] backwardParentRelationLevels = new int[0];
+    private int[] backwardDepths = new int[0];
+
+    private int[] pathFrom = new int[0];
+    private int[] pathTo = new int[0];
+    private byte[] pathRelations = new byte[0];
+    private int[] pathRelationLevels = new int[0];
+    private int pathLength;
+
+    private final AdjacencyCursor cursor = new AdjacencyCursor();
+    private final AdjacencyCursor mirrorCursor = new AdjacencyCursor();
+    private int generation;
+    private boolean inUse;
+
+    /**
+     * Takes an idle kernel from the pool, or a fresh one if none is idle
+     */
+    static BfsKernel acquire() {
+        BfsKernel kernel = POOL.pollFirst();
+        if (kernel == null) {
+            kernel = new BfsKernel();
+        } else {
+            pooledCount.decrementAndGet();
+        }
+        kernel.inUse = true;
+        return kernel;
+    }
+
+    /**
+     * Returns kernel to the pool, or leaves it to the garbage collector if the pool is full
+     */
+    @Override
+    public void close() {
+        if (!inUse) {
+            return;
+        }
+        inUse = false;
+        if (pooledCount.incrementAndGet() <= MAX_POOLED_KERNELS) {
+            POOL.offerFirst(this);
+        } else {
+            pooledCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Traverses from source in Breadth-First way, aggregating relation of source with every member reached.
+     *
+     * @param store   Store to traverse
+     * @param source  Index of From member
+     * @param target  Index of To member to stop at, -1 to traverse the whole family of source
+     * @param visitor Called with every member reached before target, can be null
+     * @return True if target is reached
+     */
+    boolean traverse(GraphStore store, int source, int target, IntConsumer visitor) {
+        prepare(store.size());
+        int head = 0, tail = 0;
+        queue[tail++] = source;
+        visitedGeneration[source] = generation;
+        parents[source] = -1;
+        while (head < tail) {
+            int node = queue[head++];
+            store.openAdjacency(node, cursor);
+            for (int i = 0, degree = cursor.degree(); i < degree; i++) {
+                int neighbour = cursor.neighbourAt(i);
+                ensureCapacity(neighbour, store);
+                if (visitedGeneration[neighbour] == generation) {
+                    continue;
+                }
+                visitedGeneration[neighbour] = generation;
+                int edgeRelation = cursor.relationOrdinalAt(i);
+                parents[neighbour] = node;
+                parentRelations[neighbour] = (byte) edgeRelation;
+                parentRelationLevels[neighbour] = cursor.relationLevelAt(i);
+                if (node == source) {
+                    relations[neighbour] = (byte) edgeRelation;
+                    relationLevels[neighbour] = cursor.relationLevelAt(i);
+                } else {
+                    relations[neighbour] = RelationAlgebra.compose(edgeRelation, relations[node]);
+                    relationLevels[neighbour] = relationLevels[node] + RelationAlgebra.relationLevel(edgeRelation);
+                }
+                if (neighbour == target) {
+                    return true;
+                }
+                if (visitor != null) {
+                    visitor.accept(neighbour);
+                }
+                queue[tail++] = neighbour;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Searches target from source and records the path found. The aggregate relation of target is readable through
+     * {@link #relationOf(int)} as with {@link #traverse}.
+     *
+     * @return True if target is reached
+     */
+    boolean search(GraphStore store, int source, int target, SearchMode searchMode) {
+        if (searchMode == SearchMode.BIDIRECTIONAL) {
+            return meet(store, source, target);
+        }
+        pathLength = 0;
+        if (!traverse(store, source, target, null)) {
+            return false;
+        }
+        recordPath(source, target, false);
+        return true;
+    }
+
+    /**
+     * Bidirectional Breadth-First search, one level at a time from the side with smaller frontier. The backward search
+     * follows mirror edges, connections into the member it expands, and skips connections whose mirror was removed.
+     * It finds the same connections as a forward search only if every connection has its mirror, as connections into a
+     * member without one are not found from it. Once a level finds the frontiers meeting, the shortest meeting point of
+     * that level is taken and the relation is aggregated along the path across it.
+     *
+     * @return True if target is reached
+     */
+    private boolean meet(GraphStore store, int source, int target) {
+        prepare(store.size());
+        ensureBackwardCapacity();
+        pathLength = 0;
+        if (source == target) {
+            return false;
+        }
+        int head = 0, tail = 0, backwardHead = 0, backwardTail = 0;
+        queue[tail++] = source;
+        visitedGeneration[source] = generation;
+        parents[source] = -1;
+        depths[source] = 0;
+        backwardQueue[backwardTail++] = target;
+        backwardVisitedGeneration[target] = generation;
+        backwardParents[target] = -1;
+        backwardDepths[target] = 0;
+
+        int meeting = -1, meetingDistance = Integer.MAX_VALUE;
+        while (meeting < 0 && head < tail && backwardHead < backwardTail) {
+            boolean isForward = (tail - head) <= (backwardTail - backwardHead);
+            int[] levelQueue = isForward ? queue : backwardQueue;
+            int[] visited = isForward ? visitedGeneration : backwardVisitedGeneration;
+            int[] levelParents = isForward ? parents : backwardParents;
+            byte[] levelParentRelations = isForward ? parentRelations : backwardParentRelations;
+            int[] levelParentRelationLevels = isForward ? parentRelationLevels : backwardParentRelationLevels;
+            int[] levelDepths = isForward ? depths : backwardDepths;
+            int[] otherVisited = isForward ? backwardVisitedGeneration : visitedGeneration;
+            int[] otherDepths = isForward ? backwardDepths : depths;
+            int levelHead = isForward ? head : backwardHead;
+            int levelTail = isForward ? tail : backwardTail;
+
+            for (int levelEnd = levelTail; levelHead < levelEnd; ) {
+                int node = levelQueue[levelHead++];
+                store.openAdjacency(node, cursor);
+                for (int i = 0, degree = cursor.degree(); i < degree; i++) {
+                    int neighbour = cursor.neighbourAt(i);
+                    if (neighbour >= visitedGeneration.length) {
+                        // Arrays of this level are stale once grown, this member joined after the search started
+                        continue;
+                    }
+                    if (visited[neighbour] == generation) {
+                        continue;
+                    }
+                    int edgeRelation = cursor.relationOrdinalAt(i);
+                    int edgeRelationLevel = cursor.relationLevelAt(i);
+                    if (!isForward) {
+                        // Backward hops go from neighbour to node, through the mirror edge
+                        store.openAdjacency(neighbour, mirrorCursor);
+                        int mirror = mirrorCursor.positionOf(node);
+                        if (mirror < 0) {
+                            continue;
+                        }
+                        edgeRelation = mirrorCursor.relationOrdinalAt(mirror);
+                        edgeRelationLevel = mirrorCursor.relationLevelAt(mirror);
+                    }
+                    visited[neighbour] = generation;
+                    levelParents[neighbour] = node;
+                    levelParentRelations[neighbour] = (byte) edgeRelation;
+                    levelParentRelationLevels[neighbour] = edgeRelationLevel;
+                    levelDepths[neighbour] = levelDepths[node] + 1;
+                    levelQueue[levelTail++] = neighbour;
+                    if (otherVisited[neighbour] == generation
+                            && levelDepths[neighbour] + otherDepths[neighbour] < meetingDistance) {
+                        meeting = neighbour;
+                        meetingDistance = levelDepths[neighbour] + otherDepths[neighbour];
+                    }
+                }
+            }
+            if (isForward) {
+                head = levelHead;
+                tail = levelTail;
+            } else {
+                backwardHead = levelHead;
+                backwardTail = levelTail;
+            }
+        }
+        if (meeting < 0) {
+            return false;
+        }
+        recordPath(source, meeting, true);
+        aggregatePath(target);
+        return true;
+    }
+
+    /**
+     * Records hops from source to node through forward parent pointers, followed by hops from node to target through
+     * backward parent pointers if the search was bidirectional. Backward parents hold the relation of the mirror edge,
+     * from the member to its backward parent.
+     */
+    private void recordPath(int source, int node, boolean isBidirectional) {
+        pathLength = 0;
+        for (int hop = node; hop != source; hop = parents[hop]) {
+            pathLength++;
+        }
+        int hopCount = pathLength;
+        if (isBidirectional) {
+            for (int hop = node; backwardParents[hop] != -1; hop = backwardParents[hop]) {
+                hopCount++;
+            }
+        }
+        ensurePathCapacity(hopCount);
+        int hopIndex = pathLength;
+        for (int hop = node; hop != source; hop = parents[hop]) {
+            recordHop(--hopIndex, parents[hop], parentRelations[hop], parentRelationLevels[hop], hop);
+        }
+        if (!isBidirectional) {
+            return;
+        }
+        for (int hop = node; backwardParents[hop] != -1; hop = backwardParents[hop]) {
+            recordHop(pathLength++, hop, backwardParentRelations[hop], backwardParentRelationLevels[hop],
+                    backwardParents[hop]);
+        }
+    }
+
+    private void recordHop(int hopIndex, int from, int relation, int relationLevel, int to) {
+        pathFrom[hopIndex] = from;
+        pathTo[hopIndex] = to;
+        pathRelations[hopIndex] = (byte) relation;
+        pathRelationLevels[hopIndex] = relationLevel;
+    }
+
+    /**
+     * Aggregates relation along the recorded path, the same way {@link #traverse} aggregates hop by hop
+     */
+    private void aggregatePath(int target) {
+        byte relation = pathRelations[0];
+        int relationLevel = pathRelationLevels[0];
+        for (int hop = 1; hop < pathLength; hop++) {
+            relation = RelationAlgebra.compose(pathRelations[hop], relation);
+            relationLevel += RelationAlgebra.relationLevel(pathRelations[hop]);
+        }
+        relations[target] = relation;
+        relationLevels[target] = relationLevel;
+    }
+
+    /**
+     * @return Number of hops on the path recorded by the last search
+     */
+    int pathLength() {
+        return pathLength;
+    }
+
+    int pathFrom(int hop) {
+        return pathFrom[hop];
+    }
+
+    int pathTo(int hop) {
+        return pathTo[hop];
+    }
+
+    GenericRelation pathRelation(int hop) {
+        return RelationAlgebra.relationOf(pathRelations[hop]);
+    }
+
+    int pathRelationLevel(int hop) {
+        return pathRelationLevels[hop];
+    }
+
+    /**
+     * @return Aggregate relation of source with a member reached in the last traversal
+     */
+    GenericRelation relationOf(int node) {
+        return RelationAlgebra.relationOf(relations[node]);
+    }
+
+    int relationLevelOf(int node) {
+        return relationLevels[node];
+    }
+
+    private void prepare(int size) {
+        if (visitedGeneration.length < size) {
+            grow(size);
+        }
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(visitedGeneration, 0);
+            Arrays.fill(backwardVisitedGeneration, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Grows buffers keeping their state, for members added to a concurrent store during traversal
+     */
+    private void ensureCapacity(int node, GraphStore store) {
+        if (node >= visitedGeneration.length) {
+            grow(Math.max(node + 1, store.size()));
+        }
+    }
+
+    private void grow(int size) {
+        int capacity = Math.max(size, visitedGeneration.length + (visitedGeneration.length >> 1));
+        queue = Arrays.copyOf(queue, capacity);
+        visitedGeneration = Arrays.copyOf(visitedGeneration, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        parentRelations = Arrays.copyOf(parentRelations, capacity);
+        parentRelationLevels = Arrays.copyOf(parentRelationLevels, capacity);
+        relations = Arrays.copyOf(relations, capacity);
+        relationLevels = Arrays.copyOf(relationLevels, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+    }
+
+    /**
+     * Sizes backward buffers to the forward ones. Their state is not kept, a search starts with a new generation.
+     */
+    private void ensureBackwardCapacity() {
+        int capacity = visitedGeneration.length;
+        if (backwardVisitedGeneration.length < capacity) {
+            backwardQueue = new int[capacity];
+            backwardVisitedGeneration = new int[capacity];
+            backwardParents = new int[capacity];
+            backwardParentRelations = new byte[capacity];
+            backwardParentRelationLevels = new int[capacity];
+            backwardDepths = new int[capacity];
+        }
+    }
+
+    private void ensurePathCapacity(int hopCount) {
+        if (pathFrom.length < hopCount) {
+            int capacity = Math.max(hopCount, pathFrom.length * 2);
+            pathFrom = new int[capacity];
+            pathTo = new int[capacity];
+            pathRelations = new byte[capacity];
+            pathRelationLevels = new int[capacity];
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package core;
+
+import entities.ConnectionEdge;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size bounded cache of the connections a member has with all other persons in family, weighed by number of
+ * connections. Least recently used closures are evicted, but a new closure is admitted only if it is requested more
+ * often than the one it would evict (TinyLFU), so a scan of rarely queried members can't flush the popular ones.
+ * <p>
+ * Closures are stamped with the version of {@link FamilyComponents} they were computed at, and dropped once the
+ * component of their member changed later. The cache doesn't hear of changes itself, so connects never wait for it.
+ * <p>
+ * Thread-safe. Members are spread over stripes, each with its own lock, share of the bound and frequency sketch, so
+ * lookups of different members rarely wait for each other.
+ */
+public class ClosureCache {
+    public static final long DEFAULT_MAX_CONNECTIONS = 1 << 20;
+    private static final int MAX_STRIPES = 16;
+    private static final long MIN_CONNECTIONS_PER_STRIPE = 1 << 12; // Smaller caches are not split
+
+    private final long maxConnections;
+    private final Stripe[] stripes;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder rejectionCount = new LongAdder();
+    private final LongAdder invalidationCount = new LongAdder();
+
+    public ClosureCache() {
+        this(DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @param maxConnections Maximum number of connections held across all cached closures
+     */
+    public ClosureCache(long maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Max connections of closure cache should be positive: " + maxConnections);
+        }
+        this.maxConnections = maxConnections;
+        int stripeCount = Integer.highestOneBit((int) Math.max(1,
+                Math.min(maxConnections / MIN_CONNECTIONS_PER_STRIPE, MAX_STRIPES)));
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            // Leftover of an uneven split goes to the first stripe, so the bound holds exactly
+            stripes[i] = new Stripe(maxConnections / stripeCount + (i == 0 ? maxConnections % stripeCount : 0));
+        }
+    }
+
+    /**
+     * @param changedAt Version at which the family of member last changed
+     * @return Cached closure of member, null if absent or computed before the family changed
+     */
+    Set<ConnectionEdge> get(int member, long changedAt) {
+        Stripe stripe = stripeOf(member);
+        Closure closure;
+        stripe.lock.lock();
+        try {
+            stripe.sketch.increment(member);
+            closure = stripe.closures.get(member);
+            if (closure != null && closure.version < changedAt) {
+                stripe.remove(member, closure);
+                invalidationCount.increment();
+                closure = null;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (closure == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return closure.connections;
+    }
+
+    /**
+     * Caches closure of member, computed from version on. Closures of a family changed meanwhile are dropped by the
+     * next {@link #get}.
+     */
+    void put(int member, Set<ConnectionEdge> connections, long version) {
+        Stripe stripe = stripeOf(member);
+        stripe.lock.lock();
+        try {
+            Closure previous = stripe.closures.remove(member);
+            if (previous != null) {
+                stripe.connections -= weightOf(previous.connections);
+            }
+            long weight = weightOf(connections);
+            if (weight > stripe.maxConnections) {
+                rejectionCount.increment();
+                return;
+            }
+            if (stripe.connections + weight > stripe.maxConnections && stripe.sketch.frequency(member)
+                    <= stripe.sketch.frequency(stripe.closures.keySet().iterator().next())) {
+                rejectionCount.increment();
+                return;
+            }
+            Iterator<Map.Entry<Integer, Closure>> iterator = stripe.closures.entrySet().iterator();
+            while (stripe.connections + weight > stripe.maxConnections) {
+                Map.Entry<Integer, Closure> victim = iterator.next();
+                iterator.remove();
+                stripe.connections -= weightOf(victim.getValue().connections);
+                evictionCount.increment();
+            }
+            stripe.closures.put(member, new Closure(connections, version));
+            stripe.connections += weight;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public long getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return Number of closures cached
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.closures.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return Number of connections held across all cached closures
+     */
+    public long getConnectionCount() {
+        long connections = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                connections += stripe.connections;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return connections;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return Number of closures evicted to make room for more frequent ones
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return Number of closures not admitted, as they were less frequent than the ones to evict
+     */
+    public long getRejectionCount() {
+        return rejectionCount.sum();
+    }
+
+    /**
+     * @return Number of closures dropped as their family changed
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ClosureCache{closures=" + size() + ", connections=" + getConnectionCount() + "/" + maxConnections
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+                + ", rejections=" + getRejectionCount() + ", invalidations=" + getInvalidationCount() + "}";
+    }
+
+    private Stripe stripeOf(int member) {
+        return stripes[((member * 0x9E3779B9) >>> 16) & (stripes.length - 1)];
+    }
+
+    private static long weightOf(Set<ConnectionEdge> connections) {
+        return connections.size() + 1L;
+    }
+
+    /**
+     * Closures of the members spread to a stripe, in order of access, guarded by the lock of the stripe
+     */
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Integer, Closure> closures = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxConnections;
+        private final FrequencySketch sketch;
+        private long connections;
+
+        private Stripe(long maxConnections) {
+            this.maxConnections = maxConnections;
+            this.sketch = new FrequencySketch((int) Math.min(maxConnections / 8, 1 << 16));
+        }
+
+        private void remove(int member, Closure closure) {
+            closures.remove(member);
+            connections -= weightOf(closure.connections);
+        }
+    }
+
+    private static final class Closure {
+        private final Set<ConnectionEdge> connections;
+        private final long version;
+
+        private Closure(Set<ConnectionEdge> connections, long version) {
+            this.connections = connections;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Count-min sketch of how often members are requested, with 4 rows of counters saturating at 15. All counters are
+     * halved once the number of increments reaches ten times the width, so that past popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+                0xD6E8FEB86659FD93L};
+
+        private final int width;
+        private byte[] counters; // Allocated on first increment, many caches are never used
+        private int additions;
+
+        FrequencySketch(int expectedMembers) {
+            width = Integer.highestOneBit(Math.max(expectedMembers, 64) - 1) << 1;
+        }
+
+        void increment(int member) {
+            if (counters == null) {
+                counters = new byte[DEPTH * width];
+            }
+            if (additions >= 10 * width) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions = 0;
+            }
+            for (int row = 0; row < DEPTH; row++) {
+                int slot = slotOf(member, row);
+                if (counters[slot] < MAX_COUNT) {
+                    counters[slot]++;
+                }
+            }
+            additions++;
+        }
+
+        int frequency(int member) {
+            if (counters == null) {
+                return 0;
+            }
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, counters[slotOf(member, row)]);
+            }
+            return frequency;
+        }
+
+        private int slotOf(int member, int row) {
+            long hash = (member + 1L) * SEEDS[row];
+            return row * width + ((int) (hash >>> 32) & (width - 1));
+        }
+    }
+}
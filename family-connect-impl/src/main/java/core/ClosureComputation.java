@@ -0,0 +1,295 @@
+package core;
+
+import entities.ConnectionEdge;
+import entities.Member;
+import relationship.RelationAlgebra;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Computation of the connections every member has with all other persons in family, one Breadth-First search per
+ * member, run in parallel on a {@link ForkJoinPool}. Started through {@link FamilyGraph#computeAllConnections}.
+ * <p>
+ * Searches run over a read-only view of the family, a snapshot if the family is thread-safe, otherwise the family
+ * itself, which should not change until the computation is done. They skip the relation index and closure cache, and
+ * every worker reuses its own scratch buffers across the searches it runs.
+ * <p>
+ * Connections of each member are either handed to a sink on the worker that found them, or spilled into files in a
+ * directory, one per worker, to be read back through {@link #forEachSpilled} once done. Progress can be polled and the
+ * computation cancelled at any time, searches already running finish first.
+ */
+public final class ClosureComputation {
+    private static final int MEMBERS_PER_TASK = 64; // Searches run by a task that is not split any further
+    private static final int SPILL_BUFFER_SIZE = 1 << 16;
+    private static final int END_OF_CLOSURE = -1;
+
+    private final GraphStore store;
+    private final int memberCount;
+    private final BiConsumer<Member, Collection<ConnectionEdge>> sink;
+    private final Path spillDirectory;
+    private final Map<Thread, SpillWriter> spillWriters = new ConcurrentHashMap<>();
+    private final AtomicInteger spillFileIds = new AtomicInteger();
+    private final LongAdder completedMembers = new LongAdder();
+    private final ForkJoinTask<Void> task;
+    private volatile boolean isCancelled;
+    private volatile boolean isStopping; // Set on cancellation or failure, tasks still queued don't search
+
+    private ClosureComputation(GraphStore store, BiConsumer<Member, Collection<ConnectionEdge>> sink,
+                               Path spillDirectory) {
+        this.store = store;
+        this.memberCount = store.size();
+        this.sink = sink;
+        this.spillDirectory = spillDirectory;
+        this.task = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                try {
+                    new Searches(0, memberCount).invoke();
+                } finally {
+                    closeSpillWriters();
+                }
+            }
+        };
+    }
+
+    /**
+     * Starts handing the connections of every member to the sink, which is called from many workers at once
+     */
+    static ClosureComputation start(GraphStore store, ForkJoinPool pool,
+                                    BiConsumer<Member, Collection<ConnectionEdge>> sink) {
+        var computation = new ClosureComputation(store, sink, null);
+        pool.execute(computation.task);
+        return computation;
+    }
+
+    /**
+     * Starts spilling the connections of every member into files in the directory, created if absent
+     */
+    static ClosureComputation start(GraphStore store, ForkJoinPool pool, Path spillDirectory) {
+        try {
+            Files.createDirectories(spillDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var computation = new ClosureComputation(store, null, spillDirectory);
+        pool.execute(computation.task);
+        return computation;
+    }
+
+    /**
+     * @return Number of members whose connections are computed, of all those in family when the computation started
+     */
+    public int getMemberCount() {
+        return memberCount;
+    }
+
+    /**
+     * @return Number of members whose connections are computed so far
+     */
+    public long getCompletedCount() {
+        return completedMembers.sum();
+    }
+
+    /**
+     * @return Fraction of members whose connections are computed so far, from 0 to 1
+     */
+    public double getProgress() {
+        return memberCount == 0 ? 1 : (double) getCompletedCount() / memberCount;
+    }
+
+    /**
+     * Cancels the computation, members not searched yet are skipped
+     */
+    public void cancel() {
+        isCancelled = true;
+        isStopping = true;
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    public boolean isDone() {
+        return task.isDone();
+    }
+
+    /**
+     * Waits for the computation to finish
+     *
+     * @throws CancellationException if the computation was cancelled
+     * @throws RuntimeException      thrown by the sink or while spilling
+     */
+    public void join() {
+        task.join();
+        if (isCancelled) {
+            throw new CancellationException("Computation of all connections cancelled after "
+                    + getCompletedCount() + " of " + memberCount + " members");
+        }
+    }
+
+    /**
+     * Reads spilled connections back, member by member in the order they were spilled, holding the connections of one
+     * member at a time. Waits for the computation to finish first.
+     *
+     * @param consumer Called with every member and its connections
+     */
+    public void forEachSpilled(BiConsumer<Member, Collection<ConnectionEdge>> consumer) {
+        if (spillDirectory == null) {
+            throw new IllegalStateException("Connections were handed to a sink, not spilled");
+        }
+        join();
+        for (SpillWriter writer : spillWriters.values()) {
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(writer.file),
+                    SPILL_BUFFER_SIZE))) {
+                for (int closure = 0; closure < writer.closureCount; closure++) {
+                    Member member = store.getMember(in.readInt());
+                    List<ConnectionEdge> connections = new ArrayList<>();
+                    for (int node = in.readInt(); node != END_OF_CLOSURE; node = in.readInt()) {
+                        connections.add(new ConnectionEdge(member, RelationAlgebra.relationOf(in.readByte()),
+                                store.getMember(node), in.readInt()));
+                    }
+                    consumer.accept(member, Collections.unmodifiableList(connections));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @return Files connections were spilled into, one per worker
+     */
+    public List<Path> getSpillFiles() {
+        List<Path> files = new ArrayList<>();
+        spillWriters.values().forEach(writer -> files.add(writer.file));
+        return files;
+    }
+
+    private void search(int source) {
+        Member member = store.getMember(source);
+        try (var kernel = BfsKernel.acquire()) {
+            if (sink != null) {
+                List<ConnectionEdge> connections = new ArrayList<>();
+                kernel.traverse(store, source, -1, node -> connections.add(new ConnectionEdge(member,
+                        kernel.relationOf(node), store.getMember(node), kernel.relationLevelOf(node))));
+                sink.accept(member, Collections.unmodifiableList(connections));
+            } else {
+                SpillWriter writer = spillWriters.computeIfAbsent(Thread.currentThread(), thread ->
+                        new SpillWriter(spillDirectory.resolve("closure-" + spillFileIds.getAndIncrement() + ".bin")));
+                DataOutputStream out = writer.out;
+                try {
+                    out.writeInt(source);
+                    kernel.traverse(store, source, -1, node -> {
+                        try {
+                            out.writeInt(node);
+                            out.writeByte(kernel.relationOf(node).ordinal());
+                            out.writeInt(kernel.relationLevelOf(node));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    out.writeInt(END_OF_CLOSURE);
+                    writer.closureCount++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    private void closeSpillWriters() {
+        UncheckedIOException failure = null;
+        for (SpillWriter writer : spillWriters.values()) {
+            try {
+                writer.out.close();
+            } catch (IOException e) {
+                failure = new UncheckedIOException(e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Searches from members with index in a range, split in halves until small enough, so idle workers steal the
+     * halves of members with the largest families
+     */
+    private final class Searches extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        private Searches(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > MEMBERS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                var upperHalf = new Searches(middle, to);
+                upperHalf.fork();
+                try {
+                    new Searches(from, middle).compute();
+                } finally {
+                    upperHalf.quietlyJoin(); // Even if the lower half failed, so no search outlives the spill writers
+                }
+                upperHalf.join();
+                return;
+            }
+            for (int source = from; source < to && !isStopping; source++) {
+                try {
+                    search(source);
+                } catch (RuntimeException e) {
+                    isStopping = true;
+                    throw e;
+                }
+                completedMembers.increment();
+            }
+        }
+    }
+
+    /**
+     * Spill file of a worker, written only by that worker
+     */
+    private static final class SpillWriter {
+        private final Path file;
+        private final DataOutputStream out;
+        private int closureCount;
+
+        private SpillWriter(Path file) {
+            this.file = file;
+            try {
+                this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                        SPILL_BUFFER_SIZE));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package core;
+
+import entities.Member;
+import relationship.GenericRelation;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Primitive, CSR style store for large families. Member ids are interned through an open addressing table of ints and
+ * all edges live in three shared arrays (neighbour index, relation ordinal, relation level), where every member owns a
+ * contiguous segment addressed by its start offset. A segment that runs out of room is moved to the end with double
+ * the capacity, and the holes left behind are reclaimed by {@link #compact()}.
+ * <p>
+ * This keeps the whole graph in a handful of arrays, at around 6 bytes per edge, instead of one {@code ConnectionEdge}
+ * and one hash entry per edge. Members can be held in columns too, see {@link MemberLayout}.
+ */
+public class CompactGraphStore implements GraphStore {
+    private static final int MIN_SEGMENT_CAPACITY = 4;
+
+    /**
+     * How members are held by the store
+     */
+    public enum MemberLayout {
+        /**
+         * Members as they are added, returned as the same objects
+         */
+        OBJECTS,
+        /**
+         * Members in columns, with names interned, returned as new objects equal to those added
+         */
+        COLUMNS,
+        /**
+         * Members in columns, with ids and names off heap
+         */
+        OFF_HEAP_COLUMNS
+    }
+
+    private final MemberLayout memberLayout;
+    private final MemberTable members;
+    private int memberCapacity;
+    private int memberCount;
+    private int[] idTable; // Slot holds member index + 1, 0 for an empty slot.
+
+    private int[] segmentStart;
+    private int[] segmentCapacity;
+    private int[] degrees;
+
+    private int[] neighbours;
+    private byte[] relations;
+    private byte[] relationLevels;
+    private int edgeSlotsUsed;
+    private int wastedEdgeSlots;
+    private long epoch;
+    private boolean isSnapshot;
+
+    public CompactGraphStore() {
+        this(16, 64);
+    }
+
+    /**
+     * @param expectedMembers Expected number of members, to pre-size member arrays
+     * @param expectedEdges   Expected number of directed edges, to pre-size edge arrays
+     */
+    public CompactGraphStore(int expectedMembers, int expectedEdges) {
+        this(expectedMembers, expectedEdges, MemberLayout.OBJECTS);
+    }
+
+    /**
+     * @param expectedMembers Expected number of members, to pre-size member arrays
+     * @param expectedEdges   Expected number of directed edges, to pre-size edge arrays
+     * @param memberLayout    How members are held
+     */
+    public CompactGraphStore(int expectedMembers, int expectedEdges, MemberLayout memberLayout) {
+        this.memberLayout = memberLayout;
+        memberCapacity = Math.max(expectedMembers, 1);
+        members = (memberLayout == MemberLayout.OBJECTS) ? new MemberTable.MemberArray(memberCapacity)
+                : new MemberColumns(memberCapacity, memberLayout == MemberLayout.OFF_HEAP_COLUMNS);
+        idTable = new int[tableCapacityFor(memberCapacity)];
+        segmentStart = new int[memberCapacity];
+        segmentCapacity = new int[memberCapacity];
+        degrees = new int[memberCapacity];
+        int edgeCapacity = Math.max(expectedEdges, MIN_SEGMENT_CAPACITY);
+        neighbours = new int[edgeCapacity];
+        relations = new byte[edgeCapacity];
+        relationLevels = new byte[edgeCapacity];
+    }
+
+    /**
+     * Publishes a new epoch and returns a packed copy of the store as it is, in the same member layout, that can't be
+     * modified. Costs a copy of the store.
+     *
+     * @return Immutable store
+     */
+    @Override
+    public GraphStore snapshot() {
+        if (isSnapshot) {
+            return this;
+        }
+        var snapshot = new CompactGraphStore(memberCount, 0, memberLayout);
+        GraphStore.copyInto(this, snapshot);
+        snapshot.epoch = epoch++;
+        snapshot.isSnapshot = true;
+        return snapshot;
+    }
+
+    @Override
+    public long epoch() {
+        return epoch;
+    }
+
+    @Override
+    public int addMember(Member member) {
+        checkWritable();
+        String id = member.getId();
+        int hash = id.hashCode();
+        int mask = idTable.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = idTable[slot];
+            if (entry == 0) {
+                return insertMember(member, slot);
+            }
+            if (members.idHash(entry - 1) == hash && members.hasId(entry - 1, id)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private int insertMember(Member member, int slot) {
+        if (memberCount == memberCapacity) {
+            int capacity = memberCount + (memberCount >> 1) + 1;
+            growMembers(capacity);
+        }
+        int index = memberCount++;
+        members.add(index, member);
+        idTable[slot] = index + 1;
+        if (memberCount * 2 > idTable.length) {
+            rehash(idTable.length * 2);
+        }
+        return index;
+    }
+
+    private void growMembers(int capacity) {
+        memberCapacity = capacity;
+        members.ensureCapacity(capacity);
+        segmentStart = Arrays.copyOf(segmentStart, capacity);
+        segmentCapacity = Arrays.copyOf(segmentCapacity, capacity);
+        degrees = Arrays.copyOf(degrees, capacity);
+    }
+
+    @Override
+    public void ensureCapacity(int expectedMembers, int expectedEdges) {
+        checkWritable();
+        if (expectedMembers > memberCapacity) {
+            growMembers(expectedMembers);
+        }
+        if (tableCapacityFor(expectedMembers) > idTable.length) {
+            rehash(tableCapacityFor(expectedMembers));
+        }
+        ensureEdgeCapacity(expectedEdges);
+    }
+
+    private void rehash(int capacity) {
+        idTable = new int[capacity];
+        int mask = capacity - 1;
+        for (int index = 0; index < memberCount; index++) {
+            int slot = mix(members.idHash(index)) & mask;
+            while (idTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            idTable[slot] = index + 1;
+        }
+    }
+
+    @Override
+    public int indexOf(String memberId) {
+        int hash = memberId.hashCode();
+        int mask = idTable.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = idTable[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (members.idHash(entry - 1) == hash && members.hasId(entry - 1, memberId)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    @Override
+    public Member getMember(int index) {
+        checkIndex(index);
+        return members.get(index);
+    }
+
+    @Override
+    public int size() {
+        return memberCount;
+    }
+
+    @Override
+    public Collection<Member> getAllMembers() {
+        return new AbstractList<>() {
+            @Override
+            public Member get(int index) {
+                return getMember(index);
+            }
+
+            @Override
+            public int size() {
+                return memberCount;
+            }
+        };
+    }
+
+    @Override
+    public boolean addEdge(int from, GenericRelation relation, int to, int relationLevel) {
+        checkWritable();
+        checkIndex(from);
+        checkIndex(to);
+        GraphStore.checkRelationLevel(relationLevel);
+        int start = segmentStart[from];
+        int end = start + degrees[from];
+        for (int slot = start; slot < end; slot++) {
+            if (neighbours[slot] == to && relations[slot] == relation.ordinal() && relationLevels[slot] == relationLevel) {
+                return false;
+            }
+        }
+        if (degrees[from] == segmentCapacity[from]) {
+            growSegment(from);
+        }
+        int slot = segmentStart[from] + degrees[from]++;
+        neighbours[slot] = to;
+        relations[slot] = (byte) relation.ordinal();
+        relationLevels[slot] = (byte) relationLevel;
+        return true;
+    }
+
+    /**
+     * Moves the segment of a member to the end of edge arrays with double the capacity
+     */
+    private void growSegment(int node) {
+        int capacity = Math.max(MIN_SEGMENT_CAPACITY, segmentCapacity[node] * 2);
+        if (edgeSlotsUsed + capacity > neighbours.length && wastedEdgeSlots > edgeSlotsUsed / 2) {
+            compact();
+            if (degrees[node] < segmentCapacity[node]) {
+                return;
+            }
+        }
+        ensureEdgeCapacity(edgeSlotsUsed + capacity);
+        int start = edgeSlotsUsed;
+        System.arraycopy(neighbours, segmentStart[node], neighbours, start, degrees[node]);
+        System.arraycopy(relations, segmentStart[node], relations, start, degrees[node]);
+        System.arraycopy(relationLevels, segmentStart[node], relationLevels, start, degrees[node]);
+        wastedEdgeSlots += segmentCapacity[node];
+        segmentStart[node] = start;
+        segmentCapacity[node] = capacity;
+        edgeSlotsUsed += capacity;
+    }
+
+    private void ensureEdgeCapacity(int required) {
+        if (required > neighbours.length) {
+            int capacity = Math.max(required, neighbours.length + (neighbours.length >> 1));
+            neighbours = Arrays.copyOf(neighbours, capacity);
+            relations = Arrays.copyOf(relations, capacity);
+            relationLevels = Arrays.copyOf(relationLevels, capacity);
+        }
+    }
+
+    /**
+     * Packs all segments back to back in member order, leaving one free slot per member with any edges, and releases
+     * the holes left by grown segments.
+     */
+    public void compact() {
+        checkWritable();
+        int required = 0;
+        for (int node = 0; node < memberCount; node++) {
+            required += segmentCapacityAfterCompaction(node);
+        }
+        var packedNeighbours = new int[Math.max(required, MIN_SEGMENT_CAPACITY)];
+        var packedRelations = new byte[packedNeighbours.length];
+        var packedRelationLevels = new byte[packedNeighbours.length];
+        int start = 0;
+        for (int node = 0; node < memberCount; node++) {
+            System.arraycopy(neighbours, segmentStart[node], packedNeighbours, start, degrees[node]);
+            System.arraycopy(relations, segmentStart[node], packedRelations, start, degrees[node]);
+            System.arraycopy(relationLevels, segmentStart[node], packedRelationLevels, start, degrees[node]);
+            segmentStart[node] = start;
+            segmentCapacity[node] = segmentCapacityAfterCompaction(node);
+            start += segmentCapacity[node];
+        }
+        neighbours = packedNeighbours;
+        relations = packedRelations;
+        relationLevels = packedRelationLevels;
+        edgeSlotsUsed = start;
+        wastedEdgeSlots = 0;
+    }
+
+    private int segmentCapacityAfterCompaction(int node) {
+        return degrees[node] == 0 ? 0 : degrees[node] + 1;
+    }
+
+    @Override
+    public boolean removeEdge(int from, int to) {
+        checkWritable();
+        checkIndex(from);
+        int start = segmentStart[from];
+        int last = start + degrees[from] - 1;
+        for (int slot = start; slot <= last; slot++) {
+            if (neighbours[slot] == to) {
+                // Shift the rest of the segment, to keep edges in their order of insertion
+                System.arraycopy(neighbours, slot + 1, neighbours, slot, last - slot);
+                System.arraycopy(relations, slot + 1, relations, slot, last - slot);
+                System.arraycopy(relationLevels, slot + 1, relationLevels, slot, last - slot);
+                degrees[from]--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int degree(int node) {
+        checkIndex(node);
+        return degrees[node];
+    }
+
+    @Override
+    public void openAdjacency(int node, AdjacencyCursor cursor) {
+        checkIndex(node);
+        cursor.wrap(neighbours, relations, relationLevels, segmentStart[node], degrees[node]);
+    }
+
+    private void checkWritable() {
+        if (isSnapshot) {
+            throw new UnsupportedOperationException("Snapshot of epoch " + epoch + " can't be modified");
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= memberCount) {
+            throw new IndexOutOfBoundsException("Member index " + index + " not present in store");
+        }
+    }
+
+    private static int tableCapacityFor(int members) {
+        return Integer.highestOneBit(Math.max(members * 2 - 1, 1)) << 1;
+    }
+
+    static int mix(int hash) {
+        // Spread String hash codes, they are poorly distributed in the low bits for sequential ids.
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
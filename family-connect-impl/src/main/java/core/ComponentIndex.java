@@ -0,0 +1,159 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Disjoint sets of member indexes, one per family component, with union by size and path compression. Members not seen
+ * yet are their own component. Every component carries the clock values at which its connections last changed and at
+ * which paths between its members last changed, a merge keeps the later ones. Components never invalidated report the
+ * clock value the index was built at.
+ * <p>
+ * Not thread-safe, {@link #find} never writes so it may run concurrently with other finds.
+ */
+final class ComponentIndex {
+    private int[] parents = new int[0];
+    private int[] sizes = new int[0];
+    private long[] changedAt = new long[0];
+    private long[] pathsChangedAt = new long[0];
+    private final long builtAt;
+
+    ComponentIndex() {
+        this(0);
+    }
+
+    /**
+     * @param builtAt Clock value every component reports until it is invalidated
+     */
+    ComponentIndex(long builtAt) {
+        this.builtAt = builtAt;
+    }
+
+    int find(int node) {
+        int[] currentParents = parents;
+        if (node >= currentParents.length) {
+            return node;
+        }
+        while (currentParents[node] != node) {
+            node = currentParents[node];
+        }
+        return node;
+    }
+
+    /**
+     * Points every member on the path from node directly to the root of its component
+     *
+     * @return Root of the component
+     */
+    int compress(int node) {
+        int root = find(node);
+        int[] currentParents = parents;
+        while (node < currentParents.length && currentParents[node] != root) {
+            int parent = currentParents[node];
+            currentParents[node] = root;
+            node = parent;
+        }
+        return root;
+    }
+
+    /**
+     * @return True if node is the root of its component or points to it directly
+     */
+    boolean isCompressed(int node) {
+        int[] currentParents = parents;
+        return node >= currentParents.length || currentParents[currentParents[node]] == currentParents[node];
+    }
+
+    /**
+     * @return True if both were in different components and are now merged
+     */
+    boolean union(int node, int otherNode) {
+        ensureCapacity(Math.max(node, otherNode) + 1);
+        int root = compress(node);
+        int otherRoot = compress(otherNode);
+        if (root == otherRoot) {
+            return false;
+        }
+        if (sizes[root] < sizes[otherRoot]) {
+            int swap = root;
+            root = otherRoot;
+            otherRoot = swap;
+        }
+        parents[otherRoot] = root;
+        sizes[root] += sizes[otherRoot];
+        changedAt[root] = Math.max(changedAt[root], changedAt[otherRoot]);
+        pathsChangedAt[root] = Math.max(pathsChangedAt[root], pathsChangedAt[otherRoot]);
+        return true;
+    }
+
+    /**
+     * Merges components of all the connections in store
+     */
+    void unionAll(GraphStore store) {
+        var cursor = new AdjacencyCursor();
+        for (int node = 0; node < store.size(); node++) {
+            store.openAdjacency(node, cursor);
+            for (int i = 0; i < cursor.degree(); i++) {
+                union(node, cursor.neighbourAt(i));
+            }
+        }
+    }
+
+    /**
+     * Marks connections of the component of node changed at clock
+     *
+     * @param isPathChange True if paths between members of the component may have changed too
+     */
+    void invalidate(int node, long clock, boolean isPathChange) {
+        ensureCapacity(node + 1);
+        int root = find(node);
+        changedAt[root] = clock;
+        if (isPathChange) {
+            pathsChangedAt[root] = clock;
+        }
+    }
+
+    /**
+     * @return Clock value at which connections of the component of node last changed
+     */
+    long changedAt(int node) {
+        return clockOf(changedAt, node);
+    }
+
+    /**
+     * @return Clock value at which paths between members of the component of node last changed
+     */
+    long pathsChangedAt(int node) {
+        return clockOf(pathsChangedAt, node);
+    }
+
+    private long clockOf(long[] clocks, int node) {
+        int root = find(node);
+        return Math.max(builtAt, root < clocks.length ? clocks[root] : 0);
+    }
+
+    /**
+     * @return Number of members in the component of node
+     */
+    int sizeOf(int node) {
+        int root = find(node);
+        int[] currentSizes = sizes;
+        return root < currentSizes.length ? currentSizes[root] : 1;
+    }
+
+    private void ensureCapacity(int size) {
+        if (parents.length >= size) {
+            return;
+        }
+        int capacity = Math.max(size, parents.length + (parents.length >> 1));
+        int[] grownParents = Arrays.copyOf(parents, capacity);
+        int[] grownSizes = Arrays.copyOf(sizes, capacity);
+        for (int node = parents.length; node < capacity; node++) {
+            grownParents[node] = node;
+            grownSizes[node] = 1;
+        }
+        changedAt = Arrays.copyOf(changedAt, capacity);
+        pathsChangedAt = Arrays.copyOf(pathsChangedAt, capacity);
+        sizes = grownSizes;
+        parents = grownParents;
+    }
+}
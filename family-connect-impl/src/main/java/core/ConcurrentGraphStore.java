@@ -0,0 +1,399 @@
+package core;
+
+import entities.Member;
+import relationship.GenericRelation;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe store, where readers never block. Adjacency of every member is an immutable {@link Adjacency} published
+ * through an atomic reference, so a reader positioned on it sees a consistent set of connections however writers
+ * proceed. Writers lock a stripe chosen by member index, so writes on unrelated members rarely contend.
+ * <p>
+ * An append publishes a new {@link Adjacency} sharing the arrays of the previous one when they have room left, readers
+ * of the previous one never look past its degree. Removals always copy.
+ * <p>
+ * {@link #snapshot()} publishes a new epoch and returns an immutable store of the previous one, sharing structure with
+ * this store: members are kept in chunks, and the snapshot only copies the table of chunks. The first write into a
+ * chunk in the new epoch clones the chunk (its adjacency references), chunks that are not written stay shared.
+ * Writers hold the epoch lock shared, so a snapshot waits for writes in progress and never sees a half applied one.
+ */
+public class ConcurrentGraphStore implements GraphStore {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final Adjacency EMPTY_ADJACENCY = new Adjacency(new int[0], new byte[0], new byte[0], 0);
+
+    private final ConcurrentHashMap<String, Integer> personIdMap;
+    private final Object memberLock = new Object();
+    private final Object[] stripes;
+    private final ReadWriteLock epochLock = new ReentrantReadWriteLock();
+    private volatile AtomicReferenceArray<Chunk> chunks;
+    private volatile int size;
+    private long epoch;
+    private final boolean isSnapshot;
+
+    public ConcurrentGraphStore() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param concurrencyLevel Expected number of concurrent writers, rounded up to a power of two for lock stripes
+     */
+    public ConcurrentGraphStore(int concurrencyLevel) {
+        personIdMap = new ConcurrentHashMap<>();
+        chunks = new AtomicReferenceArray<>(0);
+        isSnapshot = false;
+        stripes = new Object[Integer.highestOneBit(Math.max(concurrencyLevel, 1) * 2 - 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Snapshot of a store, members with index beyond size are not part of it
+     */
+    private ConcurrentGraphStore(ConcurrentHashMap<String, Integer> personIdMap, AtomicReferenceArray<Chunk> chunks,
+                                 int size, long epoch) {
+        this.personIdMap = personIdMap;
+        this.chunks = chunks;
+        this.size = size;
+        this.epoch = epoch;
+        this.isSnapshot = true;
+        this.stripes = new Object[0];
+    }
+
+    /**
+     * Publishes a new epoch and returns the state of the current one, which stays as it is however this store changes.
+     * Costs a copy of one reference per {@value #CHUNK_SIZE} members.
+     *
+     * @return Immutable store
+     */
+    @Override
+    public GraphStore snapshot() {
+        if (isSnapshot) {
+            return this;
+        }
+        epochLock.writeLock().lock();
+        try {
+            AtomicReferenceArray<Chunk> currentChunks = chunks;
+            var snapshotChunks = new AtomicReferenceArray<Chunk>(currentChunks.length());
+            for (int i = 0; i < currentChunks.length(); i++) {
+                snapshotChunks.set(i, currentChunks.get(i));
+            }
+            return new ConcurrentGraphStore(personIdMap, snapshotChunks, size, epoch++);
+        } finally {
+            epochLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long epoch() {
+        epochLock.readLock().lock();
+        try {
+            return epoch;
+        } finally {
+            epochLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public int addMember(Member member) {
+        Integer index = personIdMap.get(member.getId());
+        if (index != null && index < size) {
+            return index;
+        }
+        checkWritable();
+        epochLock.readLock().lock();
+        try {
+            synchronized (memberLock) {
+                index = personIdMap.get(member.getId());
+                if (index == null) {
+                    index = size;
+                    if ((index >> CHUNK_BITS) == chunks.length()) {
+                        var grownChunks = new AtomicReferenceArray<Chunk>(chunks.length() + 1);
+                        for (int i = 0; i < chunks.length(); i++) {
+                            grownChunks.set(i, chunks.get(i));
+                        }
+                        grownChunks.set(chunks.length(), new Chunk(new Member[CHUNK_SIZE],
+                                new AtomicReferenceArray<>(CHUNK_SIZE), epoch));
+                        chunks = grownChunks;
+                    }
+                    Chunk chunk = writableChunkOf(index);
+                    chunk.members[index & (CHUNK_SIZE - 1)] = member;
+                    chunk.adjacencies.set(index & (CHUNK_SIZE - 1), EMPTY_ADJACENCY);
+                    // Member is written before its index is published, through the map or size
+                    personIdMap.put(member.getId(), index);
+                    size = index + 1;
+                }
+                return index;
+            }
+        } finally {
+            epochLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns chunk of the member that belongs to the current epoch, cloning the chunk on its first write in the epoch.
+     * Must be called holding the epoch lock shared.
+     */
+    private Chunk writableChunkOf(int index) {
+        int chunkIndex = index >> CHUNK_BITS;
+        Chunk chunk = chunks.get(chunkIndex);
+        if (chunk.epoch == epoch) {
+            return chunk;
+        }
+        synchronized (memberLock) {
+            chunk = chunks.get(chunkIndex);
+            if (chunk.epoch != epoch) {
+                chunk = chunk.copy(epoch);
+                chunks.set(chunkIndex, chunk);
+            }
+            return chunk;
+        }
+    }
+
+    @Override
+    public int indexOf(String memberId) {
+        Integer index = personIdMap.get(memberId);
+        // Snapshots share the map with their store, which may know members added after them
+        return (index == null || index >= size) ? -1 : index;
+    }
+
+    @Override
+    public Member getMember(int index) {
+        return chunkOf(index).members[index & (CHUNK_SIZE - 1)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Collection<Member> getAllMembers() {
+        return new AbstractList<>() {
+            @Override
+            public Member get(int index) {
+                return getMember(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public boolean addEdge(int from, GenericRelation relation, int to, int relationLevel) {
+        GraphStore.checkRelationLevel(relationLevel);
+        checkWritable();
+        checkIndex(from);
+        checkIndex(to);
+        epochLock.readLock().lock();
+        try {
+            synchronized (stripeOf(from)) {
+                return append(from, relation.ordinal(), to, relationLevel);
+            }
+        } finally {
+            epochLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds both edges holding locks of both members, so no other writer interleaves between them.
+     */
+    @Override
+    public void addEdgePair(int from, GenericRelation relation, int to, int relationLevel) {
+        GraphStore.checkRelationLevel(relationLevel);
+        checkWritable();
+        checkIndex(from);
+        checkIndex(to);
+        // Locks are always taken in order of stripe, to avoid dead locks between writers connecting the same pair
+        Object firstLock = stripeOf(Math.min(stripeIndexOf(from), stripeIndexOf(to)));
+        Object secondLock = stripeOf(Math.max(stripeIndexOf(from), stripeIndexOf(to)));
+        epochLock.readLock().lock();
+        try {
+            synchronized (firstLock) {
+                synchronized (secondLock) {
+                    append(from, relation.ordinal(), to, relationLevel);
+                    append(to, relation.getReverseRelation().ordinal(), from, -relationLevel);
+                }
+            }
+        } finally {
+            epochLock.readLock().unlock();
+        }
+    }
+
+    private boolean append(int from, int relation, int to, int relationLevel) {
+        AtomicReferenceArray<Adjacency> adjacencies = writableChunkOf(from).adjacencies;
+        int offset = from & (CHUNK_SIZE - 1);
+        Adjacency adjacency = adjacencies.get(offset);
+        if (adjacency.contains(to, relation, relationLevel)) {
+            return false;
+        }
+        adjacencies.set(offset, adjacency.append(to, relation, relationLevel));
+        return true;
+    }
+
+    @Override
+    public boolean removeEdge(int from, int to) {
+        checkWritable();
+        checkIndex(from);
+        int offset = from & (CHUNK_SIZE - 1);
+        epochLock.readLock().lock();
+        try {
+            synchronized (stripeOf(from)) {
+                AtomicReferenceArray<Adjacency> adjacencies = writableChunkOf(from).adjacencies;
+                Adjacency adjacency = adjacencies.get(offset);
+                Adjacency remaining = adjacency.remove(to);
+                if (remaining == adjacency) {
+                    return false;
+                }
+                adjacencies.set(offset, remaining);
+                return true;
+            }
+        } finally {
+            epochLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int degree(int node) {
+        return adjacencyOf(node).degree;
+    }
+
+    @Override
+    public void openAdjacency(int node, AdjacencyCursor cursor) {
+        Adjacency adjacency = adjacencyOf(node);
+        cursor.wrap(adjacency.neighbours, adjacency.relations, adjacency.relationLevels, 0, adjacency.degree);
+    }
+
+    private Adjacency adjacencyOf(int node) {
+        return chunkOf(node).adjacencies.get(node & (CHUNK_SIZE - 1));
+    }
+
+    private Chunk chunkOf(int index) {
+        checkIndex(index);
+        return chunks.get(index >> CHUNK_BITS);
+    }
+
+    private void checkWritable() {
+        if (isSnapshot) {
+            throw new UnsupportedOperationException("Snapshot of epoch " + epoch + " can't be modified");
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Member index " + index + " not present in store");
+        }
+    }
+
+    private int stripeIndexOf(int node) {
+        return node & (stripes.length - 1);
+    }
+
+    private Object stripeOf(int node) {
+        return stripes[stripeIndexOf(node)];
+    }
+
+    /**
+     * Members of a chunk are only ever appended, so clones of a chunk share them.
+     */
+    private static final class Chunk {
+        private final Member[] members;
+        private final AtomicReferenceArray<Adjacency> adjacencies;
+        private final long epoch;
+
+        private Chunk(Member[] members, AtomicReferenceArray<Adjacency> adjacencies, long epoch) {
+            this.members = members;
+            this.adjacencies = adjacencies;
+            this.epoch = epoch;
+        }
+
+        private Chunk copy(long epoch) {
+            var copiedAdjacencies = new AtomicReferenceArray<Adjacency>(CHUNK_SIZE);
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                copiedAdjacencies.set(i, adjacencies.get(i));
+            }
+            return new Chunk(members, copiedAdjacencies, epoch);
+        }
+    }
+
+    /**
+     * Immutable view of direct connections of a member, only the first degree entries of arrays belong to it.
+     */
+    private static final class Adjacency {
+        private final int[] neighbours;
+        private final byte[] relations;
+        private final byte[] relationLevels;
+        private final int degree;
+
+        private Adjacency(int[] neighbours, byte[] relations, byte[] relationLevels, int degree) {
+            this.neighbours = neighbours;
+            this.relations = relations;
+            this.relationLevels = relationLevels;
+            this.degree = degree;
+        }
+
+        private boolean contains(int neighbour, int relation, int relationLevel) {
+            for (int i = 0; i < degree; i++) {
+                if (neighbours[i] == neighbour && relations[i] == relation && relationLevels[i] == relationLevel) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Must be called holding the stripe lock of the member, only one appender may write past the degree.
+         */
+        private Adjacency append(int neighbour, int relation, int relationLevel) {
+            int[] appendedNeighbours = neighbours;
+            byte[] appendedRelations = relations;
+            byte[] appendedRelationLevels = relationLevels;
+            if (degree == neighbours.length) {
+                int capacity = Math.max(4, degree * 2);
+                appendedNeighbours = Arrays.copyOf(neighbours, capacity);
+                appendedRelations = Arrays.copyOf(relations, capacity);
+                appendedRelationLevels = Arrays.copyOf(relationLevels, capacity);
+            }
+            appendedNeighbours[degree] = neighbour;
+            appendedRelations[degree] = (byte) relation;
+            appendedRelationLevels[degree] = (byte) relationLevel;
+            return new Adjacency(appendedNeighbours, appendedRelations, appendedRelationLevels, degree + 1);
+        }
+
+        private Adjacency remove(int neighbour) {
+            for (int i = 0; i < degree; i++) {
+                if (neighbours[i] == neighbour) {
+                    int[] remainingNeighbours = new int[degree - 1];
+                    byte[] remainingRelations = new byte[degree - 1];
+                    byte[] remainingRelationLevels = new byte[degree - 1];
+                    copyWithout(neighbours, remainingNeighbours, i);
+                    copyWithout(relations, remainingRelations, i);
+                    copyWithout(relationLevels, remainingRelationLevels, i);
+                    return new Adjacency(remainingNeighbours, remainingRelations, remainingRelationLevels, degree - 1);
+                }
+            }
+            return this;
+        }
+
+        private void copyWithout(Object source, Object destination, int position) {
+            System.arraycopy(source, 0, destination, 0, position);
+            System.arraycopy(source, position + 1, destination, position, degree - position - 1);
+        }
+    }
+}
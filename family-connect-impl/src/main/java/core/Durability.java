@@ -0,0 +1,24 @@
+package core;
+
+/**
+ * How far a mutation is on its way to disk when the call that made it returns, as logged by {@link MutationLog}
+ */
+public enum Durability {
+    /**
+     * Kept in the buffer of the log until it fills, lost if the process crashes. Fastest.
+     */
+    BUFFERED,
+    /**
+     * Written to the OS, survives a crash of the process but not of the machine
+     */
+    FLUSHED,
+    /**
+     * Written and synced to disk in the background every sync interval, a crash loses at most the last interval
+     */
+    PERIODIC_SYNC,
+    /**
+     * Synced to disk. Mutations made at the same time from different threads share a single sync (group commit), so the
+     * cost of a sync is spread over all of them.
+     */
+    SYNC
+}
@@ -0,0 +1,176 @@
+package core;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Components of the family graph, members in different components are not connected in any way. Components are merged
+ * as members get connected. A removal that may split a component marks the index stale, and it is rebuilt from the
+ * store on the next lookup, so many removals in a row cost a single rebuild.
+ * <p>
+ * The one index of components in a family, indexes of earlier results invalidate by it. Every change is stamped with
+ * the next value of a clock: a connection stamps the component it ends up in as changed, and also its paths unless it
+ * bridged two components, whose shortest paths stay the same. A removal stamps both. Results computed as of
+ * {@link #version()} are stale once the component of their member is stamped later. A rebuild stamps every component.
+ * <p>
+ * Thread-safe, lookups are optimistic and don't block each other.
+ */
+final class FamilyComponents {
+    private final StampedLock lock = new StampedLock();
+    private ComponentIndex components = new ComponentIndex();
+    private volatile boolean isStale = true; // Built from the store on first lookup
+    private volatile long clock;
+
+    /**
+     * Returns the version to stamp a result with, to be read before the result is computed
+     */
+    long version() {
+        return clock;
+    }
+
+    /**
+     * Called after two members got connected
+     */
+    void onConnect(int from, int to) {
+        long stamp = lock.writeLock();
+        try {
+            long changedAt = clock + 1;
+            boolean isBridge = components.union(from, to);
+            components.invalidate(from, changedAt, !isBridge);
+            clock = changedAt;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Called after a connection between two members got removed
+     *
+     * @param isLastConnection True if no connection is left between them in either direction, which may split the
+     *                         component
+     */
+    void onDisconnect(int from, boolean isLastConnection) {
+        long stamp = lock.writeLock();
+        try {
+            long changedAt = clock + 1;
+            components.invalidate(from, changedAt, true);
+            clock = changedAt;
+            if (isLastConnection) {
+                isStale = true;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Builds components from the connections already in the store if not built yet, to be called before results are
+     * stamped, so connections the index missed don't leave them valid
+     */
+    void build(GraphStore store) {
+        if (isStale) {
+            rebuild(store);
+        }
+    }
+
+    /**
+     * @return Clock value at which connections of the component of member last changed
+     */
+    long changedAt(int member) {
+        long stamp = lock.tryOptimisticRead();
+        long changedAt = components.changedAt(member);
+        if (lock.validate(stamp)) {
+            return changedAt;
+        }
+        stamp = lock.readLock();
+        try {
+            return components.changedAt(member);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return Clock value at which paths between members of the component of member last changed
+     */
+    long pathsChangedAt(int member) {
+        long stamp = lock.tryOptimisticRead();
+        long pathsChangedAt = components.pathsChangedAt(member);
+        if (lock.validate(stamp)) {
+            return pathsChangedAt;
+        }
+        stamp = lock.readLock();
+        try {
+            return components.pathsChangedAt(member);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return True if the members are in the same component of the store
+     */
+    boolean areInSameComponent(GraphStore store, int member, int otherMember) {
+        build(store);
+        long stamp = lock.tryOptimisticRead();
+        ComponentIndex currentComponents = components;
+        boolean isSameComponent = currentComponents.find(member) == currentComponents.find(otherMember);
+        boolean isCompressed = currentComponents.isCompressed(member) && currentComponents.isCompressed(otherMember);
+        if (lock.validate(stamp)) {
+            if (!isCompressed) {
+                compress(member, otherMember);
+            }
+            return isSameComponent;
+        }
+        stamp = lock.readLock();
+        try {
+            return components.find(member) == components.find(otherMember);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void rebuild(GraphStore store) {
+        long stamp = lock.writeLock();
+        try {
+            if (isStale) {
+                // Cleared before reading the store, removals that follow mark it stale again
+                isStale = false;
+                long builtAt = clock + 1;
+                var rebuiltComponents = new ComponentIndex(builtAt);
+                rebuiltComponents.unionAll(store);
+                components = rebuiltComponents;
+                clock = builtAt;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns an id of the component of member, that stays the same until the family changes
+     */
+    int componentOf(GraphStore store, int member) {
+        build(store);
+        long stamp = lock.readLock();
+        try {
+            return components.find(member);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Shortens long paths found by a lookup, only if no one else holds the lock
+     */
+    private void compress(int member, int otherMember) {
+        long stamp = lock.tryWriteLock();
+        if (stamp != 0) {
+            try {
+                components.compress(member);
+                components.compress(otherMember);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+}
@@ -5,28 +5,115 @@ import entities.Member;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import org.springframework.beans.factory.annotation.Autowired;
 import relationship.GenericRelation;
+import relationship.LeveledRelation;
 import relationship.Relation;
+import relationship.RelationAlgebra;
 import relationship.SpecificRelation;
 import validation.Validator;
 
+import java.io.Closeable;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static utils.FilterUtils.*;
-import static utils.RelationUtils.parseToGenericRelation;
+import static utils.RelationUtils.parseToLeveledRelation;
 
 /**
  * This is the central Data Structure that holds all the Persons in the family and their corresponding connections.
  */
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
-public class FamilyGraph implements Family {
-    private final Map<String, Member> personIdMap = new HashMap<>(); // Represents all the persons put into the graph.
-    private final Map<Member, Set<ConnectionEdge>> relationMap = new HashMap<>();
+public class FamilyGraph implements Family, Closeable {
+    private static final int COMPONENT_LOCK_STRIPES = 64;
+    private static final long NO_STRIPES = -1L;
+    private static final int UNKNOWN = -1;
+
     @NonNull
     @Getter
     private final Validator validator;
+    @NonNull
+    private final GraphStore store; // Represents all the persons put into the graph and their direct connections.
+    @NonNull
+    @Getter
+    @Setter
+    private SearchMode searchMode = SearchMode.FORWARD; // Used for searches between two members
+    @NonNull
+    @Getter
+    @Setter
+    private volatile ClosureCache closureCache = new ClosureCache(); // Connections of frequently queried members
+    private final MemberIndex memberIndex = new MemberIndex(); // Members by age and gender
+    private final FamilyComponents components = new FamilyComponents(); // Members that are connected
+    private final RelationIndex relationIndex = new RelationIndex(components); // Relations found by earlier searches
+    @Getter
+    @Setter
+    private volatile MutationLog mutationLog; // Mutations are logged into it if set, to replay them after a restart
+    private final List<FamilyGraphListener> listeners = new CopyOnWriteArrayList<>();
+    // Connects of a thread-safe family validate and write under the locks of the components they join, by their root
+    private final Lock[] componentLocks = newLocks(COMPONENT_LOCK_STRIPES);
+    // Read by connects, written by removals and merges of shards, which may split components and move their roots
+    private final ReadWriteLock splitLock = new ReentrantReadWriteLock();
+    // Read by logged mutations from appending them till they are applied, written by compactions of the log
+    private final ReadWriteLock logLock = new ReentrantReadWriteLock();
+    // Pairs of members connected in one direction only, counted once a bidirectional search needs it
+    private final AtomicInteger oneSidedPairs = new AtomicInteger(UNKNOWN);
+
+    public FamilyGraph(Validator validator) {
+        this(validator, new HashGraphStore());
+    }
+
+    /**
+     * Returns an immutable snapshot of the family, consistent as of now. Queries on the snapshot don't wait for or see
+     * writes that follow, and it can't be modified. Indexes of the snapshot are built from its store by the first query
+     * that needs them, so taking it costs only the snapshot of the store.
+     *
+     * @return Family graph over snapshot of the store
+     */
+    @Override
+    public FamilyGraph snapshot() {
+        GraphStore storeSnapshot;
+        // Keeps connects out, so the snapshot never has a connection without its mirror
+        splitLock.writeLock().lock();
+        try {
+            storeSnapshot = store.snapshot();
+        } finally {
+            splitLock.writeLock().unlock();
+        }
+        var snapshot = new FamilyGraph(validator, storeSnapshot);
+        snapshot.setSearchMode(searchMode);
+        snapshot.setClosureCache(new ClosureCache(closureCache.getMaxConnections()));
+        return snapshot;
+    }
+
+    /**
+     * Writes members and connections of the family into a snapshot file, which can be served after a restart through
+     * {@link MappedGraphStore#open}. A thread-safe family is written as of a snapshot, so writes can go on meanwhile.
+     *
+     * @param file Snapshot file, replaced if present
+     */
+    public void writeSnapshot(Path file) {
+        MappedGraphStore.write(readOnlyStore(), file);
+    }
+
+    /**
+     * @return Epoch of the family, incremented with every snapshot
+     */
+    public long getEpoch() {
+        return store.epoch();
+    }
 
     /**
      * Returns all the neighbour direct relations of a persons
@@ -35,7 +122,18 @@ public class FamilyGraph implements Family {
      * @return neighbours of the member
      */
     public Set<ConnectionEdge> getAllNeighbourConnections(Member member) {
-        return relationMap.get(member);
+        int node = store.indexOf(member.getId());
+        if (node < 0) {
+            return Collections.emptySet();
+        }
+        var cursor = new AdjacencyCursor();
+        store.openAdjacency(node, cursor);
+        Set<ConnectionEdge> connections = new LinkedHashSet<>();
+        for (int i = 0; i < cursor.degree(); i++) {
+            connections.add(new ConnectionEdge(member, RelationAlgebra.relationOf(cursor.relationOrdinalAt(i)),
+                    store.getMember(cursor.neighbourAt(i)), cursor.relationLevelAt(i)));
+        }
+        return connections;
     }
 
     /**
@@ -44,10 +142,101 @@ public class FamilyGraph implements Family {
      * @param member Member to add
      */
     public void addPerson(Member member) {
-        if (!relationMap.containsKey(member)) {
-            personIdMap.put(member.getId(), member);
-            relationMap.put(member, new HashSet<>());
+        MutationLog log = mutationLog;
+        Lock loggedLock = lockLog(log);
+        try {
+            addMember(member, log);
+        } finally {
+            unlockLog(loggedLock);
         }
+        if (log != null) {
+            log.commit();
+            log.compactIfDue(this);
+        }
+    }
+
+    /**
+     * Appends member to log if it is new, then adds it to the store and indexes and notifies listeners
+     */
+    private int addMember(Member member, MutationLog log) {
+        if (log != null && store.indexOf(member.getId()) < 0) {
+            log.appendMember(member); // Logged twice if added by another thread meanwhile, replays the same
+        }
+        int size = store.size();
+        int index = store.addMember(member);
+        if (index >= size) { // Members already present are indexed already
+            memberIndex.add(index, member);
+            listeners.forEach(listener -> listener.onPersonAdded(member));
+        }
+        return index;
+    }
+
+    /**
+     * Locks out compactions of log, from appending a mutation till it is applied, so a compaction never empties the log
+     * of a mutation its snapshot misses
+     *
+     * @return Lock held, null if the family is not logged
+     */
+    private Lock lockLog(MutationLog log) {
+        if (log == null) {
+            return null;
+        }
+        Lock loggedLock = logLock.readLock();
+        loggedLock.lock();
+        return loggedLock;
+    }
+
+    private static void unlockLog(Lock loggedLock) {
+        if (loggedLock != null) {
+            loggedLock.unlock();
+        }
+    }
+
+    /**
+     * Makes a mutation applied as durable as log promises, then compacts the log if it grew too large
+     *
+     * @param sequence Sequence number of the last record of the mutation
+     */
+    private void commitLogged(MutationLog log, long sequence) {
+        log.commit(sequence);
+        log.compactIfDue(this);
+    }
+
+    /**
+     * Runs action while no logged mutation is in progress, mutations wait till it is done
+     */
+    void whileMutationsPaused(Runnable action) {
+        logLock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            logLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Syncs and closes the mutation log, if set, so mutations acknowledged before a shutdown are not lost. Mutations
+     * of a closed family fail.
+     */
+    @Override
+    public void close() {
+        MutationLog log = mutationLog;
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    /**
+     * Registers listener to be called on every change of the family from now on
+     *
+     * @param listener Listener of changes
+     */
+    public void addListener(@NonNull FamilyGraphListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(FamilyGraphListener listener) {
+        listeners.remove(listener);
     }
 
     /**
@@ -71,19 +260,20 @@ public class FamilyGraph implements Family {
      */
     @Override
     public void connectPersons(String p1Id, String relation, String p2Id) {
-        var p1 = personIdMap.get(p1Id);
-        var p2 = personIdMap.get(p2Id);
+        int p1Index = store.indexOf(p1Id);
+        int p2Index = store.indexOf(p2Id);
         // If we are given only ID, we can't create a person object without other attributes, so we check his existence 
         // instead of adding him to family if he is new.
-        if (p1 == null) {
+        if (p1Index < 0) {
             throw new IllegalArgumentException("Member with Id: " + p1Id + " not found in family to connect");
         }
-        if (p2 == null) {
+        if (p2Index < 0) {
             throw new IllegalArgumentException("Member with Id: " + p2Id + " not found in family to connect");
         }
-        // relation string parameter can either be generic or specific
-        GenericRelation GenericRelation = parseToGenericRelation(relation);
-        connectPersons(p1, GenericRelation, p2, GenericRelation.getRelationLevel(), true);
+        // relation string parameter can either be generic or specific, and implies the level
+        LeveledRelation leveledRelation = parseToLeveledRelation(relation);
+        connectPersons(store.getMember(p1Index), leveledRelation.genericRelation(), store.getMember(p2Index),
+                leveledRelation.relationLevel(), true);
     }
 
 
@@ -97,13 +287,100 @@ public class FamilyGraph implements Family {
      */
     public void connectPersons(Member p1, GenericRelation GenericRelation, Member p2, int relationLevel, boolean
             doValidate) {
-        addPerson(p1);
-        addPerson(p2);
-        if (doValidate && !validator.validate(p1, GenericRelation, p2, relationLevel, this)) {
-            throw new IllegalArgumentException(new ConnectionEdge(p1, GenericRelation, p2) + " is NOT a valid Relation");
+        GraphStore.checkRelationLevel(relationLevel);
+        MutationLog log = mutationLog;
+        long sequence = 0;
+        Lock loggedLock = lockLog(log);
+        try {
+            int p1Index = addMember(p1, log);
+            int p2Index = addMember(p2, log);
+            long lockedStripes = lockComponents(p1Index, p2Index);
+            try {
+                if (doValidate && !validator.validate(p1, GenericRelation, p2, relationLevel, this)) {
+                    throw new IllegalArgumentException(new ConnectionEdge(p1, GenericRelation, p2)
+                            + " is NOT a valid Relation");
+                }
+                if (log != null) {
+                    sequence = log.appendConnect(p1.getId(), GenericRelation, p2.getId(), relationLevel);
+                }
+                boolean wasOneSided = oneSidedPairs.get() != UNKNOWN && isOneSided(p1Index, p2Index);
+                store.addEdgePair(p1Index, GenericRelation, p2Index, relationLevel);
+                components.onConnect(p1Index, p2Index);
+                if (wasOneSided) {
+                    oneSidedPairs.decrementAndGet();
+                }
+            } finally {
+                unlockComponents(lockedStripes);
+            }
+        } finally {
+            unlockLog(loggedLock);
         }
-        relationMap.get(p1).add(new ConnectionEdge(p1, GenericRelation, p2, relationLevel));
-        relationMap.get(p2).add(new ConnectionEdge(p2, GenericRelation.getReverseRelation(), p1, -relationLevel));
+        if (log != null) {
+            commitLogged(log, sequence);
+        }
+        listeners.forEach(listener -> listener.onPersonsConnected(p1, GenericRelation, p2, relationLevel));
+    }
+
+    /**
+     * Locks the components of both members, so that validating and connecting them is atomic with respect to other
+     * connects joining either component. Families that are not thread-safe are guarded by their callers instead.
+     *
+     * @return Stripes locked, the lower one in the high bits, to unlock with {@link #unlockComponents}
+     */
+    private long lockComponents(int member, int otherMember) {
+        if (!store.isThreadSafe()) {
+            return NO_STRIPES;
+        }
+        splitLock.readLock().lock();
+        try {
+            // No removal can split components until unlocked, so roots change only by merges, under locks of both
+            components.build(store);
+            while (true) {
+                int root = components.componentOf(store, member);
+                int otherRoot = components.componentOf(store, otherMember);
+                int stripe = Math.min(stripeOf(root), stripeOf(otherRoot));
+                int otherStripe = Math.max(stripeOf(root), stripeOf(otherRoot));
+                componentLocks[stripe].lock();
+                if (otherStripe != stripe) {
+                    componentLocks[otherStripe].lock();
+                }
+                // Either member may have been merged into another component while waiting
+                if (components.componentOf(store, member) == root
+                        && components.componentOf(store, otherMember) == otherRoot) {
+                    return ((long) stripe << 32) | otherStripe;
+                }
+                unlockStripes(stripe, otherStripe);
+            }
+        } catch (RuntimeException | Error e) {
+            splitLock.readLock().unlock();
+            throw e;
+        }
+    }
+
+    private void unlockComponents(long lockedStripes) {
+        if (lockedStripes != NO_STRIPES) {
+            unlockStripes((int) (lockedStripes >>> 32), (int) lockedStripes);
+            splitLock.readLock().unlock();
+        }
+    }
+
+    private void unlockStripes(int stripe, int otherStripe) {
+        if (otherStripe != stripe) {
+            componentLocks[otherStripe].unlock();
+        }
+        componentLocks[stripe].unlock();
+    }
+
+    private static int stripeOf(int root) {
+        return ((root * 0x9E3779B9) >>> 16) & (COMPONENT_LOCK_STRIPES - 1);
+    }
+
+    private static Lock[] newLocks(int count) {
+        Lock[] locks = new Lock[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
     }
 
     /**
@@ -134,6 +411,109 @@ public class FamilyGraph implements Family {
         });
     }
 
+    /**
+     * Moves all members and connections of another family into this one as they are, without validating, logging or
+     * notifying listeners. Used to merge shards of a {@link ShardedFamily}.
+     *
+     * @param other Family to take members and connections from, left unchanged
+     */
+    void absorb(FamilyGraph other) {
+        splitLock.writeLock().lock();
+        try {
+            absorbUnlocked(other);
+        } finally {
+            splitLock.writeLock().unlock();
+        }
+    }
+
+    private void absorbUnlocked(FamilyGraph other) {
+        GraphStore from = other.store;
+        int[] indexes = new int[from.size()];
+        store.ensureCapacity(store.size() + indexes.length, 0);
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = store.addMember(from.getMember(i));
+            memberIndex.add(indexes[i], store.getMember(indexes[i]));
+        }
+        var cursor = new AdjacencyCursor();
+        for (int i = 0; i < indexes.length; i++) {
+            from.openAdjacency(i, cursor);
+            for (int j = 0; j < cursor.degree(); j++) {
+                int to = indexes[cursor.neighbourAt(j)];
+                if (store.addEdge(indexes[i], RelationAlgebra.relationOf(cursor.relationOrdinalAt(j)), to,
+                        cursor.relationLevelAt(j))) {
+                    components.onConnect(indexes[i], to);
+                }
+            }
+        }
+        // Members of both are apart, so pairs connected in one direction carry over as they are
+        int otherOneSidedPairs = other.oneSidedPairs.get();
+        if (otherOneSidedPairs == UNKNOWN) {
+            oneSidedPairs.set(UNKNOWN);
+        } else if (oneSidedPairs.get() != UNKNOWN) {
+            oneSidedPairs.addAndGet(otherOneSidedPairs);
+        }
+    }
+
+    /**
+     * @return True if members are connected in one direction, but not the other
+     */
+    private boolean isOneSided(int member, int otherMember) {
+        var cursor = new AdjacencyCursor();
+        store.openAdjacency(member, cursor);
+        boolean isConnected = cursor.positionOf(otherMember) >= 0;
+        store.openAdjacency(otherMember, cursor);
+        return isConnected != (cursor.positionOf(member) >= 0);
+    }
+
+    /**
+     * Returns the mode to search between two members with. A backward search reaches members through the mirrors of
+     * their connections, so it would miss connections whose mirror was removed, the family is searched forward while
+     * it has any.
+     */
+    private SearchMode searchModeForPair() {
+        SearchMode mode = searchMode;
+        if (mode != SearchMode.BIDIRECTIONAL) {
+            return mode;
+        }
+        int count = oneSidedPairs.get();
+        if (count == UNKNOWN) {
+            // Not counted while a connect holds the split lock, as on validation, searched forward meanwhile
+            if (!splitLock.writeLock().tryLock()) {
+                return SearchMode.FORWARD;
+            }
+            try {
+                count = oneSidedPairs.get();
+                if (count == UNKNOWN) {
+                    count = countOneSidedPairs();
+                    oneSidedPairs.set(count);
+                }
+            } finally {
+                splitLock.writeLock().unlock();
+            }
+        }
+        return count == 0 ? mode : SearchMode.FORWARD;
+    }
+
+    private int countOneSidedPairs() {
+        int count = 0;
+        var cursor = new AdjacencyCursor();
+        var mirrorCursor = new AdjacencyCursor();
+        for (int node = 0; node < store.size(); node++) {
+            store.openAdjacency(node, cursor);
+            for (int i = 0; i < cursor.degree(); i++) {
+                int neighbour = cursor.neighbourAt(i);
+                if (cursor.positionOf(neighbour) != i) {
+                    continue; // Pair counted at its first connection
+                }
+                store.openAdjacency(neighbour, mirrorCursor);
+                if (mirrorCursor.positionOf(node) < 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
     /**
      * Disconnects persons
      *
@@ -141,16 +521,35 @@ public class FamilyGraph implements Family {
      * @param p2 To Member
      */
     public void removeDirectConnection(Member p1, Member p2) {
-        if (!arePersonsDirectlyConnected(p1, p2)) {
-            throw new IllegalArgumentException(p1 + " is NOT directly connected to " + p2);
-        }
-        for (Iterator<ConnectionEdge> iterator = getAllNeighbourConnections(p1).iterator(); iterator.hasNext(); ) {
-            ConnectionEdge connection = iterator.next();
-            if (connection.to().equals(p2)) {
-                iterator.remove();
-                return;
+        int p1Index = store.indexOf(p1.getId());
+        int p2Index = store.indexOf(p2.getId());
+        MutationLog log = mutationLog;
+        long sequence = 0;
+        Lock loggedLock = lockLog(log);
+        splitLock.writeLock().lock();
+        try {
+            if (!arePersonsDirectlyConnected(p1, p2)) {
+                throw new IllegalArgumentException(p1 + " is NOT directly connected to " + p2);
+            }
+            if (log != null) {
+                sequence = log.appendDisconnect(p1.getId(), p2.getId());
             }
+            boolean wasOneSided = isOneSided(p1Index, p2Index);
+            store.removeEdge(p1Index, p2Index);
+            if (oneSidedPairs.get() != UNKNOWN) {
+                oneSidedPairs.addAndGet((isOneSided(p1Index, p2Index) ? 1 : 0) - (wasOneSided ? 1 : 0));
+            }
+            // Only the last connection between them may split the family
+            components.onDisconnect(p1Index,
+                    !arePersonsDirectlyConnected(p1, p2) && !arePersonsDirectlyConnected(p2, p1));
+        } finally {
+            splitLock.writeLock().unlock();
+            unlockLog(loggedLock);
+        }
+        if (log != null) {
+            commitLogged(log, sequence);
         }
+        listeners.forEach(listener -> listener.onDirectConnectionRemoved(p1, p2));
     }
 
     /**
@@ -161,11 +560,62 @@ public class FamilyGraph implements Family {
      * @return True if directly Connected
      */
     public boolean arePersonsDirectlyConnected(Member p1, Member p2) {
-        for (ConnectionEdge connection : getAllNeighbourConnections(p1)) {
-            if (p2.equals(connection.to()))
-                return true;
+        int p1Index = store.indexOf(p1.getId());
+        int p2Index = store.indexOf(p2.getId());
+        if (p1Index < 0 || p2Index < 0) {
+            return false;
         }
-        return false;
+        var cursor = new AdjacencyCursor();
+        store.openAdjacency(p1Index, cursor);
+        return cursor.positionOf(p2Index) >= 0;
+    }
+
+    /**
+     * Checks if two persons belong to the same family component, without a search. Connections are followed in either
+     * direction, so after removing one direction of a connection the persons are still related, although
+     * {@link #getConnection} may not find a path from p1 to p2.
+     *
+     * @param p1 Member 1
+     * @param p2 Member 2
+     * @return True if p1 and p2 are connected directly or indirectly
+     */
+    @Override
+    public boolean areRelated(Member p1, Member p2) {
+        int p1Index = store.indexOf(p1.getId());
+        int p2Index = store.indexOf(p2.getId());
+        return p1Index >= 0 && p2Index >= 0 && components.areInSameComponent(store, p1Index, p2Index);
+    }
+
+    @Override
+    public boolean mayBeRelated(Member p1, Member p2) {
+        return areRelated(p1, p2);
+    }
+
+    /**
+     * Returns an id of the family component of a member, same for all members of the component until the family changes
+     *
+     * @param member Member in family
+     * @return Id of the component
+     */
+    public int getFamilyComponent(Member member) {
+        return components.componentOf(store, indexOfMemberInFamily(member));
+    }
+
+    /**
+     * Grows the family once for the members and connections expected, ahead of a bulk load
+     *
+     * @param expectedMembers     Expected number of members
+     * @param expectedConnections Expected number of connections, each stored along with its reverse
+     */
+    public void ensureCapacity(int expectedMembers, int expectedConnections) {
+        store.ensureCapacity(expectedMembers, (int) Math.min(expectedConnections * 2L, Integer.MAX_VALUE));
+    }
+
+    /**
+     * @return True if members can be connected from many threads at once
+     */
+    public boolean isThreadSafe() {
+        return store.isThreadSafe();
     }
 
     /**
@@ -176,11 +626,11 @@ public class FamilyGraph implements Family {
      */
     @Override
     public Member getPersonById(String pId) {
-        Member member = personIdMap.get(pId);
-        if (member == null) {
+        int index = store.indexOf(pId);
+        if (index < 0) {
             throw new IllegalArgumentException("Member Id: " + pId + " NOT present in family");
         }
-        return member;
+        return store.getMember(index);
     }
 
     /**
@@ -189,220 +639,318 @@ public class FamilyGraph implements Family {
      * @return Collection of all persons in family
      */
     public Collection<Member> getAllPersonsInFamily() {
-        return personIdMap.values();
+        return store.getAllMembers();
     }
 
     /**
-     * Returns the direct/indirect connection between two persons
+     * Returns the direct/indirect connection between two persons. Pairs recorded in the relation index are answered
+     * without a search.
      *
      * @param p1             From Member
      * @param p2             To Member
-     * @param doBatchConnect
+     * @param doBatchConnect Records the connection found in the relation index, to answer the pair again without a search
      * @return Connection
      */
     public ConnectionEdge getConnection(Member p1, Member p2, boolean doBatchConnect) {
-        var connection = bfsTraverseFamilyGraph(p1, p2, null, doBatchConnect);
         // If p2 is not reached, both are not connected
-        return (connection != null && connection.to().equals(p2)) ? connection : null;
+        return bfsTraverseFamilyGraph(p1, p2, null, doBatchConnect);
     }
 
     /**
      * Returns all connections the member have with all other persons in family
      *
      * @param member                              Member for whom the graph is queried
-     * @param makeNewConnectionsFoundDuringSearch Boolean to indicate if establish all new connections found during search
+     * @param makeNewConnectionsFoundDuringSearch Boolean to indicate if record all connections found in the relation index
      * @return List of all Connections the member have with all other persons in family
      */
     public Collection<ConnectionEdge> getAllConnectionsInFamilyForPerson(Member member, boolean makeNewConnectionsFoundDuringSearch) {
+        if (!makeNewConnectionsFoundDuringSearch) {
+            return new HashSet<>(getClosure(member));
+        }
         Set<ConnectionEdge> connectionsToPopulate = new HashSet<>();
-        bfsTraverseFamilyGraph(member, null, connectionsToPopulate, makeNewConnectionsFoundDuringSearch);
+        bfsTraverseFamilyGraph(member, null, connectionsToPopulate, true);
         return connectionsToPopulate;
     }
 
+    /**
+     * Computes the connections every member has with all other persons in family, in parallel on the pool, and hands
+     * those of each member to the sink as soon as they are found. The sink is called from many workers at once.
+     * <p>
+     * The computation runs over a snapshot of a thread-safe family, other families should not change until it is done.
+     *
+     * @param pool Pool to run searches on
+     * @param sink Called with every member and all its connections
+     * @return Computation in progress, to follow, cancel or wait for
+     */
+    public ClosureComputation computeAllConnections(@NonNull ForkJoinPool pool,
+                                                    @NonNull BiConsumer<Member, Collection<ConnectionEdge>> sink) {
+        return ClosureComputation.start(readOnlyStore(), pool, sink);
+    }
+
+    /**
+     * Computes the connections every member has with all other persons in family, in parallel on the pool, and spills
+     * them into files in the directory, so they don't have to fit in memory. Read them back through
+     * {@link ClosureComputation#forEachSpilled}.
+     *
+     * @param pool           Pool to run searches on
+     * @param spillDirectory Directory to spill connections into, created if absent
+     * @return Computation in progress, to follow, cancel or wait for
+     */
+    public ClosureComputation computeAllConnections(@NonNull ForkJoinPool pool, @NonNull Path spillDirectory) {
+        return ClosureComputation.start(readOnlyStore(), pool, spillDirectory);
+    }
+
+    private GraphStore readOnlyStore() {
+        return store.isThreadSafe() ? store.snapshot() : store;
+    }
+
+    /**
+     * Streams all connections the member has with all other persons in family, nearest first, as the Breadth-First
+     * search reaches them. Nothing is collected or cached, members are traversed only as far as the stream is
+     * consumed, so the first connections come right away and memory stays small however large the family is.
+     * <p>
+     * The family should not change while the stream is consumed, unless it is thread-safe. Then the stream may or may
+     * not see the changes.
+     *
+     * @param member Member for whom the graph is queried
+     * @return Lazy stream of all Connections the member have with all other persons in family
+     */
+    public Stream<ConnectionEdge> streamAllConnectionsInFamilyForPerson(Member member) {
+        var traversal = new FamilyTraversal(store, indexOfMemberInFamily(member));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(traversal,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Streams the connections of the member matching the query, nearest first. Predicates of the query are checked as
+     * the search goes, which stops at the max hops or limit of the query, and skips the relatives beyond which nothing
+     * can match. Nothing is collected or cached, as with {@link #streamAllConnectionsInFamilyForPerson}.
+     *
+     * @param member Member for whom the graph is queried
+     * @param query  Query of connections
+     * @return Lazy stream of matching Connections
+     */
+    public Stream<ConnectionEdge> streamConnections(Member member, @NonNull TraversalQuery query) {
+        var traversal = new FamilyTraversal(store, indexOfMemberInFamily(member), query);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(traversal,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Publishes all connections the member has with all other persons in family, as
+     * {@link #streamAllConnectionsInFamilyForPerson} streams them. The search runs on the executor and goes only as far
+     * as subscribers request, every subscriber gets a search of its own.
+     *
+     * @param member   Member for whom the graph is queried
+     * @param executor Executor to search and signal subscribers on
+     * @return Publisher of all Connections the member have with all other persons in family
+     */
+    public Flow.Publisher<ConnectionEdge> publishAllConnectionsInFamilyForPerson(Member member, Executor executor) {
+        int source = indexOfMemberInFamily(member);
+        return new IteratorPublisher<>(() -> new FamilyTraversal(store, source), executor);
+    }
+
+    /**
+     * Returns all connections the member have with all other persons in family, from the closure cache if present
+     *
+     * @param member Member for whom the graph is queried
+     * @return Unmodifiable set of all Connections the member have with all other persons in family
+     */
+    private Set<ConnectionEdge> getClosure(Member member) {
+        int node = indexOfMemberInFamily(member);
+        ClosureCache cache = closureCache;
+        Set<ConnectionEdge> closure = cache.get(node, components.changedAt(node));
+        if (closure == null) {
+            components.build(store);
+            // Read before the search, so that the closure is dropped if the family changes meanwhile
+            long version = components.version();
+            Set<ConnectionEdge> connections = new HashSet<>();
+            bfsTraverseFamilyGraph(member, null, connections, false);
+            closure = Collections.unmodifiableSet(connections);
+            cache.put(node, closure, version);
+        }
+        return closure;
+    }
+
     /**
      * Traverse Family graph in Breadth-First way, to populate connectionsToPopulate and returns connection with aggregate
-     * relation. This is used by both getAllConnectionsInFamilyForPerson and getConnection
+     * relation. This is used by both getAllConnectionsInFamilyForPerson and getConnection. Traversal runs on member
+     * indexes with per thread scratch buffers, connections are created only for the results. Connections found are
+     * recorded in the relation index instead of the graph, so that the adjacency holds only direct connections.
      *
      * @param p1                                  From Member
      * @param p2                                  To Member
      * @param connectionsToPopulate               Connections to be populated for family graph
-     * @param makeNewConnectionsFoundDuringSearch Boolean to indicate if establish all new connections found during search
-     * @return Connection with aggregate relation
+     * @param makeNewConnectionsFoundDuringSearch Boolean to indicate if record all connections found in the relation index
+     * @return Connection with aggregate relation, null if p2 is not reached
      */
     private ConnectionEdge bfsTraverseFamilyGraph(Member p1, Member p2, Set<ConnectionEdge> connectionsToPopulate,
                                                   boolean makeNewConnectionsFoundDuringSearch) {
-        if (p1 == null || personIdMap.get(p1.getId()) == null) {
-            throw new IllegalArgumentException("Member " + p1 + " not found in family");
-        }
-        if (p2 != null && personIdMap.get(p2.getId()) == null) {
-            throw new IllegalArgumentException("Member " + p2 + " not found in family");
-        }
-
-        Queue<Member> queue = new LinkedList<>();
-        Map<Member, Boolean> visited = new HashMap<>();
-        Map<Member, ConnectionEdge> relationMap = new HashMap<>();
-        ConnectionEdge previousConnection = null;
-        Member neighbourRelative;
-        GenericRelation currentRelation, nextRelation;
+        int source = indexOfMemberInFamily(p1);
+        int target = (p2 == null) ? -1 : indexOfMemberInFamily(p2);
 
         boolean isGettingFamilyGraphForPerson = (p2 == null);
         if (isGettingFamilyGraphForPerson && connectionsToPopulate == null) {
             connectionsToPopulate = new HashSet<>();
         }
 
-        queue.add(p1);
-        visited.put(p1, true);
-        loop:
-        while (!queue.isEmpty()) {
-            Member p = queue.poll();
-            for (ConnectionEdge edge : getAllNeighbourConnections(p)) {
-                if (visited.get(edge.to()) == null) {
-                    neighbourRelative = edge.to();
-                    previousConnection = relationMap.get(edge.from());
-                    if (previousConnection == null) {
-                        previousConnection = edge;
-                    } else {
-                        currentRelation = edge.relation();
-                        nextRelation = currentRelation.getNextGenericRelation(previousConnection.relation());
-                        previousConnection = new ConnectionEdge(p1, nextRelation, neighbourRelative,
-                                previousConnection.relationLevel() + currentRelation.getRelationLevel());
-                    }
+        if (!isGettingFamilyGraphForPerson) {
+            int entry = relationIndex.lookup(source, target);
+            if (entry != RelationIndex.NO_ENTRY) {
+                return new ConnectionEdge(p1, RelationIndex.relationOf(entry), p2, RelationIndex.relationLevelOf(entry));
+            }
+            if (!components.areInSameComponent(store, source, target)) {
+                // p2 is in another family, a search would traverse the whole family of p1 without reaching it
+                return null;
+            }
+        }
 
-                    if (isGettingFamilyGraphForPerson) {
-                        connectionsToPopulate.add(previousConnection);
-                    } else if (neighbourRelative.equals(p2)) {
-                        break loop;
+        if (makeNewConnectionsFoundDuringSearch) {
+            components.build(store);
+        }
+        // Read before the search, so that results are dropped if the family changes meanwhile
+        long version = components.version();
+        ConnectionEdge connection = null;
+        try (var kernel = BfsKernel.acquire()) {
+            if (isGettingFamilyGraphForPerson) {
+                Set<ConnectionEdge> connections = connectionsToPopulate;
+                kernel.traverse(store, source, target, node -> {
+                    GenericRelation relation = kernel.relationOf(node);
+                    int relationLevel = kernel.relationLevelOf(node);
+                    connections.add(new ConnectionEdge(p1, relation, store.getMember(node), relationLevel));
+                    if (makeNewConnectionsFoundDuringSearch) {
+                        relationIndex.record(source, node, relation, relationLevel, version);
                     }
-                    relationMap.put(neighbourRelative, previousConnection);
-                    queue.add(neighbourRelative);
-                    visited.put(neighbourRelative, true);
+                });
+            } else if (kernel.search(store, source, target, searchModeForPair())) {
+                connection = new ConnectionEdge(p1, kernel.relationOf(target), p2, kernel.relationLevelOf(target));
+                if (makeNewConnectionsFoundDuringSearch) {
+                    relationIndex.record(source, target, connection.relation(), connection.relationLevel(), version);
                 }
             }
         }
-        if (makeNewConnectionsFoundDuringSearch) {
-            // Adding connection results as we find, to improve future searches
-            batchConnectPersons(connectionsToPopulate);
+        return connection;
+    }
+
+    private int indexOfMemberInFamily(Member member) {
+        int index = (member == null) ? -1 : store.indexOf(member.getId());
+        if (index < 0) {
+            throw new IllegalArgumentException("Member " + member + " not found in family");
         }
-        return previousConnection;
+        return index;
     }
 
     /**
-     * Returns map containing path from one Member to another
+     * Returns path from one Member to another
      *
      * @param p1 From Member
      * @param p2 To Member
-     * @return Path map.
-     */
-    private Map<Member, ConnectionEdge> getConnectionPath(Member p1, Member p2) {
-        if (p1 == null || personIdMap.get(p1.getId()) == null) {
-            throw new IllegalArgumentException("Member " + p1 + " not found in family");
-        }
-        if (p2 == null || personIdMap.get(p2.getId()) == null) {
-            throw new IllegalArgumentException("Member " + p2 + " not found in family");
-        }
-        var connectionPathMap = new HashMap<Member, ConnectionEdge>();
-        var queue = new LinkedList<Member>();
-        var visited = new HashMap<Member, Boolean>();
-
-        queue.add(p1);
-        visited.put(p1, true);
-        while (!queue.isEmpty()) {
-            Member p = queue.poll();
-            for (ConnectionEdge edge : getAllNeighbourConnections(p)) {
-                if (visited.get(edge.to()) == null) {
-                    Member neighbourRelative = edge.to();
-                    connectionPathMap.put(neighbourRelative, edge);
-                    if (neighbourRelative.equals(p2)) {
-                        break;
-                    }
-                    queue.add(neighbourRelative);
-                    visited.put(p, true);
+     * @return Connections on the path in order from p1 to p2, empty if p2 can't be reached.
+     */
+    private List<ConnectionEdge> getConnectionPath(Member p1, Member p2) {
+        int source = indexOfMemberInFamily(p1);
+        int target = indexOfMemberInFamily(p2);
+        var connectionPath = new ArrayList<ConnectionEdge>();
+        if (!components.areInSameComponent(store, source, target)) {
+            return connectionPath;
+        }
+        try (var kernel = BfsKernel.acquire()) {
+            if (kernel.search(store, source, target, searchModeForPair())) {
+                for (int hop = 0; hop < kernel.pathLength(); hop++) {
+                    connectionPath.add(new ConnectionEdge(store.getMember(kernel.pathFrom(hop)), kernel.pathRelation(hop),
+                            store.getMember(kernel.pathTo(hop)), kernel.pathRelationLevel(hop)));
                 }
             }
         }
-        return connectionPathMap;
+        return connectionPath;
     }
 
     public List<ConnectionEdge> getShortestRelationChain(Member p1, Member p2) {
         List<ConnectionEdge> connections = new ArrayList<>();
-        getAggregateRelationWithRelationChain(p1, p2, getConnectionPath(p1, p2), connections);
+        getAggregateRelationWithRelationChain(p2, getConnectionPath(p1, p2), connections);
         return connections;
     }
 
     public ConnectionEdge getAggregateConnection(Member p1, Member p2) {
-        return getAggregateRelationWithRelationChain(p1, p2, getConnectionPath(p1, p2), null);
+        return getAggregateRelationWithRelationChain(p2, getConnectionPath(p1, p2), null);
     }
 
     /**
      * Returns aggregate relation and also populates connections chain that led to that relation
      *
-     * @param p1             From Member
      * @param p2             To Member
-     * @param connectionPath Map having path from p1 to p2
+     * @param connectionPath Connections on the path to p2
      * @param connections    List to be populated with connection chain
      * @return Aggregate relation
      */
-    private ConnectionEdge getAggregateRelationWithRelationChain(Member p1, Member p2,
-                                                                 Map<Member, ConnectionEdge> connectionPath, List<ConnectionEdge> connections) {
+    private ConnectionEdge getAggregateRelationWithRelationChain(Member p2, List<ConnectionEdge> connectionPath,
+                                                                 List<ConnectionEdge> connections) {
         ConnectionEdge nextEdge, aggregateConnection = null;
         GenericRelation nextRelation, aggregateRelation = null;
-        Member nextMember = p2;
 
-        while (!nextMember.equals(p1)) {
-            nextEdge = connectionPath.get(nextMember);
-            nextMember = nextEdge.from();
+        for (int i = connectionPath.size() - 1; i >= 0; i--) {
+            nextEdge = connectionPath.get(i);
             nextRelation = nextEdge.relation();
             if (aggregateRelation == null) {
                 aggregateRelation = nextRelation;
                 aggregateConnection = nextEdge;
             } else {
-                aggregateRelation = aggregateRelation.getNextGenericRelation(nextRelation);
-                aggregateConnection = new ConnectionEdge(nextMember, aggregateRelation, p2,
+                aggregateRelation = RelationAlgebra.compose(aggregateRelation, nextRelation);
+                aggregateConnection = new ConnectionEdge(nextEdge.from(), aggregateRelation, p2,
                         nextRelation.getRelationLevel() + aggregateConnection.relationLevel());
             }
-            if (connections != null) {
-                connections.add(nextEdge);
-            }
         }
         if (connections != null) {
-            Collections.reverse(connections);
+            connections.addAll(connectionPath);
         }
         return aggregateConnection;
     }
 
     public Collection<ConnectionEdge> getAllMembersFromGenerationLevel(Member member, int generationLevel) {
+        return getAllMembersFromGenerationLevel(member, generationLevel, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns connections with the members of the generation level, as the search finds them
+     *
+     * @param member          Member whose generation is returned
+     * @param generationLevel Level of generation relative to member
+     * @param maxHops         Maximum number of connections between member and a relative
+     * @param limit           Maximum number of connections returned
+     * @return Connections with members of the generation, nearest first
+     */
+    public List<ConnectionEdge> getAllMembersFromGenerationLevel(Member member, int generationLevel, int maxHops,
+                                                                 int limit) {
         // Need to check relations in reverse, so taking inverse of generationLevel
-        return filterConnectionsByGenerationLevel(member, -generationLevel, getAllConnectionsInFamilyForPerson(member, false));
+        return streamConnections(member, new TraversalQuery().setRelationLevel(-generationLevel)
+                .setMaxHops(maxHops).setLimit(limit))
+                .collect(Collectors.toList());
     }
 
     public Collection<Member> getFamilyInOrderOfAge(boolean isOrderAscending) {
-        Comparator<Member> ascendingAgeComparator = (p1, p2) -> {
-            if (p1.getAge() == p2.getAge()) return 0;
-            return (p1.getAge() > p2.getAge()) ? 1 : -1;
-        };
-        var sortedPersons = new ArrayList(personIdMap.values());
-        if (isOrderAscending) {
-            sortedPersons.sort(ascendingAgeComparator);
-        } else {
-            sortedPersons.sort(Collections.reverseOrder(ascendingAgeComparator));
-        }
-        return sortedPersons;
+        return getFamilyInAgeRange(Integer.MIN_VALUE, Integer.MAX_VALUE, isOrderAscending);
     }
 
-    public Collection<Member> getAllFamilyMembersOfGender(Boolean isMale) {
-        return filterPersonsByGender(isMale, new ArrayList<>(personIdMap.values()));
+    /**
+     * Returns members with age in range from the age index, members of same age are in the order they were added
+     *
+     * @param minAge           Minimum age, inclusive
+     * @param maxAge           Maximum age, inclusive
+     * @param isOrderAscending Order of age
+     * @return Members in range in order of age
+     */
+    public List<Member> getFamilyInAgeRange(int minAge, int maxAge, boolean isOrderAscending) {
+        memberIndex.sync(store);
+        return memberIndex.inAgeRange(store, minAge, maxAge, isOrderAscending);
     }
 
-    public Collection<Member> getAllPersonsByRelation(Member member, Relation relation, int relationLevel) {
-        if (relation instanceof GenericRelation) {
-            return this.getAllPersonsByRelation(member, (GenericRelation) relation, relationLevel);
-        } else {
-            return this.getAllPersonsByRelation(member, (SpecificRelation) relation, relationLevel);
-        }
+    public Collection<Member> getAllFamilyMembersOfGender(Boolean isMale) {
+        memberIndex.sync(store);
+        return memberIndex.ofGender(store, isMale);
     }
 
-    private Collection<Member> getAllPersonsByRelation(Member member, GenericRelation genericRelation, int relationLevel) {
-        return this.getAllPersonsByRelation(member, genericRelation, null, relationLevel);
+    public Collection<Member> getAllPersonsByRelation(Member member, Relation relation, int relationLevel) {
+        return getAllPersonsByRelation(member, relation, relationLevel, Integer.MAX_VALUE, Integer.MAX_VALUE);
     }
 
     /**
@@ -415,20 +963,68 @@ public class FamilyGraph implements Family {
      */
     public Collection<Member> getAllPersonsByRelation(Member member, SpecificRelation specificRelation, int
             relationLevel) {
-        return this.getAllPersonsByRelation(member, specificRelation.getGenericRelation(), specificRelation
-                .isRelationMale(), relationLevel);
+        return getAllPersonsByRelation(member, (Relation) specificRelation, relationLevel);
+    }
+
+    /**
+     * Returns all the Members related with the relation within some hops of the member
+     *
+     * @param member        Member whose relatives are returned
+     * @param relation      Generic or Specific relation of relatives with member
+     * @param relationLevel Level of relation
+     * @param maxHops       Maximum number of connections between member and a relative
+     * @return Members related with the relation, nearest first
+     */
+    public List<Member> getAllPersonsByRelation(Member member, Relation relation, int relationLevel, int maxHops) {
+        return getAllPersonsByRelation(member, relation, relationLevel, maxHops, Integer.MAX_VALUE);
     }
 
-    private Collection<Member> getAllPersonsByRelation(Member member, GenericRelation genericRelation,
-                                                       Boolean isRelationMale, int relationLevel) {
-        GenericRelation reverseRelation = genericRelation.getReverseRelation();
-        return filterConnectionsBySpecificRelation(reverseRelation, isRelationMale, -relationLevel,
-                getAllConnectionsInFamilyForPerson(member, false))
-                .stream()
-                .map(ConnectionEdge::to)
+    /**
+     * Returns the Members related with the relation within some hops of the member. The search stops at max hops or
+     * once it finds limit relatives, and doesn't go past relatives beyond which no one can be of the relation.
+     *
+     * @param member        Member whose relatives are returned
+     * @param relation      Generic or Specific relation of relatives with member
+     * @param relationLevel Level of relation
+     * @param maxHops       Maximum number of connections between member and a relative
+     * @param limit         Maximum number of relatives returned
+     * @return Members related with the relation, nearest first
+     */
+    public List<Member> getAllPersonsByRelation(Member member, Relation relation, int relationLevel, int maxHops,
+                                                int limit) {
+        return streamAllPersonsByRelation(member, relation, relationLevel, maxHops, limit)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Streams all the Members related with the relation, nearest first, as the search reaches them
+     *
+     * @param member        Member whose relatives are streamed
+     * @param relation      Generic or Specific relation of relatives with member
+     * @param relationLevel Level of relation
+     * @return Lazy stream of Members related with the relation
+     */
+    public Stream<Member> streamAllPersonsByRelation(Member member, Relation relation, int relationLevel) {
+        return streamAllPersonsByRelation(member, relation, relationLevel, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Streams the Members related with the relation within some hops of the member, at most limit of them
+     *
+     * @param member        Member whose relatives are streamed
+     * @param relation      Generic or Specific relation of relatives with member
+     * @param relationLevel Level of relation
+     * @param maxHops       Maximum number of connections between member and a relative
+     * @param limit         Maximum number of relatives streamed
+     * @return Lazy stream of Members related with the relation
+     */
+    public Stream<Member> streamAllPersonsByRelation(Member member, Relation relation, int relationLevel, int maxHops,
+                                                     int limit) {
+        return streamConnections(member, TraversalQuery.forRelatives(relation, relationLevel)
+                .setMaxHops(maxHops).setLimit(limit))
+                .map(ConnectionEdge::to);
+    }
+
     public boolean isPersonRelatedWithRelation(Member member, Relation relation, int relationLevel) {
         if (relation instanceof GenericRelation) {
             return this.isPersonRelatedWithRelation(member, (GenericRelation) relation, relationLevel);
@@ -441,14 +1037,14 @@ public class FamilyGraph implements Family {
         return this.isPersonRelatedWithRelation(member, specificRelation.getGenericRelation(),
                 specificRelation.isRelationMale(), relationLevel, getAllNeighbourConnections(member))
                 || this.isPersonRelatedWithRelation(member, specificRelation.getGenericRelation(),
-                specificRelation.isRelationMale(), relationLevel, getAllConnectionsInFamilyForPerson(member, false));
+                specificRelation.isRelationMale(), relationLevel, getClosure(member));
     }
 
     private boolean isPersonRelatedWithRelation(Member member, GenericRelation genericRelation, int relationLevel) {
         return this.isPersonRelatedWithRelation(member, genericRelation, null, relationLevel,
                 getAllNeighbourConnections(member))
                 || this.isPersonRelatedWithRelation(member, genericRelation, null, relationLevel,
-                getAllConnectionsInFamilyForPerson(member, false));
+                getClosure(member));
     }
 
     private boolean isPersonRelatedWithRelation(Member member, GenericRelation genericRelation,
@@ -0,0 +1,28 @@
+package core;
+
+import entities.Member;
+import relationship.GenericRelation;
+
+/**
+ * Listens to changes of a {@link FamilyGraph}, called on the thread making the change once it is applied. Used to
+ * write changes through to other stores.
+ */
+public interface FamilyGraphListener {
+    /**
+     * Called when a member new to the family is added, directly or while connecting
+     */
+    default void onPersonAdded(Member member) {
+    }
+
+    /**
+     * Called when two persons got connected, the family holds the reverse connection as well
+     */
+    default void onPersonsConnected(Member from, GenericRelation relation, Member to, int relationLevel) {
+    }
+
+    /**
+     * Called when the direct connection from one person to another got removed
+     */
+    default void onDirectConnectionRemoved(Member from, Member to) {
+    }
+}
@@ -0,0 +1,145 @@
+package core;
+
+import entities.ConnectionEdge;
+import entities.Member;
+import relationship.RelationAlgebra;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy Breadth-First traversal from a member, returning its connection with every other member of the family, nearest
+ * first. A member is expanded only once the connections found so far are all consumed, so the traversal goes only as
+ * far as it is consumed. Relations are aggregated the same way as {@link BfsKernel#traverse}.
+ * <p>
+ * With a {@link TraversalQuery} only the connections matching it are returned, and members beyond which nothing can
+ * match are not expanded.
+ * <p>
+ * Unlike {@link BfsKernel} the traversal owns its state, so it can be consumed from any thread and at any pace. It
+ * takes about 9 bytes for every member reached and a bit for every member in the store, connections are created only
+ * as they are returned.
+ * <p>
+ * Not thread-safe. The store should not change during the traversal, unless it is thread-safe.
+ */
+final class FamilyTraversal implements Iterator<ConnectionEdge> {
+    private final GraphStore store;
+    private final Member member;
+    private final TraversalQuery query;
+    private final TraversalQuery.Pruning pruning;
+    private final AdjacencyCursor cursor = new AdjacencyCursor();
+    // Members reached in the order of reaching them, with their aggregate relation. Source is at 0.
+    private int[] queue = new int[16];
+    private byte[] relations = new byte[16];
+    private int[] relationLevels = new int[16];
+    private long[] visited;
+    private int tail = 1;
+    private int expanded; // Members before this position are expanded
+    private int returned = 1; // Members before this position are returned or don't match
+    private int depth; // Hops to the members being expanded
+    private int nextDepthStart = 1;
+    private int found;
+
+    FamilyTraversal(GraphStore store, int source) {
+        this(store, source, null);
+    }
+
+    /**
+     * @param query Query of connections to return, null for all
+     */
+    FamilyTraversal(GraphStore store, int source, TraversalQuery query) {
+        this.store = store;
+        this.member = store.getMember(source);
+        this.query = query;
+        this.pruning = (query == null) ? null : query.compilePruning();
+        this.visited = new long[(store.size() + 63) >>> 6];
+        queue[0] = source;
+        visit(source);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (query != null && found == query.getLimit()) {
+            return false;
+        }
+        while (true) {
+            for (; returned < tail; returned++) {
+                if (query == null || isMatching(returned)) {
+                    return true;
+                }
+            }
+            if (expanded == tail) {
+                return false;
+            }
+            expand(expanded++);
+        }
+    }
+
+    @Override
+    public ConnectionEdge next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        found++;
+        int position = returned++;
+        return new ConnectionEdge(member, RelationAlgebra.relationOf(relations[position]),
+                store.getMember(queue[position]), relationLevels[position]);
+    }
+
+    private boolean isMatching(int position) {
+        return query.matches(relations[position], relationLevels[position], store.getMember(queue[position]));
+    }
+
+    private void expand(int position) {
+        if (position == nextDepthStart) {
+            // All members of the depth before are expanded, so the ones after this are all of the next depth
+            depth++;
+            nextDepthStart = tail;
+        }
+        if (position > 0 && pruning != null
+                && !pruning.isWorthExpanding(relations[position], relationLevels[position], depth)) {
+            return;
+        }
+        int node = queue[position];
+        store.openAdjacency(node, cursor);
+        for (int i = 0, degree = cursor.degree(); i < degree; i++) {
+            int neighbour = cursor.neighbourAt(i);
+            if (!visit(neighbour)) {
+                continue;
+            }
+            if (tail == queue.length) {
+                int capacity = tail + (tail >> 1);
+                queue = Arrays.copyOf(queue, capacity);
+                relations = Arrays.copyOf(relations, capacity);
+                relationLevels = Arrays.copyOf(relationLevels, capacity);
+            }
+            int edgeRelation = cursor.relationOrdinalAt(i);
+            queue[tail] = neighbour;
+            if (position == 0) {
+                relations[tail] = (byte) edgeRelation;
+                relationLevels[tail] = cursor.relationLevelAt(i);
+            } else {
+                relations[tail] = RelationAlgebra.compose(edgeRelation, relations[position]);
+                relationLevels[tail] = relationLevels[position] + RelationAlgebra.relationLevel(edgeRelation);
+            }
+            tail++;
+        }
+    }
+
+    /**
+     * @return True if node was not visited yet
+     */
+    private boolean visit(int node) {
+        int word = node >>> 6;
+        if (word >= visited.length) {
+            // Members added to a concurrent store during traversal
+            visited = Arrays.copyOf(visited, Math.max(word + 1, (store.size() + 63) >>> 6));
+        }
+        long bit = 1L << node;
+        if ((visited[word] & bit) != 0) {
+            return false;
+        }
+        visited[word] |= bit;
+        return true;
+    }
+}
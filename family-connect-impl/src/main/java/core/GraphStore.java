@@ -0,0 +1,156 @@
+package core;
+
+import entities.Member;
+import relationship.GenericRelation;
+import relationship.RelationAlgebra;
+
+import java.util.Collection;
+
+/**
+ * Storage engine behind {@link FamilyGraph}. Members are interned to dense int indexes (0 to size - 1, in order of
+ * insertion) and direct connections of a member are read through an {@link AdjacencyCursor}.
+ * <p>
+ * Stores are not thread-safe, unless stated by the implementation.
+ */
+public interface GraphStore {
+    /**
+     * Interns a Member, ignores if the member is already present
+     *
+     * @param member Member to add
+     * @return Index of the member
+     */
+    int addMember(Member member);
+
+    /**
+     * Returns index of the member with that Id
+     *
+     * @param memberId Id of the member
+     * @return Index of the member, -1 if not present
+     */
+    int indexOf(String memberId);
+
+    Member getMember(int index);
+
+    /**
+     * @return Number of members in the store
+     */
+    int size();
+
+    /**
+     * @return Live, read-only view of all members in order of their index
+     */
+    Collection<Member> getAllMembers();
+
+    /**
+     * Grows the store once for the members and directed edges expected, ahead of a bulk load. Ignored by default.
+     *
+     * @param expectedMembers Expected number of members
+     * @param expectedEdges   Expected number of directed edges
+     */
+    default void ensureCapacity(int expectedMembers, int expectedEdges) {
+    }
+
+    /**
+     * @return True if the store can be read and modified from many threads at once
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
+    /**
+     * Adds a directed edge, ignores it if the exact same edge is already present
+     *
+     * @param from          From member index
+     * @param relation      Relation of from to to
+     * @param to            To member index
+     * @param relationLevel Relation level, within byte range
+     * @return True if the edge is added
+     */
+    boolean addEdge(int from, GenericRelation relation, int to, int relationLevel);
+
+    /**
+     * Adds an edge along with its mirror edge, from to to with the reverse relation.
+     *
+     * @param from          From member index
+     * @param relation      Relation of from to to
+     * @param to            To member index
+     * @param relationLevel Relation level, within byte range
+     */
+    default void addEdgePair(int from, GenericRelation relation, int to, int relationLevel) {
+        addEdge(from, relation, to, relationLevel);
+        addEdge(to, relation.getReverseRelation(), from, -relationLevel);
+    }
+
+    /**
+     * Removes the first directed edge between two members
+     *
+     * @param from From member index
+     * @param to   To member index
+     * @return True if an edge is removed
+     */
+    boolean removeEdge(int from, int to);
+
+    /**
+     * @param node Member index
+     * @return Number of direct connections of the member
+     */
+    int degree(int node);
+
+    /**
+     * Positions cursor over direct connections of the member, as they are at the time of the call
+     *
+     * @param node   Member index
+     * @param cursor Cursor to position
+     */
+    void openAdjacency(int node, AdjacencyCursor cursor);
+
+    /**
+     * Publishes a new epoch of the store and returns an immutable store of the current one, that readers can use
+     * without locks while this store keeps changing. Stores that are not thread-safe return a copy, and must not be
+     * modified while it is taken.
+     *
+     * @return Immutable store
+     */
+    default GraphStore snapshot() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support snapshots");
+    }
+
+    /**
+     * @return Epoch of the store, incremented with every snapshot
+     */
+    default long epoch() {
+        return 0;
+    }
+
+    /**
+     * Adds members and edges of a store into an empty one, so members keep their indexes and edges their order
+     *
+     * @param from Store to copy
+     * @param to   Empty store to copy into
+     */
+    static void copyInto(GraphStore from, GraphStore to) {
+        int size = from.size();
+        int edges = 0;
+        for (int node = 0; node < size; node++) {
+            edges += from.degree(node);
+        }
+        to.ensureCapacity(size, edges);
+        for (int node = 0; node < size; node++) {
+            to.addMember(from.getMember(node));
+        }
+        var cursor = new AdjacencyCursor();
+        for (int node = 0; node < size; node++) {
+            from.openAdjacency(node, cursor);
+            for (int i = 0; i < cursor.degree(); i++) {
+                to.addEdge(node, RelationAlgebra.relationOf(cursor.relationOrdinalAt(i)), cursor.neighbourAt(i),
+                        cursor.relationLevelAt(i));
+            }
+        }
+    }
+
+    static void checkRelationLevel(int relationLevel) {
+        if (relationLevel < Byte.MIN_VALUE || relationLevel > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Relation level " + relationLevel + " out of range to store");
+        }
+    }
+}
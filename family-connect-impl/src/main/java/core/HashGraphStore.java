@@ -0,0 +1,122 @@
+package core;
+
+import entities.ConnectionEdge;
+import entities.Member;
+import relationship.GenericRelation;
+
+import java.util.*;
+
+/**
+ * Object based store, that keeps every direct connection as {@link ConnectionEdge} in hash maps keyed by Member.
+ * Cheap to mutate and good enough for small families.
+ */
+public class HashGraphStore implements GraphStore {
+    private final Map<String, Integer> personIdMap = new HashMap<>(); // Represents all the persons put into the graph.
+    private final List<Member> members = new ArrayList<>();
+    private final List<List<ConnectionEdge>> relationMap = new ArrayList<>();
+    private long epoch;
+    private boolean isSnapshot;
+
+    /**
+     * Publishes a new epoch and returns a copy of the store as it is, that can't be modified. Costs a copy of the
+     * store, members are shared.
+     *
+     * @return Immutable store
+     */
+    @Override
+    public GraphStore snapshot() {
+        if (isSnapshot) {
+            return this;
+        }
+        var snapshot = new HashGraphStore();
+        GraphStore.copyInto(this, snapshot);
+        snapshot.epoch = epoch++;
+        snapshot.isSnapshot = true;
+        return snapshot;
+    }
+
+    @Override
+    public long epoch() {
+        return epoch;
+    }
+
+    @Override
+    public int addMember(Member member) {
+        checkWritable();
+        Integer index = personIdMap.get(member.getId());
+        if (index == null) {
+            index = members.size();
+            personIdMap.put(member.getId(), index);
+            members.add(member);
+            relationMap.add(new ArrayList<>());
+        }
+        return index;
+    }
+
+    @Override
+    public int indexOf(String memberId) {
+        Integer index = personIdMap.get(memberId);
+        return index == null ? -1 : index;
+    }
+
+    @Override
+    public Member getMember(int index) {
+        return members.get(index);
+    }
+
+    @Override
+    public int size() {
+        return members.size();
+    }
+
+    @Override
+    public Collection<Member> getAllMembers() {
+        return Collections.unmodifiableList(members);
+    }
+
+    @Override
+    public boolean addEdge(int from, GenericRelation relation, int to, int relationLevel) {
+        checkWritable();
+        GraphStore.checkRelationLevel(relationLevel);
+        var edge = new ConnectionEdge(members.get(from), relation, members.get(to), relationLevel);
+        var edges = relationMap.get(from);
+        if (edges.contains(edge)) {
+            return false;
+        }
+        return edges.add(edge);
+    }
+
+    @Override
+    public boolean removeEdge(int from, int to) {
+        checkWritable();
+        Member toMember = members.get(to);
+        for (Iterator<ConnectionEdge> iterator = relationMap.get(from).iterator(); iterator.hasNext(); ) {
+            if (iterator.next().to().equals(toMember)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int degree(int node) {
+        return relationMap.get(node).size();
+    }
+
+    @Override
+    public void openAdjacency(int node, AdjacencyCursor cursor) {
+        var edges = relationMap.get(node);
+        cursor.reset(edges.size());
+        for (int position = 0; position < edges.size(); position++) {
+            ConnectionEdge edge = edges.get(position);
+            cursor.set(position, personIdMap.get(edge.to().getId()), edge.relation().ordinal(), edge.relationLevel());
+        }
+    }
+
+    private void checkWritable() {
+        if (isSnapshot) {
+            throw new UnsupportedOperationException("Snapshot of epoch " + epoch + " can't be modified");
+        }
+    }
+}
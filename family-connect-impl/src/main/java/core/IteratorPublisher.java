@@ -0,0 +1,131 @@
+package core;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Publisher of the elements of an iterator, pulled only as far as subscribers request them. Every subscriber gets an
+ * iterator of its own. Elements are pulled and signalled on the executor, one task at a time per subscriber, so a slow
+ * subscriber holds back only its own iterator.
+ */
+final class IteratorPublisher<T> implements Flow.Publisher<T> {
+    private final Supplier<Iterator<T>> iterators;
+    private final Executor executor;
+
+    IteratorPublisher(Supplier<Iterator<T>> iterators, Executor executor) {
+        this.iterators = iterators;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber should not be null");
+        subscriber.onSubscribe(new IteratorSubscription<>(subscriber, iterators, executor));
+    }
+
+    private static final class IteratorSubscription<T> implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Supplier<Iterator<T>> iterators;
+        private final Executor executor;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger pendingDrains = new AtomicInteger(); // Drains run while it's above 0
+        private volatile boolean isCancelled;
+        private volatile long invalidRequest;
+        // Accessed only by drains, which never overlap
+        private Iterator<T> iterator;
+        private boolean isDone;
+
+        private IteratorSubscription(Flow.Subscriber<? super T> subscriber, Supplier<Iterator<T>> iterators,
+                                     Executor executor) {
+            this.subscriber = subscriber;
+            this.iterators = iterators;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = n;
+            } else {
+                requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            scheduleDrain();
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+            scheduleDrain(); // Drops the iterator
+        }
+
+        private void scheduleDrain() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int drains = 1;
+            do {
+                drain();
+                drains = pendingDrains.addAndGet(-drains);
+            } while (drains != 0);
+        }
+
+        /**
+         * Signals as many elements as requested so far, and completion once the iterator runs out
+         */
+        private void drain() {
+            if (isDone) {
+                return;
+            }
+            try {
+                long demand = requested.get();
+                long emitted = 0;
+                while (true) {
+                    if (isCancelled) {
+                        finish();
+                        return;
+                    }
+                    if (invalidRequest != 0) {
+                        finish();
+                        subscriber.onError(new IllegalArgumentException(
+                                "Number of elements requested should be positive, but got " + invalidRequest));
+                        return;
+                    }
+                    if (iterator == null) {
+                        iterator = iterators.get();
+                    }
+                    if (!iterator.hasNext()) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (emitted == demand) {
+                        demand = (demand == Long.MAX_VALUE) ? demand : requested.addAndGet(-emitted);
+                        emitted = 0;
+                        if (demand == 0) {
+                            return;
+                        }
+                    }
+                    subscriber.onNext(iterator.next());
+                    emitted++;
+                }
+            } catch (RuntimeException e) {
+                finish();
+                subscriber.onError(e);
+            }
+        }
+
+        private void finish() {
+            isDone = true;
+            iterator = null;
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package core;
+
+import entities.Member;
+import relationship.GenericRelation;
+import relationship.RelationAlgebra;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Collection;
+
+/**
+ * Immutable store read straight from a binary snapshot file mapped into memory, so a family can be served right after
+ * a restart without connecting and validating every edge again. Nothing is read up front: pages of the file are loaded
+ * by the OS as they are touched, and a {@link Member} is materialized on first access and kept.
+ * <p>
+ * The file is written by {@link #write(GraphStore, Path)} and laid out in little endian sections, each section mapped
+ * on its own, so only a section (not the file) is limited to 2 GB:
+ * <pre>
+ * header      magic, version, member count, id table capacity, edge count, string heap size
+ * members     per member: heap offset, id length, name length, age, gender
+ * id table    open addressing table of member index + 1, 0 for an empty slot, probed like {@link CompactGraphStore}
+ * offsets     per member and one more: offset of its first edge, edges of a member are back to back
+ * neighbours  per edge: neighbour index
+ * relations   per edge: relation ordinal
+ * levels      per edge: relation level
+ * heap        UTF-8 id followed by UTF-8 name of every member
+ * </pre>
+ * Thread-safe, as it can't be modified.
+ */
+public final class MappedGraphStore implements GraphStore {
+    private static final int MAGIC = 0x46475331; // FGS1
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int MEMBER_RECORD_SIZE = 20;
+    private static final int MAX_SECTION_SIZE = Integer.MAX_VALUE;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final int memberCount;
+    private final int tableCapacity;
+    private final ByteBuffer memberRecords;
+    private final ByteBuffer idTable;
+    private final ByteBuffer edgeOffsets;
+    private final ByteBuffer neighbours;
+    private final ByteBuffer relations;
+    private final ByteBuffer relationLevels;
+    private final ByteBuffer heap;
+    private final Member[] materializedMembers; // Racy, Member is immutable so a reader sees it whole or not at all
+
+    private MappedGraphStore(FileChannel channel) throws IOException {
+        ByteBuffer header = map(channel, 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a family graph snapshot of version " + VERSION);
+        }
+        memberCount = header.getInt(8);
+        tableCapacity = header.getInt(12);
+        long edgeCount = header.getLong(16);
+        long heapSize = header.getLong(24);
+        var layout = new Layout(memberCount, tableCapacity, edgeCount, heapSize);
+        if (channel.size() < layout.end) {
+            throw new IllegalArgumentException("Snapshot is truncated, expected " + layout.end + " bytes but found "
+                    + channel.size());
+        }
+        memberRecords = map(channel, layout.membersStart, (long) memberCount * MEMBER_RECORD_SIZE);
+        idTable = map(channel, layout.idTableStart, (long) tableCapacity * Integer.BYTES);
+        edgeOffsets = map(channel, layout.offsetsStart, (memberCount + 1L) * Integer.BYTES);
+        neighbours = map(channel, layout.neighboursStart, edgeCount * Integer.BYTES);
+        relations = map(channel, layout.relationsStart, edgeCount);
+        relationLevels = map(channel, layout.levelsStart, edgeCount);
+        heap = map(channel, layout.heapStart, heapSize);
+        materializedMembers = new Member[memberCount];
+    }
+
+    /**
+     * Maps a snapshot file, the file can be closed or replaced once mapped
+     *
+     * @param file Snapshot written by {@link #write(GraphStore, Path)}
+     * @return Store over the mapped file
+     */
+    public static MappedGraphStore open(Path file) {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappedGraphStore(channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes all members and edges of store into a snapshot file, streaming through a small buffer. The file is written
+     * beside and moved over the target, so a reader never maps a half written snapshot. Store must not change while
+     * it is written, write a {@link GraphStore#snapshot()} of a store that does.
+     *
+     * @param store Store to write
+     * @param file  Snapshot file, replaced if present
+     */
+    public static void write(GraphStore store, Path file) {
+        int memberCount = store.size();
+        int tableCapacity = tableCapacityFor(memberCount);
+        long edgeCount = 0;
+        for (int node = 0; node < memberCount; node++) {
+            edgeCount += store.degree(node);
+        }
+        if (edgeCount * Integer.BYTES > MAX_SECTION_SIZE) {
+            throw new IllegalArgumentException(edgeCount + " connections don't fit in a snapshot");
+        }
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Heap size is known only after the heap is written, so the header goes last
+            var layout = new Layout(memberCount, tableCapacity, edgeCount, 0);
+            long heapSize = writeMembers(store, channel, layout);
+            writeIdTable(store, channel, layout);
+            writeEdges(store, channel, layout, edgeCount);
+            var header = newBuffer(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(memberCount).putInt(tableCapacity)
+                    .putLong(edgeCount).putLong(heapSize);
+            channel.write(header.flip(), 0);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes member records along with their ids and names into the heap
+     *
+     * @return Size of the heap
+     */
+    private static long writeMembers(GraphStore store, FileChannel channel, Layout layout) throws IOException {
+        var records = newBuffer(WRITE_BUFFER_SIZE);
+        var heap = newBuffer(WRITE_BUFFER_SIZE);
+        long recordPosition = layout.membersStart;
+        long heapPosition = layout.heapStart;
+        long heapOffset = 0;
+        for (int node = 0; node < store.size(); node++) {
+            Member member = store.getMember(node);
+            byte[] id = member.getId().getBytes(StandardCharsets.UTF_8);
+            byte[] name = member.getName().getBytes(StandardCharsets.UTF_8);
+            if (heapOffset + id.length + name.length > MAX_SECTION_SIZE) {
+                throw new IllegalArgumentException("Ids and names of members don't fit in a snapshot");
+            }
+            if (records.remaining() < MEMBER_RECORD_SIZE) {
+                recordPosition += flush(channel, records, recordPosition);
+            }
+            records.putInt((int) heapOffset).putInt(id.length).putInt(name.length).putInt(member.getAge())
+                    .putInt(member.isGenderMale() ? 1 : 0);
+            heapPosition += put(channel, heap, heapPosition, id);
+            heapPosition += put(channel, heap, heapPosition, name);
+            heapOffset += id.length + name.length;
+        }
+        flush(channel, records, recordPosition);
+        flush(channel, heap, heapPosition);
+        return heapOffset;
+    }
+
+    private static void writeIdTable(GraphStore store, FileChannel channel, Layout layout) throws IOException {
+        int[] table = new int[layout.tableCapacity];
+        int mask = table.length - 1;
+        for (int node = 0; node < store.size(); node++) {
+            int slot = CompactGraphStore.mix(store.getMember(node).getId().hashCode()) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = node + 1;
+        }
+        var buffer = newBuffer(WRITE_BUFFER_SIZE);
+        long position = layout.idTableStart;
+        for (int entry : table) {
+            if (!buffer.hasRemaining()) {
+                position += flush(channel, buffer, position);
+            }
+            buffer.putInt(entry);
+        }
+        flush(channel, buffer, position);
+    }
+
+    private static void writeEdges(GraphStore store, FileChannel channel, Layout layout, long edgeCount)
+            throws IOException {
+        var offsets = newBuffer(WRITE_BUFFER_SIZE);
+        var neighbourBuffer = newBuffer(WRITE_BUFFER_SIZE);
+        var relationBuffer = newBuffer(WRITE_BUFFER_SIZE);
+        var levelBuffer = newBuffer(WRITE_BUFFER_SIZE);
+        long offsetPosition = layout.offsetsStart;
+        long neighbourPosition = layout.neighboursStart;
+        long relationPosition = layout.relationsStart;
+        long levelPosition = layout.levelsStart;
+        var cursor = new AdjacencyCursor();
+        int edgeOffset = 0;
+        for (int node = 0; node < store.size(); node++) {
+            if (!offsets.hasRemaining()) {
+                offsetPosition += flush(channel, offsets, offsetPosition);
+            }
+            offsets.putInt(edgeOffset);
+            store.openAdjacency(node, cursor);
+            for (int i = 0; i < cursor.degree(); i++) {
+                if (!neighbourBuffer.hasRemaining()) {
+                    neighbourPosition += flush(channel, neighbourBuffer, neighbourPosition);
+                }
+                if (!relationBuffer.hasRemaining()) {
+                    relationPosition += flush(channel, relationBuffer, relationPosition);
+                    levelPosition += flush(channel, levelBuffer, levelPosition);
+                }
+                neighbourBuffer.putInt(cursor.neighbourAt(i));
+                relationBuffer.put((byte) cursor.relationOrdinalAt(i));
+                levelBuffer.put((byte) cursor.relationLevelAt(i));
+            }
+            edgeOffset += cursor.degree();
+        }
+        if (edgeOffset != edgeCount) {
+            throw new IllegalStateException("Store changed while it was written to a snapshot");
+        }
+        if (!offsets.hasRemaining()) {
+            offsetPosition += flush(channel, offsets, offsetPosition);
+        }
+        offsets.putInt(edgeOffset);
+        flush(channel, offsets, offsetPosition);
+        flush(channel, neighbourBuffer, neighbourPosition);
+        flush(channel, relationBuffer, relationPosition);
+        flush(channel, levelBuffer, levelPosition);
+    }
+
+    private static long put(FileChannel channel, ByteBuffer buffer, long position, byte[] bytes) throws IOException {
+        long flushed = 0;
+        int written = 0;
+        while (written < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flushed += flush(channel, buffer, position + flushed);
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - written);
+            buffer.put(bytes, written, length);
+            written += length;
+        }
+        return flushed;
+    }
+
+    /**
+     * Writes buffer at position and clears it
+     *
+     * @return Number of bytes written
+     */
+    private static int flush(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + length - buffer.remaining());
+        }
+        buffer.clear();
+        return length;
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > MAX_SECTION_SIZE) {
+            throw new IllegalArgumentException("Section of " + size + " bytes is too large to map");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Copies all members and edges into store, as they are, without validation. Used to get a store that can be
+     * modified out of a snapshot.
+     *
+     * @param target Empty store to copy into
+     * @return target
+     */
+    public <T extends GraphStore> T copyTo(T target) {
+        target.ensureCapacity(memberCount, edgeOffsets.getInt(memberCount * Integer.BYTES));
+        for (int node = 0; node < memberCount; node++) {
+            if (target.addMember(getMember(node)) != node) {
+                throw new IllegalArgumentException("Store to copy a snapshot into must be empty");
+            }
+        }
+        for (int node = 0; node < memberCount; node++) {
+            int end = edgeOffsets.getInt((node + 1) * Integer.BYTES);
+            for (int edge = edgeOffsets.getInt(node * Integer.BYTES); edge < end; edge++) {
+                target.addEdge(node, RelationAlgebra.relationOf(relations.get(edge)),
+                        neighbours.getInt(edge * Integer.BYTES), relationLevels.get(edge));
+            }
+        }
+        return target;
+    }
+
+    @Override
+    public int addMember(Member member) {
+        int index = indexOf(member.getId());
+        if (index >= 0) {
+            return index;
+        }
+        throw readOnly();
+    }
+
+    @Override
+    public int indexOf(String memberId) {
+        if (memberCount == 0) {
+            return -1;
+        }
+        int mask = tableCapacity - 1;
+        byte[] id = null;
+        for (int slot = CompactGraphStore.mix(memberId.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int entry = idTable.getInt(slot * Integer.BYTES);
+            if (entry == 0) {
+                return -1;
+            }
+            Member member = materializedMembers[entry - 1];
+            if (member != null) {
+                if (member.getId().equals(memberId)) {
+                    return entry - 1;
+                }
+                continue;
+            }
+            if (id == null) {
+                id = memberId.getBytes(StandardCharsets.UTF_8);
+            }
+            if (isIdAt(entry - 1, id)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private boolean isIdAt(int index, byte[] id) {
+        int record = index * MEMBER_RECORD_SIZE;
+        if (memberRecords.getInt(record + 4) != id.length) {
+            return false;
+        }
+        int heapOffset = memberRecords.getInt(record);
+        for (int i = 0; i < id.length; i++) {
+            if (heap.get(heapOffset + i) != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Member getMember(int index) {
+        checkIndex(index);
+        Member member = materializedMembers[index];
+        if (member == null) {
+            member = readMember(index);
+            materializedMembers[index] = member;
+        }
+        return member;
+    }
+
+    private Member readMember(int index) {
+        int record = index * MEMBER_RECORD_SIZE;
+        int heapOffset = memberRecords.getInt(record);
+        int idLength = memberRecords.getInt(record + 4);
+        int nameLength = memberRecords.getInt(record + 8);
+        return new Member(readString(heapOffset, idLength), readString(heapOffset + idLength, nameLength),
+                memberRecords.getInt(record + 12), memberRecords.getInt(record + 16) != 0);
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        heap.duplicate().position(offset).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+        return memberCount;
+    }
+
+    @Override
+    public Collection<Member> getAllMembers() {
+        return new AbstractList<>() {
+            @Override
+            public Member get(int index) {
+                return getMember(index);
+            }
+
+            @Override
+            public int size() {
+                return memberCount;
+            }
+        };
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public GraphStore snapshot() {
+        return this;
+    }
+
+    @Override
+    public boolean addEdge(int from, GenericRelation relation, int to, int relationLevel) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean removeEdge(int from, int to) {
+        throw readOnly();
+    }
+
+    @Override
+    public int degree(int node) {
+        checkIndex(node);
+        return edgeOffsets.getInt((node + 1) * Integer.BYTES) - edgeOffsets.getInt(node * Integer.BYTES);
+    }
+
+    @Override
+    public void openAdjacency(int node, AdjacencyCursor cursor) {
+        checkIndex(node);
+        int start = edgeOffsets.getInt(node * Integer.BYTES);
+        int degree = edgeOffsets.getInt((node + 1) * Integer.BYTES) - start;
+        cursor.reset(degree);
+        for (int position = 0; position < degree; position++) {
+            int edge = start + position;
+            cursor.set(position, neighbours.getInt(edge * Integer.BYTES), relations.get(edge),
+                    relationLevels.get(edge));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= memberCount) {
+            throw new IndexOutOfBoundsException("Member index " + index + " not present in store");
+        }
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Mapped snapshot can't be modified, copy it to another store first");
+    }
+
+    private static int tableCapacityFor(int members) {
+        return Integer.highestOneBit(Math.max(members * 2 - 1, 1)) << 1;
+    }
+
+    /**
+     * Start of every section in the file, sections follow each other in the order of the fields
+     */
+    private static final class Layout {
+        private final int tableCapacity;
+        private final long membersStart;
+        private final long idTableStart;
+        private final long offsetsStart;
+        private final long neighboursStart;
+        private final long relationsStart;
+        private final long levelsStart;
+        private final long heapStart;
+        private final long end;
+
+        private Layout(int memberCount, int tableCapacity, long edgeCount, long heapSize) {
+            this.tableCapacity = tableCapacity;
+            membersStart = HEADER_SIZE;
+            idTableStart = membersStart + (long) memberCount * MEMBER_RECORD_SIZE;
+            offsetsStart = idTableStart + (long) tableCapacity * Integer.BYTES;
+            neighboursStart = offsetsStart + (memberCount + 1L) * Integer.BYTES;
+            relationsStart = neighboursStart + edgeCount * Integer.BYTES;
+            levelsStart = relationsStart + edgeCount;
+            heapStart = levelsStart + edgeCount;
+            end = heapStart + heapSize;
+        }
+    }
+}
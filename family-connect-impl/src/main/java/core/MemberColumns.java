@@ -0,0 +1,243 @@
+package core;
+
+import entities.Member;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Members held in columns instead of objects: an array each for id hash, name and age, and a bitset for gender. Names
+ * are interned into a dictionary, so a name shared by many members is held once. Ids and names can be held off heap as
+ * UTF-8, leaving around 16 bytes per member on heap.
+ * <p>
+ * Members are materialized on every {@link #get}, as short-lived views of the columns, equal to the member added.
+ */
+final class MemberColumns implements MemberTable {
+    private static final int NO_NAME = 0; // Slot of name table holds name id + 1, 0 for an empty slot
+
+    private final StringColumn ids;
+    private int[] idHashes;
+    private int[] nameIds;
+    private int[] ages;
+    private long[] genders; // Bit set if male
+
+    private final StringColumn names; // Distinct names by name id
+    private int[] nameHashes;
+    private int[] nameTable;
+    private int nameCount;
+
+    /**
+     * @param capacity  Expected number of members
+     * @param isOffHeap Holds ids and names off heap
+     */
+    MemberColumns(int capacity, boolean isOffHeap) {
+        ids = isOffHeap ? new OffHeapStrings(capacity) : new HeapStrings(capacity);
+        idHashes = new int[capacity];
+        nameIds = new int[capacity];
+        ages = new int[capacity];
+        genders = new long[(capacity + Long.SIZE - 1) / Long.SIZE];
+        names = isOffHeap ? new OffHeapStrings(16) : new HeapStrings(16);
+        nameHashes = new int[16];
+        nameTable = new int[32];
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        if (capacity > idHashes.length) {
+            ids.ensureCapacity(capacity);
+            idHashes = Arrays.copyOf(idHashes, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            ages = Arrays.copyOf(ages, capacity);
+            genders = Arrays.copyOf(genders, (capacity + Long.SIZE - 1) / Long.SIZE);
+        }
+    }
+
+    @Override
+    public void add(int index, Member member) {
+        ids.add(index, member.getId());
+        idHashes[index] = member.getId().hashCode();
+        nameIds[index] = internName(member.getName());
+        ages[index] = member.getAge();
+        if (member.isGenderMale()) {
+            genders[index / Long.SIZE] |= 1L << index; // Shift takes index modulo 64
+        }
+    }
+
+    @Override
+    public Member get(int index) {
+        return new Member(ids.get(index), names.get(nameIds[index]), ages[index], isMale(index));
+    }
+
+    @Override
+    public int idHash(int index) {
+        return idHashes[index];
+    }
+
+    @Override
+    public boolean hasId(int index, String id) {
+        return ids.matches(index, id);
+    }
+
+    private boolean isMale(int index) {
+        return (genders[index / Long.SIZE] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return Number of distinct names
+     */
+    int nameCount() {
+        return nameCount;
+    }
+
+    private int internName(String name) {
+        int hash = name.hashCode();
+        int mask = nameTable.length - 1;
+        int slot = CompactGraphStore.mix(hash) & mask;
+        for (int entry = nameTable[slot]; entry != NO_NAME; entry = nameTable[slot]) {
+            if (nameHashes[entry - 1] == hash && names.matches(entry - 1, name)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int nameId = nameCount++;
+        if (nameId == nameHashes.length) {
+            nameHashes = Arrays.copyOf(nameHashes, nameId * 2);
+            names.ensureCapacity(nameId * 2);
+        }
+        names.add(nameId, name);
+        nameHashes[nameId] = hash;
+        nameTable[slot] = nameId + 1;
+        if (nameCount * 2 > nameTable.length) {
+            rehashNames(nameTable.length * 2);
+        }
+        return nameId;
+    }
+
+    private void rehashNames(int capacity) {
+        nameTable = new int[capacity];
+        int mask = capacity - 1;
+        for (int nameId = 0; nameId < nameCount; nameId++) {
+            int slot = CompactGraphStore.mix(nameHashes[nameId]) & mask;
+            while (nameTable[slot] != NO_NAME) {
+                slot = (slot + 1) & mask;
+            }
+            nameTable[slot] = nameId + 1;
+        }
+    }
+
+    /**
+     * Strings by index, added in order of index
+     */
+    private interface StringColumn {
+        void ensureCapacity(int capacity);
+
+        void add(int index, String value);
+
+        String get(int index);
+
+        boolean matches(int index, String value);
+    }
+
+    private static final class HeapStrings implements StringColumn {
+        private String[] values;
+
+        private HeapStrings(int capacity) {
+            values = new String[capacity];
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, capacity);
+            }
+        }
+
+        @Override
+        public void add(int index, String value) {
+            values[index] = value;
+        }
+
+        @Override
+        public String get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public boolean matches(int index, String value) {
+            return values[index].equals(value);
+        }
+    }
+
+    /**
+     * UTF-8 bytes of strings back to back in a direct buffer, where string at index ends at ends[index]
+     */
+    private static final class OffHeapStrings implements StringColumn {
+        private ByteBuffer bytes;
+        private int[] ends;
+
+        private OffHeapStrings(int capacity) {
+            bytes = ByteBuffer.allocateDirect((int) Math.min(Math.max(capacity, 1) * 16L, 1 << 30));
+            ends = new int[capacity];
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            if (capacity > ends.length) {
+                ends = Arrays.copyOf(ends, capacity);
+            }
+        }
+
+        @Override
+        public void add(int index, String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            int start = start(index);
+            if (start + encoded.length > bytes.capacity()) {
+                long required = start + (long) encoded.length;
+                if (required > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Strings off heap don't fit in " + Integer.MAX_VALUE + " bytes");
+                }
+                var grown = ByteBuffer.allocateDirect((int) Math.min(Math.max(required, bytes.capacity() * 2L),
+                        Integer.MAX_VALUE));
+                grown.put(bytes.duplicate().position(0).limit(start));
+                bytes = grown;
+            }
+            bytes.duplicate().position(start).put(encoded);
+            ends[index] = start + encoded.length;
+        }
+
+        @Override
+        public String get(int index) {
+            int start = start(index);
+            byte[] value = new byte[ends[index] - start];
+            bytes.duplicate().position(start).get(value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Compares ASCII strings byte by byte without decoding, others through their UTF-8 bytes
+         */
+        @Override
+        public boolean matches(int index, String value) {
+            int start = start(index);
+            int length = ends[index] - start;
+            if (value.length() > length) {
+                return false; // Every char takes at least a byte
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    return get(index).equals(value);
+                }
+                if (bytes.get(start + i) != c) {
+                    return false;
+                }
+            }
+            return value.length() == length;
+        }
+
+        private int start(int index) {
+            return index == 0 ? 0 : ends[index - 1];
+        }
+    }
+}
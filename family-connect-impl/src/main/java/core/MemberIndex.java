@@ -0,0 +1,140 @@
+package core;
+
+import entities.Member;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Secondary indexes on attributes of members in a {@link GraphStore}. Member indexes are kept in buckets per age, in
+ * order of age, and in a bitmap of male members. Members are immutable, so an index entry never changes once added.
+ * <p>
+ * Thread-safe.
+ */
+final class MemberIndex {
+    private final NavigableMap<Integer, AgeBucket> ageBuckets = new TreeMap<>();
+    private final BitSet maleMembers = new BitSet();
+    private final BitSet indexedMembers = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile int indexedCount;
+
+    /**
+     * Indexes member at index of the store, ignores if it is already indexed
+     */
+    void add(int index, Member member) {
+        lock.writeLock().lock();
+        try {
+            addUnlocked(index, member);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes members of the store that were not added through {@link #add}
+     */
+    void sync(GraphStore store) {
+        if (indexedCount == store.size()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int size = store.size();
+            for (int index = indexedMembers.nextClearBit(0); index < size; index = indexedMembers.nextClearBit(index)) {
+                addUnlocked(index, store.getMember(index));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns members with age in range, in order of age. Members of same age are in order of their index in the store.
+     *
+     * @param minAge           Minimum age, inclusive
+     * @param maxAge           Maximum age, inclusive
+     * @param isOrderAscending Order of age
+     * @return Members in range
+     */
+    List<Member> inAgeRange(GraphStore store, int minAge, int maxAge, boolean isOrderAscending) {
+        if (minAge > maxAge) {
+            throw new IllegalArgumentException("Min age " + minAge + " is greater than max age " + maxAge);
+        }
+        lock.readLock().lock();
+        try {
+            NavigableMap<Integer, AgeBucket> range = ageBuckets.subMap(minAge, true, maxAge, true);
+            int count = 0;
+            for (AgeBucket bucket : range.values()) {
+                count += bucket.size;
+            }
+            List<Member> members = new ArrayList<>(count);
+            for (Map.Entry<Integer, AgeBucket> entry : (isOrderAscending ? range : range.descendingMap()).entrySet()) {
+                AgeBucket bucket = entry.getValue();
+                for (int i = 0; i < bucket.size; i++) {
+                    members.add(store.getMember(bucket.members[i]));
+                }
+            }
+            return members;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Members of gender, in order of their index in the store
+     */
+    List<Member> ofGender(GraphStore store, boolean isMale) {
+        lock.readLock().lock();
+        try {
+            BitSet members = (BitSet) indexedMembers.clone();
+            if (isMale) {
+                members.and(maleMembers);
+            } else {
+                members.andNot(maleMembers);
+            }
+            List<Member> membersOfGender = new ArrayList<>(members.cardinality());
+            for (int index = members.nextSetBit(0); index >= 0; index = members.nextSetBit(index + 1)) {
+                membersOfGender.add(store.getMember(index));
+            }
+            return membersOfGender;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addUnlocked(int index, Member member) {
+        if (indexedMembers.get(index)) {
+            return;
+        }
+        indexedMembers.set(index);
+        maleMembers.set(index, member.isGenderMale());
+        ageBuckets.computeIfAbsent(member.getAge(), age -> new AgeBucket()).add(index);
+        indexedCount++;
+    }
+
+    private static final class AgeBucket {
+        private int[] members = new int[4];
+        private int size;
+
+        void add(int index) {
+            if (size == members.length) {
+                members = Arrays.copyOf(members, size * 2);
+            }
+            // Kept in order of index, members of a concurrent store may be added out of order
+            int position = size;
+            while (position > 0 && members[position - 1] > index) {
+                members[position] = members[position - 1];
+                position--;
+            }
+            members[position] = index;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package core;
+
+import entities.Member;
+
+import java.util.Arrays;
+
+/**
+ * Members of a {@link CompactGraphStore} by their index, added in order of index
+ */
+interface MemberTable {
+    /**
+     * Grows the table to hold members up to the capacity
+     */
+    void ensureCapacity(int capacity);
+
+    /**
+     * @param index Index of the member, the number of members added so far
+     */
+    void add(int index, Member member);
+
+    Member get(int index);
+
+    /**
+     * @return Hash code of the id of the member, as {@link String#hashCode()}
+     */
+    int idHash(int index);
+
+    boolean hasId(int index, String id);
+
+    /**
+     * Members held as they are
+     */
+    final class MemberArray implements MemberTable {
+        private Member[] members;
+
+        MemberArray(int capacity) {
+            members = new Member[capacity];
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            if (capacity > members.length) {
+                members = Arrays.copyOf(members, capacity);
+            }
+        }
+
+        @Override
+        public void add(int index, Member member) {
+            members[index] = member;
+        }
+
+        @Override
+        public Member get(int index) {
+            return members[index];
+        }
+
+        @Override
+        public int idHash(int index) {
+            return members[index].getId().hashCode();
+        }
+
+        @Override
+        public boolean hasId(int index, String id) {
+            return members[index].getId().equals(id);
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package core;
+
+import entities.Member;
+import lombok.Getter;
+import lombok.NonNull;
+import relationship.GenericRelation;
+import relationship.RelationAlgebra;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the mutations of a {@link FamilyGraph}, so that they survive a crash. A family logs into it once
+ * set through {@link FamilyGraph#setMutationLog}, and after a restart the log is replayed into the family with
+ * validation off, as every logged mutation was validated when it was made. {@link #compact} writes the family into a
+ * snapshot and empties the log, {@link #compactAbove} has the family compact it whenever it grows beyond a size.
+ * <p>
+ * Records are appended into a buffer and written through a {@link FileChannel}, how far they go before a mutation
+ * returns depends on {@link Durability}. Every record carries its length and a CRC32 checksum, a torn record at the
+ * end of the log (from a crash in the middle of a write) is dropped when the log is opened.
+ * <p>
+ * A mutation is appended before it is applied to the family. Replaying a record on a family that already has it
+ * changes nothing, so records written around a compaction may be replayed on a snapshot that has them. Mutations are
+ * logged in the order they reach the log, callers changing the connection of the same members from many threads at
+ * once must order those changes themselves.
+ * <p>
+ * Thread-safe.
+ */
+public final class MutationLog implements Closeable {
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
+
+    private static final int MAGIC = 0x46474C31; // FGL1
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8; // Length and checksum of the payload
+    private static final int MAX_PAYLOAD_SIZE = 1 << 24;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte MEMBER = 1;
+    private static final byte CONNECT = 2;
+    private static final byte DISCONNECT = 3;
+
+    @Getter
+    private final Path file;
+    @Getter
+    private final Durability durability;
+    private final FileChannel channel;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock(); // Held by the one thread syncing for all others
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32 checksum = new CRC32();
+    private final ScheduledExecutorService syncer; // Only for PERIODIC_SYNC
+    // Sequence numbers of records, appended >= written >= synced
+    private volatile long appended;
+    private volatile long written;
+    private volatile long synced;
+    private volatile RuntimeException syncFailure; // Failure of a background sync, thrown by the next mutation
+    private volatile long size; // Size in bytes, including records not written yet
+    private volatile long maxSizeBeforeCompaction = Long.MAX_VALUE;
+    private volatile Path compactionSnapshotFile; // Null if the log is not compacted by size
+    private boolean isClosed;
+
+    private MutationLog(Path file, Durability durability, long syncIntervalMillis) throws IOException {
+        this.file = file;
+        this.durability = durability;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            var header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(header);
+            channel.force(true);
+            size = HEADER_SIZE;
+        } else {
+            long end = forEachRecord(record -> {
+            });
+            if (end < channel.size()) {
+                channel.truncate(end); // Torn record of a crash
+                channel.force(true);
+            }
+            channel.position(end);
+            size = end;
+        }
+        if (durability == Durability.PERIODIC_SYNC) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "family-graph-log-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::syncInBackground, syncIntervalMillis, syncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    public static MutationLog open(Path file, Durability durability) {
+        return open(file, durability, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens a log to append to, creates it if not present
+     *
+     * @param file               Log file
+     * @param durability         Durability of mutations
+     * @param syncIntervalMillis Interval between syncs, for {@link Durability#PERIODIC_SYNC}
+     * @return Log
+     */
+    public static MutationLog open(Path file, Durability durability, long syncIntervalMillis) {
+        if (syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Sync interval should be positive, but got " + syncIntervalMillis);
+        }
+        try {
+            return new MutationLog(file, durability, syncIntervalMillis);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Applies all the mutations of the log to family, without validation. Family should not log into this log yet.
+     *
+     * @param family Family to replay into, usually empty or loaded from the snapshot of the last compaction
+     * @return Number of mutations replayed
+     */
+    public long replay(FamilyGraph family) {
+        if (family.getMutationLog() != null) {
+            throw new IllegalStateException("Family already logs mutations, replay it before setting the log");
+        }
+        long[] replayed = {0};
+        try {
+            flush(appended);
+            forEachRecord(record -> {
+                apply(record, family);
+                replayed[0]++;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return replayed[0];
+    }
+
+    private static void apply(ByteBuffer record, FamilyGraph family) {
+        byte type = record.get();
+        switch (type) {
+            case MEMBER:
+                family.addPerson(new Member(readString(record), readString(record), record.getInt(),
+                        record.get() != 0));
+                break;
+            case CONNECT: {
+                Member from = family.getPersonById(readString(record));
+                Member to = family.getPersonById(readString(record));
+                GenericRelation relation = RelationAlgebra.relationOf(record.get());
+                family.connectPersons(from, relation, to, record.get(), false);
+                break;
+            }
+            case DISCONNECT: {
+                Member from = family.getPersonById(readString(record));
+                Member to = family.getPersonById(readString(record));
+                if (family.arePersonsDirectlyConnected(from, to)) {
+                    family.removeDirectConnection(from, to);
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown record of type " + type + " in mutation log");
+        }
+    }
+
+    /**
+     * Reads records with a valid checksum from the start of the log, till its end or the first torn record
+     *
+     * @return Offset of the end of the last valid record
+     */
+    private long forEachRecord(Consumer<ByteBuffer> consumer) throws IOException {
+        try (var readChannel = FileChannel.open(file, StandardOpenOption.READ);
+             var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(readChannel), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalArgumentException(file + " is not a mutation log of version " + VERSION);
+            }
+            var recordChecksum = new CRC32();
+            long end = HEADER_SIZE;
+            while (true) {
+                int length;
+                int expectedChecksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    expectedChecksum = in.readInt();
+                    if (length <= 0 || length > MAX_PAYLOAD_SIZE) {
+                        return end;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    return end;
+                }
+                recordChecksum.reset();
+                recordChecksum.update(payload);
+                if ((int) recordChecksum.getValue() != expectedChecksum) {
+                    return end;
+                }
+                consumer.accept(ByteBuffer.wrap(payload));
+                end += RECORD_HEADER_SIZE + length;
+            }
+        }
+    }
+
+    long appendMember(Member member) {
+        byte[] id = member.getId().getBytes(StandardCharsets.UTF_8);
+        byte[] name = member.getName().getBytes(StandardCharsets.UTF_8);
+        return append(1 + Integer.BYTES + id.length + Integer.BYTES + name.length + Integer.BYTES + 1, record -> {
+            record.put(MEMBER);
+            putString(record, id);
+            putString(record, name);
+            record.putInt(member.getAge()).put((byte) (member.isGenderMale() ? 1 : 0));
+        });
+    }
+
+    long appendConnect(String fromId, GenericRelation relation, String toId, int relationLevel) {
+        byte[] from = fromId.getBytes(StandardCharsets.UTF_8);
+        byte[] to = toId.getBytes(StandardCharsets.UTF_8);
+        return append(1 + Integer.BYTES + from.length + Integer.BYTES + to.length + 2, record -> {
+            record.put(CONNECT);
+            putString(record, from);
+            putString(record, to);
+            record.put((byte) relation.ordinal()).put((byte) relationLevel);
+        });
+    }
+
+    long appendDisconnect(String fromId, String toId) {
+        byte[] from = fromId.getBytes(StandardCharsets.UTF_8);
+        byte[] to = toId.getBytes(StandardCharsets.UTF_8);
+        return append(1 + Integer.BYTES + from.length + Integer.BYTES + to.length, record -> {
+            record.put(DISCONNECT);
+            putString(record, from);
+            putString(record, to);
+        });
+    }
+
+    /**
+     * Appends a record into the buffer, or straight to the file if it doesn't fit in the buffer
+     *
+     * @return Sequence number of the record
+     */
+    private long append(int payloadLength, Consumer<ByteBuffer> payloadWriter) {
+        if (payloadLength > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Mutation of " + payloadLength + " bytes is too large to log");
+        }
+        int recordLength = RECORD_HEADER_SIZE + payloadLength;
+        appendLock.lock();
+        try {
+            if (isClosed) {
+                throw new IllegalStateException("Mutation log " + file + " is closed");
+            }
+            if (buffer.remaining() < recordLength) {
+                writeBuffer();
+            }
+            ByteBuffer target = (recordLength <= buffer.capacity()) ? buffer : ByteBuffer.allocate(recordLength);
+            int start = target.position();
+            target.position(start + RECORD_HEADER_SIZE);
+            payloadWriter.accept(target);
+            checksum.reset();
+            checksum.update(target.duplicate().position(start + RECORD_HEADER_SIZE).limit(target.position()));
+            target.putInt(start, payloadLength).putInt(start + Integer.BYTES, (int) checksum.getValue());
+            long sequence = ++appended;
+            size += recordLength;
+            if (target != buffer) {
+                writeFully(target.flip());
+                written = sequence;
+            }
+            return sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Makes all records appended so far as durable as the log promises
+     */
+    void commit() {
+        commit(appended);
+    }
+
+    /**
+     * Makes records till sequence as durable as the log promises, called before a mutation returns
+     *
+     * @param sequence Sequence number of the last record of the mutation
+     */
+    void commit(long sequence) {
+        RuntimeException failure = syncFailure;
+        if (failure != null) {
+            throw failure;
+        }
+        switch (durability) {
+            case BUFFERED:
+            case PERIODIC_SYNC:
+                return;
+            case FLUSHED:
+                flush(sequence);
+                return;
+            case SYNC:
+                sync(sequence);
+        }
+    }
+
+    private void flush(long sequence) {
+        if (written >= sequence) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            writeBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Syncs records till sequence to disk. Only one thread syncs at a time, threads waiting meanwhile append more
+     * records, and the next of them to get the lock syncs all of them at once.
+     */
+    private void sync(long sequence) {
+        if (synced >= sequence) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (synced >= sequence) {
+                return; // Synced by the thread before
+            }
+            long syncing;
+            appendLock.lock();
+            try {
+                writeBuffer();
+                syncing = appended;
+            } finally {
+                appendLock.unlock();
+            }
+            if (syncing > synced) {
+                channel.force(false);
+                synced = syncing;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Syncs all the records appended so far to disk
+     */
+    public void sync() {
+        sync(appended);
+    }
+
+    private void syncInBackground() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            syncFailure = e;
+        }
+    }
+
+    /**
+     * Writes the family into a snapshot and empties the log. Mutations wait till it is done. Load the snapshot back
+     * through {@link MappedGraphStore}, then replay the log on it.
+     *
+     * @param family       Family logging into this log
+     * @param snapshotFile Snapshot file, replaced if present
+     */
+    public void compact(FamilyGraph family, Path snapshotFile) {
+        family.whileMutationsPaused(() -> compactPaused(family, snapshotFile));
+    }
+
+    /**
+     * Has the family compact the log into a snapshot after a mutation that grows the log beyond a size
+     *
+     * @param maxSizeBytes Size of the log in bytes beyond which it is compacted
+     * @param snapshotFile Snapshot file, replaced on every compaction
+     */
+    public void compactAbove(long maxSizeBytes, @NonNull Path snapshotFile) {
+        if (maxSizeBytes <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Max size of log should be more than " + HEADER_SIZE + " bytes, but got "
+                    + maxSizeBytes);
+        }
+        compactionSnapshotFile = snapshotFile;
+        maxSizeBeforeCompaction = maxSizeBytes;
+    }
+
+    /**
+     * Compacts the log if it grew beyond the size set through {@link #compactAbove}, called after a mutation
+     */
+    void compactIfDue(FamilyGraph family) {
+        Path snapshotFile = compactionSnapshotFile;
+        if (snapshotFile != null && size > maxSizeBeforeCompaction) {
+            family.whileMutationsPaused(() -> {
+                if (size > maxSizeBeforeCompaction) { // Unless compacted by another mutation meanwhile
+                    compactPaused(family, snapshotFile);
+                }
+            });
+        }
+    }
+
+    private void compactPaused(FamilyGraph family, Path snapshotFile) {
+        appendLock.lock();
+        try {
+            // No mutation is in progress, so every record appended so far was applied and the snapshot has all of them
+            family.writeSnapshot(snapshotFile);
+            buffer.clear();
+            channel.truncate(HEADER_SIZE);
+            channel.position(HEADER_SIZE);
+            channel.force(true);
+            written = appended;
+            synced = appended;
+            size = HEADER_SIZE;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @return Size of the log in bytes, including records not written yet
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Syncs all records and closes the log, mutations logged into it from then on fail. Ignored if already closed.
+     */
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+        } finally {
+            appendLock.unlock();
+        }
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        try {
+            sync();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the buffer to the file, with appendLock held
+     */
+    private void writeBuffer() throws IOException {
+        if (buffer.position() > 0) {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+        written = appended;
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    private static void putString(ByteBuffer record, byte[] bytes) {
+        record.putInt(bytes.length).put(bytes);
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
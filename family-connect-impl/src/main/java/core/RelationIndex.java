@@ -0,0 +1,196 @@
+package core;
+
+import relationship.GenericRelation;
+import relationship.RelationAlgebra;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Closure of relations found by earlier searches, keyed by pair of member indexes and holding the aggregate relation
+ * and its level. Kept apart from the adjacency, so recorded relations never add edges for traversals to scan.
+ * <p>
+ * Entries are invalidated by family component, through the clock of {@link FamilyComponents}. A connection that
+ * bridges two components keeps the entries of both, as shortest paths inside either stay the same. A connection inside
+ * a component, or a removal, invalidates the entries of that component.
+ * <p>
+ * Thread-safe, lookups are optimistic and don't block each other.
+ */
+final class RelationIndex {
+    static final int NO_ENTRY = Integer.MIN_VALUE;
+    static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+    private static final long EMPTY_KEY = -1L;
+    private static final int LEVEL_BITS = 24;
+    private static final int LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+    private static final int MIN_LEVEL = -(1 << (LEVEL_BITS - 1));
+    private static final int MAX_LEVEL = (1 << (LEVEL_BITS - 1)) - 1;
+
+    private final StampedLock lock = new StampedLock();
+    private final FamilyComponents components;
+    private final int maxEntries;
+
+    private long[] keys = emptyKeys(16);
+    private int[] entries = new int[16];
+    private long[] versions = new long[16];
+    private int size;
+
+    RelationIndex(FamilyComponents components) {
+        this(components, DEFAULT_MAX_ENTRIES);
+    }
+
+    RelationIndex(FamilyComponents components, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries of relation index should be positive: " + maxEntries);
+        }
+        this.components = components;
+        this.maxEntries = maxEntries;
+    }
+
+    static GenericRelation relationOf(int entry) {
+        return RelationAlgebra.relationOf(entry >>> LEVEL_BITS);
+    }
+
+    static int relationLevelOf(int entry) {
+        return (entry << (Integer.SIZE - LEVEL_BITS)) >> (Integer.SIZE - LEVEL_BITS);
+    }
+
+    /**
+     * @return Entry of the pair to decode with {@link #relationOf} and {@link #relationLevelOf}, or {@link #NO_ENTRY}
+     */
+    int lookup(int from, int to) {
+        long stamp = lock.tryOptimisticRead();
+        int entry = find(from, to);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                entry = find(from, to);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Records aggregate relation of a pair, found by a search that started at version of {@link FamilyComponents}
+     */
+    void record(int from, int to, GenericRelation relation, int relationLevel, long version) {
+        if (relationLevel < MIN_LEVEL || relationLevel > MAX_LEVEL) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            if (version < components.pathsChangedAt(from)) {
+                return;
+            }
+            if (size >= maxEntries) {
+                purgeStale();
+            }
+            if (size >= maxEntries) {
+                clear();
+            }
+            long key = keyOf(from, to);
+            int slot = slotOf(keys, key);
+            if (keys[slot] == EMPTY_KEY) {
+                keys[slot] = key;
+                size++;
+            }
+            entries[slot] = (relation.ordinal() << LEVEL_BITS) | (relationLevel & LEVEL_MASK);
+            versions[slot] = version;
+            if (size * 2 > keys.length) {
+                rehash(keys.length * 2);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int find(int from, int to) {
+        long[] currentKeys = keys;
+        int[] currentEntries = entries;
+        long[] currentVersions = versions;
+        if (currentKeys.length != currentEntries.length || currentKeys.length != currentVersions.length) {
+            return NO_ENTRY; // Torn read of a rehash, validation retries under lock
+        }
+        long key = keyOf(from, to);
+        int mask = currentKeys.length - 1;
+        for (int slot = mix(key) & mask, probes = 0; probes < currentKeys.length; slot = (slot + 1) & mask, probes++) {
+            long slotKey = currentKeys[slot];
+            if (slotKey == EMPTY_KEY) {
+                return NO_ENTRY;
+            }
+            if (slotKey == key) {
+                return currentVersions[slot] < components.pathsChangedAt(from) ? NO_ENTRY : currentEntries[slot];
+            }
+        }
+        return NO_ENTRY;
+    }
+
+    private void purgeStale() {
+        long[] oldKeys = keys;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY_KEY && versions[slot] < components.pathsChangedAt((int) (oldKeys[slot] >>> 32))) {
+                oldKeys[slot] = EMPTY_KEY;
+                size--;
+            }
+        }
+        // Removed slots break probe sequences, so survivors are placed again
+        rehash(oldKeys.length);
+    }
+
+    private void clear() {
+        keys = emptyKeys(16);
+        entries = new int[16];
+        versions = new long[16];
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldEntries = entries;
+        long[] oldVersions = versions;
+        long[] newKeys = emptyKeys(capacity);
+        int[] newEntries = new int[capacity];
+        long[] newVersions = new long[capacity];
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY_KEY) {
+                int newSlot = slotOf(newKeys, oldKeys[slot]);
+                newKeys[newSlot] = oldKeys[slot];
+                newEntries[newSlot] = oldEntries[slot];
+                newVersions[newSlot] = oldVersions[slot];
+            }
+        }
+        keys = newKeys;
+        entries = newEntries;
+        versions = newVersions;
+    }
+
+    private static int slotOf(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long keyOf(int from, int to) {
+        return ((long) from << 32) | (to & 0xFFFFFFFFL);
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static long[] emptyKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        return keys;
+    }
+}
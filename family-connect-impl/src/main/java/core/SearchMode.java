@@ -0,0 +1,17 @@
+package core;
+
+/**
+ * Strategy to search the connection between two members
+ */
+public enum SearchMode {
+    /**
+     * Breadth-First search from the From member till the To member is reached
+     */
+    FORWARD,
+    /**
+     * Breadth-First search from both members, expanding the smaller frontier, till they meet in the middle. Explores
+     * far fewer members for distant relatives in wide families. Families with connections left in one direction only,
+     * by removing their mirror, are searched forward.
+     */
+    BIDIRECTIONAL
+}
@@ -0,0 +1,460 @@
+package core;
+
+import entities.ConnectionEdge;
+import entities.Member;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import relationship.GenericRelation;
+import relationship.LeveledRelation;
+import validation.Validator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static utils.RelationUtils.parseToLeveledRelation;
+
+/**
+ * Family partitioned into shards, one per family component, each an independent {@link FamilyGraph} with its own lock,
+ * closure cache and memory accounting. Members are routed to their shard by id, so reads and writes within a family
+ * lock only its shard, and unrelated families are served from different cores without contention.
+ * <p>
+ * Connecting persons of two families merges their shards, the smaller into the larger, so a member is moved O(log n)
+ * times at most. Removing connections never splits a shard, which may then hold more than one family.
+ * <p>
+ * Shards not used for a while can be evicted into snapshot files with {@link #evictColdShards}, or periodically with
+ * {@link #evictColdShardsEvery}, they are loaded back on their next use.
+ * <p>
+ * Thread-safe.
+ */
+public class ShardedFamily implements Family, Closeable {
+    static final long BYTES_PER_MEMBER = 256; // Member, its route and its entries in the store and indexes
+    static final long BYTES_PER_CONNECTION = 48; // Connection stored along with its reverse, in the store and indexes
+    private static final String SHARD_FILE_SUFFIX = ".fgs";
+
+    private final Validator validator;
+    private final Supplier<GraphStore> storeFactory;
+    private final Path evictionDirectory;
+    private final ConcurrentHashMap<String, Shard> routes = new ConcurrentHashMap<>(); // Shard of each member by id
+    private final Set<Shard> shards = ConcurrentHashMap.newKeySet();
+    private final AtomicLong shardIds = new AtomicLong();
+    @Getter
+    @Setter
+    private volatile SearchMode searchMode = SearchMode.FORWARD;
+    @Getter
+    @Setter
+    private volatile long maxCachedConnectionsPerShard = 1 << 12; // Bounds closure cache of each shard
+    private ScheduledExecutorService evictor; // Only if cold shards are evicted periodically
+    @Getter
+    private volatile RuntimeException evictionFailure; // Failure of the last periodic eviction, null if it succeeded
+
+    public ShardedFamily(Validator validator) {
+        this(validator, HashGraphStore::new, null);
+    }
+
+    /**
+     * @param validator         Validator of connections
+     * @param storeFactory      Creates an empty store for each new shard
+     * @param evictionDirectory Directory to evict cold shards into, null if they are never evicted
+     */
+    public ShardedFamily(@NonNull Validator validator, @NonNull Supplier<GraphStore> storeFactory, Path evictionDirectory) {
+        this.validator = validator;
+        this.storeFactory = storeFactory;
+        this.evictionDirectory = evictionDirectory;
+    }
+
+    /**
+     * Adds a Member to the family in a shard of its own, ignores if the member is already present
+     *
+     * @param member Member to add
+     */
+    public void addPerson(Member member) {
+        shardOf(member);
+    }
+
+    @Override
+    public void connectPersons(String p1Id, String relation, String p2Id) {
+        // Members are looked up only by Id, so they should be present already, same as in FamilyGraph
+        LeveledRelation leveledRelation = parseToLeveledRelation(relation);
+        connectPersons(findPerson(p1Id, " not found in family to connect"), leveledRelation.genericRelation(),
+                findPerson(p2Id, " not found in family to connect"), leveledRelation.relationLevel(), true);
+    }
+
+    /**
+     * Connects two persons, merging their shards first if they are from different families. Persons not present yet
+     * are added.
+     */
+    @Override
+    public void connectPersons(Member p1, GenericRelation genericRelation, Member p2, int relationLevel,
+                               boolean doValidate) {
+        while (true) {
+            Shard shard1 = shardOf(p1);
+            Shard shard2 = shardOf(p2);
+            // Locks are always taken in the order of shard ids, so two merges can't deadlock
+            Shard first = shard1.id <= shard2.id ? shard1 : shard2;
+            Shard second = first == shard1 ? shard2 : shard1;
+            first.lock.writeLock().lock();
+            try {
+                if (second != first) {
+                    second.lock.writeLock().lock();
+                }
+                try {
+                    if (first.isMerged || second.isMerged) {
+                        continue; // Merged into another shard meanwhile, route again
+                    }
+                    // Validated against the sharded family, persons of different shards are never related
+                    if (doValidate && !validator.validate(p1, genericRelation, p2, relationLevel, this)) {
+                        throw new IllegalArgumentException(new ConnectionEdge(p1, genericRelation, p2)
+                                + " is NOT a valid Relation");
+                    }
+                    Shard shard = first == second ? first : merge(first, second);
+                    FamilyGraph graph = shard.graph();
+                    if (!graph.arePersonsDirectlyConnected(p1, p2)) {
+                        shard.connections += 2;
+                    }
+                    graph.connectPersons(p1, genericRelation, p2, relationLevel, false);
+                    return;
+                } finally {
+                    if (second != first) {
+                        second.lock.writeLock().unlock();
+                    }
+                }
+            } finally {
+                first.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Disconnects persons, their shard is kept whole even if it splits the family
+     *
+     * @param p1 From person
+     * @param p2 To Member
+     */
+    public void removeDirectConnection(Member p1, Member p2) {
+        Shard shard = lockShardOf(p1.getId(), true);
+        if (shard == null) {
+            throw new IllegalArgumentException(p1 + " is NOT directly connected to " + p2);
+        }
+        try {
+            if (routes.get(p2.getId()) != shard) {
+                throw new IllegalArgumentException(p1 + " is NOT directly connected to " + p2);
+            }
+            shard.graph().removeDirectConnection(p1, p2);
+            shard.connections--;
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public ConnectionEdge getConnection(Member p1, Member p2, boolean doBatchConnect) {
+        // Connections found are made on the shard, so it's locked for writing then
+        Shard shard = lockShardOf(p1.getId(), doBatchConnect);
+        if (shard == null) {
+            return null;
+        }
+        Lock lock = doBatchConnect ? shard.lock.writeLock() : shard.lock.readLock();
+        try {
+            // Routes of members of a shard change only while it's locked for writing, so this can't change meanwhile
+            return routes.get(p2.getId()) == shard ? shard.graph().getConnection(p1, p2, doBatchConnect) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Member getPersonById(String pId) {
+        return findPerson(pId, " NOT present in family");
+    }
+
+    @Override
+    public boolean areRelated(Member p1, Member p2) {
+        Shard shard = lockShardOf(p1.getId(), false);
+        if (shard == null) {
+            return false;
+        }
+        try {
+            return routes.get(p2.getId()) == shard && shard.graph().areRelated(p1, p2);
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Persons of different shards are certainly not related, checked without locking
+     */
+    @Override
+    public boolean mayBeRelated(Member p1, Member p2) {
+        Shard shard = routes.get(p1.getId());
+        return shard != null && shard == routes.get(p2.getId());
+    }
+
+    /**
+     * Runs a query of {@link FamilyGraph} on the shard of a member, locked for reading. All the relatives of the member
+     * are in the same shard, so queries about the family of the member see all of it.
+     *
+     * @param member Member to find the shard
+     * @param query  Query on the graph of the shard, it should not modify the graph
+     * @return Result of the query
+     */
+    public <T> T query(Member member, Function<FamilyGraph, T> query) {
+        Shard shard = lockShardOf(member.getId(), false);
+        if (shard == null) {
+            throw new IllegalArgumentException("Member Id: " + member.getId() + " NOT present in family");
+        }
+        try {
+            return query.apply(shard.graph());
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of shards, one per family unless a family got split by removing connections
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * @return Estimated bytes held in memory by shards that are not evicted
+     */
+    public long getResidentBytes() {
+        return shards.stream().filter(Shard::isResident).mapToLong(Shard::estimatedBytes).sum();
+    }
+
+    /**
+     * Evicts shards into snapshot files in the eviction directory, least recently used first, until the shards left in
+     * memory are estimated to fit in the bytes given. Shards in use are skipped.
+     *
+     * @param maxResidentBytes Estimated bytes the shards left in memory may hold
+     * @return Number of shards evicted
+     */
+    public int evictColdShards(long maxResidentBytes) {
+        if (evictionDirectory == null) {
+            throw new IllegalStateException("No eviction directory to evict shards into");
+        }
+        List<Shard> coldestFirst = new ArrayList<>();
+        long residentBytes = 0;
+        for (Shard shard : shards) {
+            if (shard.isResident()) {
+                coldestFirst.add(shard);
+                residentBytes += shard.estimatedBytes();
+            }
+        }
+        coldestFirst.sort(Comparator.comparingLong(shard -> shard.lastUsedNanos));
+        int evictedCount = 0;
+        for (Shard shard : coldestFirst) {
+            if (residentBytes <= maxResidentBytes) {
+                break;
+            }
+            if (shard.lock.writeLock().tryLock()) {
+                try {
+                    if (!shard.isMerged && shard.isResident()) {
+                        residentBytes -= shard.estimatedBytes();
+                        shard.evict();
+                        evictedCount++;
+                    }
+                } finally {
+                    shard.lock.writeLock().unlock();
+                }
+            }
+        }
+        return evictedCount;
+    }
+
+    /**
+     * Evicts cold shards in the background every interval, see {@link #evictColdShards}
+     *
+     * @param maxResidentBytes Estimated bytes the shards left in memory may hold
+     * @param intervalMillis   Interval between evictions
+     */
+    public synchronized void evictColdShardsEvery(long maxResidentBytes, long intervalMillis) {
+        if (evictionDirectory == null) {
+            throw new IllegalStateException("No eviction directory to evict shards into");
+        }
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Eviction interval should be positive, but got " + intervalMillis);
+        }
+        if (evictor != null) {
+            throw new IllegalStateException("Cold shards are evicted periodically already");
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "family-shard-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(() -> evictInBackground(maxResidentBytes), intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void evictInBackground(long maxResidentBytes) {
+        try {
+            evictColdShards(maxResidentBytes);
+            evictionFailure = null;
+        } catch (RuntimeException e) {
+            evictionFailure = e; // Kept, so the evictions that follow still run
+        }
+    }
+
+    /**
+     * Stops periodic evictions, shards stay as they are
+     */
+    @Override
+    public synchronized void close() {
+        if (evictor != null) {
+            evictor.shutdown();
+            evictor = null;
+        }
+    }
+
+    private Member findPerson(String pId, String notFoundMessage) {
+        Shard shard = lockShardOf(pId, false);
+        if (shard == null) {
+            throw new IllegalArgumentException("Member with Id: " + pId + notFoundMessage);
+        }
+        try {
+            return shard.graph().getPersonById(pId);
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns shard of the member, adding the member in a new shard if it's not routed yet
+     */
+    private Shard shardOf(Member member) {
+        return routes.computeIfAbsent(member.getId(), id -> {
+            var shard = new Shard(shardIds.incrementAndGet());
+            shard.graph = shard.newGraph(storeFactory.get());
+            shard.graph.addPerson(member);
+            shard.members = 1;
+            shards.add(shard);
+            return shard;
+        });
+    }
+
+    /**
+     * Returns shard of the member, locked for reading or writing, null if the member is not routed
+     */
+    private Shard lockShardOf(String memberId, boolean forWrite) {
+        while (true) {
+            Shard shard = routes.get(memberId);
+            if (shard == null) {
+                return null;
+            }
+            Lock lock = forWrite ? shard.lock.writeLock() : shard.lock.readLock();
+            lock.lock();
+            if (!shard.isMerged) {
+                return shard;
+            }
+            lock.unlock(); // Merged into another shard meanwhile, route again
+        }
+    }
+
+    /**
+     * Merges the smaller of two shards into the larger, both locked for writing
+     *
+     * @return Shard merged into
+     */
+    private Shard merge(Shard shard1, Shard shard2) {
+        Shard larger = shard1.members >= shard2.members ? shard1 : shard2;
+        Shard smaller = larger == shard1 ? shard2 : shard1;
+        FamilyGraph smallerGraph = smaller.graph();
+        larger.graph().absorb(smallerGraph);
+        for (Member member : smallerGraph.getAllPersonsInFamily()) {
+            routes.put(member.getId(), larger);
+        }
+        larger.members += smaller.members;
+        larger.connections += smaller.connections;
+        smaller.graph = null;
+        smaller.isMerged = true;
+        shards.remove(smaller);
+        return larger;
+    }
+
+    /**
+     * A family, or more after connections got removed, with the lock guarding it. Counts are guarded by the lock too.
+     */
+    private final class Shard {
+        private final long id;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile FamilyGraph graph; // Null while evicted
+        private volatile boolean isMerged;
+        private volatile long lastUsedNanos = System.nanoTime();
+        private int members;
+        private long connections;
+
+        private Shard(long id) {
+            this.id = id;
+        }
+
+        /**
+         * Returns graph of the shard, loading it back if evicted. Called with the lock held, a read lock is enough.
+         */
+        private FamilyGraph graph() {
+            lastUsedNanos = System.nanoTime();
+            FamilyGraph resident = graph;
+            if (resident == null) {
+                synchronized (this) { // Readers holding the read lock may load at once
+                    resident = graph;
+                    if (resident == null) {
+                        Path file = file();
+                        resident = newGraph(MappedGraphStore.open(file).copyTo(storeFactory.get()));
+                        graph = resident;
+                        try {
+                            Files.deleteIfExists(file);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                }
+            }
+            return resident;
+        }
+
+        private FamilyGraph newGraph(GraphStore store) {
+            var familyGraph = new FamilyGraph(validator, store);
+            familyGraph.setSearchMode(searchMode);
+            familyGraph.setClosureCache(new ClosureCache(maxCachedConnectionsPerShard));
+            return familyGraph;
+        }
+
+        /**
+         * Writes the shard into its file and drops it from memory, called with the write lock held
+         */
+        private void evict() {
+            graph.writeSnapshot(file());
+            graph = null;
+        }
+
+        private boolean isResident() {
+            return graph != null;
+        }
+
+        private long estimatedBytes() {
+            return members * BYTES_PER_MEMBER + connections * BYTES_PER_CONNECTION;
+        }
+
+        private Path file() {
+            return evictionDirectory.resolve("shard-" + id + SHARD_FILE_SUFFIX);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package core;
+
+import entities.ConnectionEdge;
+import entities.Member;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import relationship.GenericRelation;
+import relationship.Relation;
+import relationship.RelationAlgebra;
+import relationship.SpecificRelation;
+
+/**
+ * Query of the connections of a member with relatives, with predicates the search checks as it goes instead of
+ * filtering a whole closure afterwards. Relation and relation level are of the connection from the member to the
+ * relative, as in {@link ConnectionEdge}, and match any if not set.
+ * <p>
+ * The search stops at the max hops or once it finds limit connections, and doesn't expand a relative when no relative
+ * beyond it, within the hops left, can have the relation and relation level asked. Asking for grandchildren within
+ * two hops never goes past parents, whose relatives can't be grandchildren in one hop.
+ * <p>
+ * A relative reachable along different paths is found along the shortest path that isn't pruned, which may not be
+ * the path an unbounded search takes first, in families where the two disagree on the relation.
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class TraversalQuery {
+    private static final int MAX_HOPS_TO_BOUND_LEVELS = 32;
+    private static final int[] EMPTY = {Integer.MAX_VALUE, Integer.MIN_VALUE};
+
+    private GenericRelation relation;
+    private Integer relationLevel;
+    private Boolean isRelativeMale;
+    private int maxHops = Integer.MAX_VALUE;
+    private int limit = Integer.MAX_VALUE;
+
+    /**
+     * Query for relatives who are of the relation with the member, the way
+     * {@link FamilyGraph#getAllPersonsByRelation(entities.Member, Relation, int)} asks for them
+     *
+     * @param relationOfRelative Relation of the relatives with member, specific relations match the gender too
+     * @param relationLevel      Level of relation of the relatives with member
+     * @return Query
+     */
+    public static TraversalQuery forRelatives(Relation relationOfRelative, int relationLevel) {
+        var query = new TraversalQuery();
+        if (relationOfRelative instanceof SpecificRelation) {
+            var specificRelation = (SpecificRelation) relationOfRelative;
+            query.setIsRelativeMale(specificRelation.isRelationMale());
+            relationOfRelative = specificRelation.getGenericRelation();
+        }
+        return query.setRelation(((GenericRelation) relationOfRelative).getReverseRelation())
+                .setRelationLevel(-relationLevel);
+    }
+
+    public TraversalQuery setMaxHops(int maxHops) {
+        if (maxHops < 1) {
+            throw new IllegalArgumentException("Max hops should be positive, but got " + maxHops);
+        }
+        this.maxHops = maxHops;
+        return this;
+    }
+
+    public TraversalQuery setLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit should be positive, but got " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @param relation      Ordinal of aggregate relation of member with the relative
+     * @param relationLevel Aggregate relation level of member with the relative
+     * @param relative      Relative
+     * @return True if connection of member with the relative matches
+     */
+    boolean matches(int relation, int relationLevel, Member relative) {
+        return (this.relation == null || relation == this.relation.ordinal())
+                && (this.relationLevel == null || relationLevel == this.relationLevel)
+                && (isRelativeMale == null || relative.isGenderMale() == isRelativeMale);
+    }
+
+    /**
+     * Compiles the query into bounds of relation level a search can still reach, checked for every relative it is
+     * about to expand
+     */
+    Pruning compilePruning() {
+        return new Pruning(this);
+    }
+
+    /**
+     * Range of relation level changes along paths that end at the relation asked, for every relation a path may start
+     * from and number of hops it may take. Ranges are widened into intervals, so they may hold changes no path has, but
+     * never miss one, and a relative is pruned only if its change to the level asked is out of range.
+     */
+    static final class Pruning {
+        private final int maxHops;
+        private final Integer relationLevel;
+        // Range for a path of up to k hops from relation r at [k][r], as {min, max}, empty if min > max
+        private final int[][][] ranges;
+
+        private Pruning(TraversalQuery query) {
+            this.maxHops = query.maxHops;
+            this.relationLevel = query.relationLevel;
+            int boundedHops = Math.min(maxHops, MAX_HOPS_TO_BOUND_LEVELS);
+            ranges = new int[boundedHops + 1][RelationAlgebra.RELATION_COUNT][];
+            for (int r = 0; r < RelationAlgebra.RELATION_COUNT; r++) {
+                ranges[0][r] = EMPTY;
+            }
+            for (int k = 1; k <= boundedHops; k++) {
+                for (int r = 0; r < RelationAlgebra.RELATION_COUNT; r++) {
+                    int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+                    for (int edge = 0; edge < RelationAlgebra.RELATION_COUNT; edge++) {
+                        int next = RelationAlgebra.compose(edge, r);
+                        if (next == RelationAlgebra.NO_RELATION) {
+                            continue;
+                        }
+                        int step = RelationAlgebra.relationLevel(edge);
+                        if (query.relation == null || next == query.relation.ordinal()) {
+                            min = Math.min(min, step);
+                            max = Math.max(max, step);
+                        }
+                        int[] rest = ranges[k - 1][next];
+                        if (rest[0] <= rest[1]) {
+                            min = Math.min(min, step + rest[0]);
+                            max = Math.max(max, step + rest[1]);
+                        }
+                    }
+                    ranges[k][r] = new int[]{min, max};
+                }
+            }
+        }
+
+        /**
+         * @param relation      Ordinal of aggregate relation of the relative
+         * @param relationLevel Aggregate relation level of the relative
+         * @param depth         Hops from member to the relative
+         * @return True if a relative beyond may match the query
+         */
+        boolean isWorthExpanding(int relation, int relationLevel, int depth) {
+            if (depth >= maxHops) {
+                return false;
+            }
+            int hopsLeft = maxHops - depth;
+            if (hopsLeft > MAX_HOPS_TO_BOUND_LEVELS) {
+                // Levels may change without bound in that many hops, only the relation may rule the relative out
+                int[] range = ranges[MAX_HOPS_TO_BOUND_LEVELS][relation];
+                return range[0] <= range[1];
+            }
+            int[] range = ranges[hopsLeft][relation];
+            if (this.relationLevel == null) {
+                return range[0] <= range[1];
+            }
+            long change = (long) this.relationLevel - relationLevel;
+            return change >= range[0] && change <= range[1];
+        }
+    }
+}
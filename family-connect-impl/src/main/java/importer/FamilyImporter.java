@@ -0,0 +1,309 @@
+package importer;
+
+import core.FamilyGraph;
+import entities.ConnectionEdge;
+import entities.Member;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import relationship.GenericRelation;
+import relationship.LeveledRelation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static utils.RelationUtils.parseToLeveledRelation;
+
+/**
+ * Streams members and relations from files into a family, reading them line by line and holding at most one batch of
+ * relations at a time.
+ * <p>
+ * Member rows have fields id, name, age and isMale. Relation rows have fields from, relation and to, where relation is
+ * a relation name as parsed by {@link utils.RelationUtils#parseToLeveledRelation(CharSequence)}, connected with the
+ * level the name implies as in {@link FamilyGraph#connectPersons(String, String, String)}.
+ * <p>
+ * Relations of a batch are grouped by the family components they touch. Groups are independent of each other, so they
+ * are validated and connected in parallel if the family is thread-safe. Rows within a group keep the order of the
+ * file. Rows that fail to parse or validate are rejected and reported, the import goes on.
+ */
+@RequiredArgsConstructor
+public class FamilyImporter {
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    public static final int DEFAULT_MAX_REJECTED_ROWS_KEPT = 1_000;
+
+    private static final String[] MEMBER_FIELDS = {"id", "name", "age", "isMale"};
+    private static final String[] RELATION_FIELDS = {"from", "relation", "to"};
+
+    @NonNull
+    private final FamilyGraph family;
+    @Getter
+    @Setter
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    @Getter
+    @Setter
+    private int parallelism = Runtime.getRuntime().availableProcessors(); // Used only if the family is thread-safe
+    @Getter
+    @Setter
+    private int maxRejectedRowsKept = DEFAULT_MAX_REJECTED_ROWS_KEPT;
+    @Getter
+    @Setter
+    private boolean doValidate = true;
+    @Getter
+    @Setter
+    private int expectedMembers; // Hint to pre-size the family, 0 if unknown
+    @Getter
+    @Setter
+    private int expectedRelations; // Hint to pre-size the family, 0 if unknown
+
+    /**
+     * Imports members and then relations from files, format of each is known from its extension
+     *
+     * @param membersFile   File of members
+     * @param relationsFile File of relations between the members
+     * @return Report of both files
+     */
+    public ImportReport importFiles(Path membersFile, Path relationsFile) {
+        var report = new ImportReport(maxRejectedRowsKept);
+        presizeFamily();
+        try (var membersReader = Files.newBufferedReader(membersFile, StandardCharsets.UTF_8);
+             var relationsReader = Files.newBufferedReader(relationsFile, StandardCharsets.UTF_8)) {
+            importMembers(membersReader, ImportFormat.ofFileName(membersFile.getFileName().toString()), report);
+            importRelations(relationsReader, ImportFormat.ofFileName(relationsFile.getFileName().toString()), report);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        report.finish();
+        return report;
+    }
+
+    public ImportReport importMembers(Reader reader, ImportFormat format) {
+        var report = new ImportReport(maxRejectedRowsKept);
+        presizeFamily();
+        importMembers(reader, format, report);
+        report.finish();
+        return report;
+    }
+
+    public ImportReport importRelations(Reader reader, ImportFormat format) {
+        var report = new ImportReport(maxRejectedRowsKept);
+        presizeFamily();
+        importRelations(reader, format, report);
+        report.finish();
+        return report;
+    }
+
+    /**
+     * Connects connections read from elsewhere, like a database, in batches grouped by family component just like rows
+     * of a relations file
+     *
+     * @param connections Connections between members of the family
+     * @return Report of the connections
+     */
+    public ImportReport importConnections(Iterator<ConnectionEdge> connections) {
+        var report = new ImportReport(maxRejectedRowsKept);
+        presizeFamily();
+        connectInBatches(report, rows -> {
+            long rowNumber = 0;
+            while (connections.hasNext()) {
+                ConnectionEdge connection = connections.next();
+                report.rowRead();
+                rows.accept(new RelationRow(++rowNumber, null, connection.from(),
+                        connection.relation(), connection.to(), connection.relationLevel()));
+            }
+        });
+        report.finish();
+        return report;
+    }
+
+    private void presizeFamily() {
+        if (expectedMembers > 0 || expectedRelations > 0) {
+            family.ensureCapacity(expectedMembers, expectedRelations);
+        }
+    }
+
+    private void importMembers(Reader reader, ImportFormat format, ImportReport report) {
+        var parser = new RowParser(format, MEMBER_FIELDS);
+        forEachRow(reader, parser, report, (lineNumber, line, fields) -> {
+            var member = new Member(fields[0], fields[1], Integer.parseInt(fields[2]), parseBoolean(fields[3]));
+            family.addPerson(member);
+            if (!family.getPersonById(member.getId()).areAllAttributesMatching(member)) {
+                report.reject(lineNumber, line, "Member with Id: " + member.getId() + " already present with other details");
+            } else {
+                report.memberImported();
+            }
+        });
+    }
+
+    private void importRelations(Reader reader, ImportFormat format, ImportReport report) {
+        var parser = new RowParser(format, RELATION_FIELDS);
+        connectInBatches(report, rows -> forEachRow(reader, parser, report, (lineNumber, line, fields) -> {
+            LeveledRelation relation = parseToLeveledRelation(fields[1]);
+            rows.accept(new RelationRow(lineNumber, line, family.getPersonById(fields[0]), relation.genericRelation(),
+                    family.getPersonById(fields[2]), relation.relationLevel()));
+        }));
+    }
+
+    /**
+     * Collects rows given by source into batches, and connects each batch once full
+     */
+    private void connectInBatches(ImportReport report, Consumer<Consumer<RelationRow>> rowSource) {
+        List<RelationRow> batch = new ArrayList<>(Math.min(batchSize, DEFAULT_BATCH_SIZE));
+        ExecutorService executor = (family.isThreadSafe() && parallelism > 1)
+                ? Executors.newFixedThreadPool(parallelism) : null;
+        try {
+            rowSource.accept(row -> {
+                batch.add(row);
+                if (batch.size() >= batchSize) {
+                    connectBatch(batch, executor, report);
+                    batch.clear();
+                }
+            });
+            connectBatch(batch, executor, report);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private void connectBatch(List<RelationRow> batch, ExecutorService executor, ImportReport report) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<List<RelationRow>> groups = groupByComponent(batch);
+        if (executor == null || groups.size() == 1) {
+            groups.forEach(group -> connectGroup(group, report));
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(groups.size());
+        for (List<RelationRow> group : groups) {
+            futures.add(executor.submit(() -> connectGroup(group, report)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Import failed", e.getCause());
+        }
+    }
+
+    private void connectGroup(List<RelationRow> group, ImportReport report) {
+        for (RelationRow row : group) {
+            try {
+                family.connectPersons(row.from, row.relation, row.to, row.relationLevel, doValidate);
+                report.relationImported();
+            } catch (IllegalArgumentException e) {
+                report.reject(row.lineNumber, row.line(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Groups rows, so that rows touching the same family component, directly or through other rows of the batch, are
+     * in the same group in order of the file
+     */
+    private List<List<RelationRow>> groupByComponent(List<RelationRow> batch) {
+        Map<Integer, Integer> parents = new HashMap<>();
+        int[] fromComponents = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            RelationRow row = batch.get(i);
+            int fromComponent = family.getFamilyComponent(row.from);
+            int toComponent = family.getFamilyComponent(row.to);
+            parents.put(findRoot(parents, toComponent), findRoot(parents, fromComponent));
+            fromComponents[i] = fromComponent;
+        }
+        Map<Integer, List<RelationRow>> groups = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            groups.computeIfAbsent(findRoot(parents, fromComponents[i]), root -> new ArrayList<>()).add(batch.get(i));
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private static int findRoot(Map<Integer, Integer> parents, int component) {
+        Integer parent;
+        while ((parent = parents.get(component)) != null && parent != component) {
+            component = parent;
+        }
+        return component;
+    }
+
+    private void forEachRow(Reader reader, RowParser parser, ImportReport report, RowConsumer consumer) {
+        var bufferedReader = (reader instanceof BufferedReader) ? (BufferedReader) reader : new BufferedReader(reader);
+        try {
+            long lineNumber = 0;
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && parser.isHeader(line))) {
+                    continue;
+                }
+                report.rowRead();
+                try {
+                    consumer.accept(lineNumber, line, parser.parse(line));
+                } catch (IllegalArgumentException e) {
+                    report.reject(lineNumber, line, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean parseBoolean(String value) {
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Expected true or false, but found: " + value);
+    }
+
+    @FunctionalInterface
+    private interface RowConsumer {
+        void accept(long lineNumber, String line, String[] fields);
+    }
+
+    private static final class RelationRow {
+        private final long lineNumber;
+        private final String line; // Null for a connection not read from a line, formatted only if it is rejected
+        private final Member from;
+        private final GenericRelation relation;
+        private final Member to;
+        private final int relationLevel;
+
+        private RelationRow(long lineNumber, String line, Member from, GenericRelation relation, Member to,
+                            int relationLevel) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.from = from;
+            this.relation = relation;
+            this.to = to;
+            this.relationLevel = relationLevel;
+        }
+
+        private String line() {
+            return (line != null) ? line : new ConnectionEdge(from, relation, to, relationLevel).toString();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package importer;
+
+import java.util.Locale;
+
+/**
+ * Formats of files the {@link FamilyImporter} reads, one row per line
+ */
+public enum ImportFormat {
+    /**
+     * Comma separated fields in fixed order, with an optional header line. Fields may be quoted with double quotes.
+     */
+    CSV,
+    /**
+     * One flat JSON object per line, fields by name
+     */
+    NDJSON;
+
+    /**
+     * @param fileName Name of the file, with extension .csv, .ndjson or .jsonl
+     * @return Format of the file
+     */
+    public static ImportFormat ofFileName(String fileName) {
+        String lowerCaseName = fileName.toLowerCase(Locale.ROOT);
+        if (lowerCaseName.endsWith(".csv")) {
+            return CSV;
+        }
+        if (lowerCaseName.endsWith(".ndjson") || lowerCaseName.endsWith(".jsonl")) {
+            return NDJSON;
+        }
+        throw new IllegalArgumentException("Unknown import format of file: " + fileName);
+    }
+}
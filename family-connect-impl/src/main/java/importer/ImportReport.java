@@ -0,0 +1,113 @@
+package importer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcome of an import, with the number of rows read and imported and the rows rejected. Only the first rejected rows
+ * are kept, up to a limit, all of them are counted.
+ */
+public class ImportReport {
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder membersImported = new LongAdder();
+    private final LongAdder relationsImported = new LongAdder();
+    private final LongAdder rowsRejected = new LongAdder();
+    private final List<RejectedRow> rejectedRows = new ArrayList<>();
+    private final int maxRejectedRowsKept;
+    private final long startNanos = System.nanoTime();
+    private long elapsedNanos;
+
+    ImportReport(int maxRejectedRowsKept) {
+        this.maxRejectedRowsKept = maxRejectedRowsKept;
+    }
+
+    /**
+     * Row of a file that was not imported
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class RejectedRow {
+        private final long lineNumber;
+        private final String line;
+        private final String reason;
+
+        @Override
+        public String toString() {
+            return "Line " + lineNumber + ": " + reason + " [" + line + "]";
+        }
+    }
+
+    void rowRead() {
+        rowsRead.increment();
+    }
+
+    void memberImported() {
+        membersImported.increment();
+    }
+
+    void relationImported() {
+        relationsImported.increment();
+    }
+
+    void reject(long lineNumber, String line, String reason) {
+        rowsRejected.increment();
+        synchronized (rejectedRows) {
+            if (rejectedRows.size() < maxRejectedRowsKept) {
+                rejectedRows.add(new RejectedRow(lineNumber, line, reason));
+            }
+        }
+    }
+
+    void finish() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    public long getMembersImported() {
+        return membersImported.sum();
+    }
+
+    public long getRelationsImported() {
+        return relationsImported.sum();
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected.sum();
+    }
+
+    /**
+     * @return Rejected rows in order they were found, up to the limit kept
+     */
+    public List<RejectedRow> getRejectedRows() {
+        synchronized (rejectedRows) {
+            return Collections.unmodifiableList(new ArrayList<>(rejectedRows));
+        }
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * @return Rows read per second
+     */
+    public double getThroughput() {
+        return (elapsedNanos == 0) ? 0 : getRowsRead() * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Read %d rows in %d ms (%.0f rows/s): %d members and %d relations imported, %d rows rejected",
+                getRowsRead(), getElapsedMillis(), getThroughput(), getMembersImported(), getRelationsImported(),
+                getRowsRejected());
+    }
+}
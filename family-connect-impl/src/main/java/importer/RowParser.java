@@ -0,0 +1,263 @@
+package importer;
+
+/**
+ * Parses a line of a file into the fields expected, in order of field names. Parsing allocates only the field values,
+ * apart from fields and JSON names with escapes, which take an extra copy to unescape.
+ */
+final class RowParser {
+    private final ImportFormat format;
+    private final String[] fieldNames;
+
+    RowParser(ImportFormat format, String... fieldNames) {
+        this.format = format;
+        this.fieldNames = fieldNames;
+    }
+
+    /**
+     * @return True if line is the CSV header, with the field names in order
+     */
+    boolean isHeader(String line) {
+        if (format != ImportFormat.CSV) {
+            return false;
+        }
+        String[] fields;
+        try {
+            fields = parseCsv(line);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (!fields[i].equalsIgnoreCase(fieldNames[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Field values in order of field names
+     * @throws IllegalArgumentException if line is malformed or misses a field
+     */
+    String[] parse(String line) {
+        return (format == ImportFormat.CSV) ? parseCsv(line) : parseJson(line);
+    }
+
+    private String[] parseCsv(String line) {
+        String[] fields = new String[fieldNames.length];
+        int field = 0;
+        int position = 0;
+        while (true) {
+            if (field == fields.length) {
+                throw new IllegalArgumentException("Expected " + fields.length + " fields, but found more");
+            }
+            position = skipWhitespace(line, position);
+            if (position < line.length() && line.charAt(position) == '"') {
+                int start = ++position;
+                boolean hasEscapedQuotes = false;
+                while (true) {
+                    if (position == line.length()) {
+                        throw new IllegalArgumentException("Unterminated quote in field " + fieldNames[field]);
+                    }
+                    if (line.charAt(position++) == '"') {
+                        if (position < line.length() && line.charAt(position) == '"') {
+                            hasEscapedQuotes = true;
+                            position++;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                fields[field++] = hasEscapedQuotes ? line.substring(start, position - 1).replace("\"\"", "\"").trim()
+                        : trimmedSubstring(line, start, position - 1);
+                position = skipWhitespace(line, position);
+            } else {
+                int end = line.indexOf(',', position);
+                end = (end < 0) ? line.length() : end;
+                fields[field++] = trimmedSubstring(line, position, end);
+                position = end;
+            }
+            if (position == line.length()) {
+                break;
+            }
+            if (line.charAt(position) != ',') {
+                throw new IllegalArgumentException("Unexpected character after quoted field " + fieldNames[field - 1]);
+            }
+            position++;
+        }
+        if (field != fields.length) {
+            throw new IllegalArgumentException("Expected " + fields.length + " fields, but found " + field);
+        }
+        return fields;
+    }
+
+    private String[] parseJson(String line) {
+        String[] fields = new String[fieldNames.length];
+        int position = expect(line, skipWhitespace(line, 0), '{');
+        position = skipWhitespace(line, position);
+        if (position < line.length() && line.charAt(position) == '}') {
+            position++;
+        } else {
+            while (true) {
+                int field;
+                position = expect(line, skipWhitespace(line, position), '"');
+                int end = plainStringEnd(line, position);
+                if (end >= 0) {
+                    field = fieldOf(line, position, end);
+                    position = end + 1;
+                } else {
+                    var name = new StringBuilder();
+                    position = readString(line, position, name);
+                    field = fieldOf(name);
+                }
+                position = skipWhitespace(line, expect(line, skipWhitespace(line, position), ':'));
+                String value = null;
+                if (position < line.length() && line.charAt(position) == '"') {
+                    end = plainStringEnd(line, position + 1);
+                    if (end >= 0) {
+                        value = (field >= 0) ? line.substring(position + 1, end) : null;
+                        position = end + 1;
+                    } else {
+                        var escaped = new StringBuilder();
+                        position = readString(line, position + 1, escaped);
+                        value = escaped.toString();
+                    }
+                } else {
+                    int start = position;
+                    while (position < line.length() && ",} \t".indexOf(line.charAt(position)) < 0) {
+                        position++;
+                    }
+                    if (field >= 0) {
+                        value = line.substring(start, position);
+                    }
+                }
+                if (field >= 0 && !"null".equals(value)) {
+                    fields[field] = value;
+                }
+                position = skipWhitespace(line, position);
+                if (position < line.length() && line.charAt(position) == ',') {
+                    position++;
+                    continue;
+                }
+                position = expect(line, position, '}');
+                break;
+            }
+        }
+        if (skipWhitespace(line, position) != line.length()) {
+            throw new IllegalArgumentException("Unexpected characters after JSON object");
+        }
+        for (int field = 0; field < fields.length; field++) {
+            if (fields[field] == null) {
+                throw new IllegalArgumentException("Missing field " + fieldNames[field]);
+            }
+        }
+        return fields;
+    }
+
+    private int fieldOf(CharSequence name) {
+        for (int field = 0; field < fieldNames.length; field++) {
+            if (fieldNames[field].contentEquals(name)) {
+                return field;
+            }
+        }
+        return -1;
+    }
+
+    private int fieldOf(String line, int start, int end) {
+        for (int field = 0; field < fieldNames.length; field++) {
+            String fieldName = fieldNames[field];
+            if (fieldName.length() == end - start && line.regionMatches(start, fieldName, 0, end - start)) {
+                return field;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Position of the closing quote of a JSON string from after its opening quote, -1 if the string has escapes
+     */
+    private static int plainStringEnd(String line, int position) {
+        for (; position < line.length(); position++) {
+            char c = line.charAt(position);
+            if (c == '"') {
+                return position;
+            }
+            if (c == '\\') {
+                return -1;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated JSON string");
+    }
+
+    /**
+     * Reads a JSON string from after its opening quote into value
+     *
+     * @return Position after the closing quote
+     */
+    private static int readString(String line, int position, StringBuilder value) {
+        while (position < line.length()) {
+            char c = line.charAt(position++);
+            if (c == '"') {
+                return position;
+            }
+            if (c == '\\') {
+                if (position == line.length()) {
+                    break;
+                }
+                char escaped = line.charAt(position++);
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > line.length()) {
+                            throw new IllegalArgumentException("Malformed unicode escape in JSON string");
+                        }
+                        value.append((char) Integer.parseInt(line.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated JSON string");
+    }
+
+    private static String trimmedSubstring(String line, int start, int end) {
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return line.substring(start, end);
+    }
+
+    private static int expect(String line, int position, char expected) {
+        if (position >= line.length() || line.charAt(position) != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' at position " + position);
+        }
+        return position + 1;
+    }
+
+    private static int skipWhitespace(String line, int position) {
+        while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+}
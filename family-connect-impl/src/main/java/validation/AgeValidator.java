@@ -3,6 +3,7 @@ package validation;
 import core.Family;
 import entities.Member;
 import relationship.GenericRelation;
+import relationship.RelationAlgebra;
 import relationship.SpecificRelation;
 
 /**
@@ -18,20 +19,15 @@ public class AgeValidator implements Validator {
 
     @Override
     public boolean validate(Member p1, GenericRelation genericRelation, Member p2, int relationLevel, Family family) {
+        // Positive relation level means p1 is from an elder generation, negative means from a younger one.
+        int generationDifference = RelationAlgebra.relationLevel(genericRelation.ordinal());
         boolean isValid;
-        switch (genericRelation) {
-            case PARENT:
-            case KIN:
-            case GRANDPARENT:
-                isValid = (p1.getAge() > p2.getAge());
-                break;
-            case CHILD:
-            case NIBLING:
-            case GRANDCHILD:
-                isValid = (p1.getAge() < p2.getAge());
-                break;
-            default:
-                isValid = true;
+        if (generationDifference > 0) {
+            isValid = (p1.getAge() > p2.getAge());
+        } else if (generationDifference < 0) {
+            isValid = (p1.getAge() < p2.getAge());
+        } else {
+            isValid = true;
         }
         return (nextValidator == null) ? isValid : isValid && nextValidator.validate(p1, genericRelation, p2, relationLevel,
                 family);
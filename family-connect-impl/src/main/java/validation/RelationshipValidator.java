@@ -4,6 +4,7 @@ import core.Family;
 import entities.ConnectionEdge;
 import entities.Member;
 import relationship.GenericRelation;
+import relationship.RelationAlgebra;
 import relationship.SpecificRelation;
 
 /**
@@ -20,7 +21,8 @@ public class RelationshipValidator implements Validator {
     @Override
     public boolean validate(Member p1, GenericRelation genericRelation, Member p2, int relationLevel, Family family) {
         // It's Ok to compare generic relations as it has already passed the gender validation.
-        ConnectionEdge possibleConnection = family.getConnection(p1, p2, false);
+        // Persons who can't be connected yet need no search, any relation between them is valid
+        ConnectionEdge possibleConnection = family.mayBeRelated(p1, p2) ? family.getConnection(p1, p2, false) : null;
         boolean isValid;
         if (possibleConnection == null) {
             // Which means these two Persons are not connected at all, directly or indirectly.
@@ -37,9 +39,8 @@ public class RelationshipValidator implements Validator {
                 default:
                     isRelationLevelValid = relationLevel == possibleConnection.relationLevel();
             }
-            isValid = isRelationLevelValid &&
-                    (genericRelation.equals(possibleConnection.relation())
-                            || genericRelation.getAlternateRelation().equals(possibleConnection.relation()));
+            isValid = isRelationLevelValid
+                    && RelationAlgebra.isAlternate(genericRelation, possibleConnection.relation());
         }
         return (nextValidator == null) ? isValid : isValid && nextValidator.validate(p1, genericRelation, p2, relationLevel,
                 family);
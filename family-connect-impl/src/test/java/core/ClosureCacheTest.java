@@ -0,0 +1,72 @@
+package core;
+
+import entities.ConnectionEdge;
+import entities.Member;
+import org.junit.jupiter.api.Test;
+import relationship.GenericRelation;
+import validation.GenderValidator;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ClosureCacheTest {
+
+    @Test
+    void testClosuresAreInvalidatedByFamilyChanges() {
+        var family = new FamilyGraph(new GenderValidator(), new CompactGraphStore());
+        var rama = new Member("1", "Rama", 80, true);
+        var lava = new Member("2", "Lava", 50, true);
+        var kusha = new Member("3", "Kusha", 48, true);
+        var ravi = new Member("4", "Ravi", 70, true);
+        family.connectPersons(rama, GenericRelation.PARENT, lava, 1, false);
+        family.addPerson(ravi);
+
+        assertEquals(1, family.getAllConnectionsInFamilyForPerson(rama, false).size());
+        assertEquals(1, family.getAllConnectionsInFamilyForPerson(rama, false).size());
+        assertEquals(0, family.getAllConnectionsInFamilyForPerson(ravi, false).size());
+        ClosureCache cache = family.getClosureCache();
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // A connection in another family keeps the closure, a connection in the family of Rama drops it
+        family.connectPersons(ravi, GenericRelation.SIBLING, kusha, 0, false);
+        assertEquals(1, family.getAllConnectionsInFamilyForPerson(rama, false).size());
+        assertEquals(0, cache.getInvalidationCount());
+        family.connectPersons(rama, GenericRelation.PARENT, kusha, 1, false);
+        assertEquals(3, family.getAllConnectionsInFamilyForPerson(rama, false).size());
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    void testFrequentClosuresAreNotEvictedByRareOnes() {
+        var cache = new ClosureCache(4);
+        Set<ConnectionEdge> closure = Collections.singleton(new ConnectionEdge(new Member("1", "Rama", 80, true),
+                GenericRelation.PARENT, new Member("2", "Lava", 50, true)));
+        for (int i = 0; i < 5; i++) {
+            cache.get(0, 0);
+        }
+        cache.put(0, closure, 0);
+        cache.get(1, 0);
+        cache.put(1, closure, 0);
+        assertNotNull(cache.get(0, 0));
+
+        // Cache is full, the rarely requested member is not admitted
+        cache.get(2, 0);
+        cache.put(2, closure, 0);
+        assertNull(cache.get(2, 0));
+        assertEquals(1, cache.getRejectionCount());
+
+        // Once requested often enough, it evicts the least recently used one
+        for (int i = 0; i < 5; i++) {
+            cache.get(2, 0);
+        }
+        cache.put(2, closure, 0);
+        assertNotNull(cache.get(2, 0));
+        assertNull(cache.get(1, 0));
+        assertEquals(1, cache.getEvictionCount());
+    }
+}
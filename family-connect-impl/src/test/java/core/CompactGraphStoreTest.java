@@ -0,0 +1,95 @@
+package core;
+
+import entities.Member;
+import org.junit.jupiter.api.Test;
+import relationship.GenericRelation;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactGraphStoreTest {
+
+    @Test
+    void testInterningAndDuplicateEdges() {
+        var store = new CompactGraphStore(1, 1);
+        int p1 = store.addMember(new Member("1", "Gopal", 28, true));
+        int p2 = store.addMember(new Member("2", "Meena", 26, false));
+
+        assertEquals(p1, store.addMember(new Member("1", "Gopal", 28, true)));
+        assertEquals(p2, store.indexOf("2"));
+        assertEquals(-1, store.indexOf("3"));
+
+        assertTrue(store.addEdge(p1, GenericRelation.SPOUSE, p2, 0));
+        assertFalse(store.addEdge(p1, GenericRelation.SPOUSE, p2, 0));
+        assertEquals(1, store.degree(p1));
+        assertTrue(store.removeEdge(p1, p2));
+        assertFalse(store.removeEdge(p1, p2));
+    }
+
+    @Test
+    void testSameAdjacencyAsHashStore() {
+        var random = new Random(42);
+        var relations = GenericRelation.values();
+        GraphStore hashStore = new HashGraphStore();
+        var compactStore = new CompactGraphStore(1, 1);
+        int members = 500;
+        for (int i = 0; i < members; i++) {
+            var member = new Member(String.valueOf(i), "Member" + i, 30, i % 2 == 0);
+            assertEquals(hashStore.addMember(member), compactStore.addMember(member));
+        }
+        for (int i = 0; i < 20_000; i++) {
+            int from = random.nextInt(members);
+            int to = random.nextInt(members);
+            if (random.nextInt(4) == 0) {
+                assertEquals(hashStore.removeEdge(from, to), compactStore.removeEdge(from, to));
+            } else {
+                var relation = relations[random.nextInt(relations.length)];
+                int level = relation.getRelationLevel();
+                assertEquals(hashStore.addEdge(from, relation, to, level), compactStore.addEdge(from, relation, to, level));
+            }
+            if (i % 5_000 == 0) {
+                compactStore.compact();
+            }
+        }
+        var hashCursor = new AdjacencyCursor();
+        var compactCursor = new AdjacencyCursor();
+        for (int node = 0; node < members; node++) {
+            hashStore.openAdjacency(node, hashCursor);
+            compactStore.openAdjacency(node, compactCursor);
+            assertEquals(hashCursor.degree(), compactCursor.degree());
+            for (int i = 0; i < hashCursor.degree(); i++) {
+                assertEquals(hashCursor.neighbourAt(i), compactCursor.neighbourAt(i));
+                assertEquals(hashCursor.relationOrdinalAt(i), compactCursor.relationOrdinalAt(i));
+                assertEquals(hashCursor.relationLevelAt(i), compactCursor.relationLevelAt(i));
+            }
+        }
+    }
+
+    @Test
+    void testMembersInColumnsSameAsAdded() {
+        for (var layout : new CompactGraphStore.MemberLayout[]{CompactGraphStore.MemberLayout.COLUMNS,
+                CompactGraphStore.MemberLayout.OFF_HEAP_COLUMNS}) {
+            var store = new CompactGraphStore(1, 1, layout);
+            int members = 1_000;
+            for (int i = 0; i < members; i++) {
+                assertEquals(i, store.addMember(memberOf(i)));
+            }
+            assertEquals(0, store.addMember(new Member(memberOf(0).getId(), "Other", 1, false)));
+            for (int i = 0; i < members; i++) {
+                var member = store.getMember(store.indexOf(memberOf(i).getId()));
+                assertTrue(member.areAllAttributesMatching(memberOf(i)));
+            }
+            assertEquals(-1, store.indexOf("id-e0"));
+        }
+    }
+
+    /**
+     * Member with an ASCII id or not, and a name shared with many others
+     */
+    private static Member memberOf(int i) {
+        return new Member((i % 2 == 0 ? "id-\u00e9" : "id-") + i, "Name" + i % 10, i % 120, i % 3 == 0);
+    }
+}
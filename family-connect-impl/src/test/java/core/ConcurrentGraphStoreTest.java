@@ -0,0 +1,202 @@
+package core;
+
+import entities.Member;
+import org.junit.jupiter.api.Test;
+import relationship.GenericRelation;
+import relationship.SpecificRelation;
+import validation.GenderValidator;
+import validation.RelationshipValidator;
+import validation.Validator;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentGraphStoreTest {
+    private static final int WRITERS = 4;
+    private static final int GENERATIONS = 500;
+
+    @Test
+    void testConcurrentWritersAndReaders() throws Exception {
+        var family = new FamilyGraph(new GenderValidator(), new ConcurrentGraphStore());
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+        var isWriting = new AtomicBoolean(true);
+        try {
+            // Every writer grows its own family line, one generation after another
+            Future<?>[] writers = new Future<?>[WRITERS];
+            for (int writer = 0; writer < WRITERS; writer++) {
+                String line = "line" + writer + "-";
+                writers[writer] = executor.submit(() -> {
+                    Member parent = new Member(line + 0, "Member", 100, true);
+                    for (int generation = 1; generation < GENERATIONS; generation++) {
+                        Member child = new Member(line + generation, "Member", 100, true);
+                        family.connectPersons(parent, GenericRelation.PARENT, child, 1, false);
+                        parent = child;
+                    }
+                });
+            }
+            Future<?> reader = executor.submit(() -> {
+                while (isWriting.get()) {
+                    for (Member member : family.getAllPersonsInFamily()) {
+                        if (member.getId().endsWith("-0")) {
+                            // Reads must never fail while the lines grow
+                            family.getAllConnectionsInFamilyForPerson(member, false);
+                        }
+                    }
+                }
+            });
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+            isWriting.set(false);
+            reader.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(WRITERS * GENERATIONS, family.getAllPersonsInFamily().size());
+        for (int writer = 0; writer < WRITERS; writer++) {
+            var root = family.getPersonById("line" + writer + "-0");
+            var leaf = family.getPersonById("line" + writer + "-" + (GENERATIONS - 1));
+            assertEquals(GENERATIONS - 1, family.getAllConnectionsInFamilyForPerson(root, false).size());
+            var connection = family.getConnection(leaf, root, false);
+            assertNotNull(connection);
+            assertEquals(GenericRelation.GRANDCHILD, connection.relation());
+            assertTrue(family.arePersonsDirectlyConnected(family.getPersonById("line" + writer + "-1"), root));
+        }
+    }
+
+    @Test
+    void testConflictingConnectsOfSamePairAreValidatedOneAfterAnother() throws Exception {
+        // Validation waits for the other connect to be validated too, unless that one waits for this one to finish
+        var barrier = new CyclicBarrier(2);
+        var relationshipValidator = new RelationshipValidator();
+        var family = new FamilyGraph(new BarrierValidator(barrier, relationshipValidator), new ConcurrentGraphStore());
+        var father = new Member("1", "Dasaratha", 90, true);
+        var son = new Member("2", "Rama", 60, true);
+        family.addPerson(father);
+        family.addPerson(son);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> asParent = executor.submit(() ->
+                    family.connectPersons(father, GenericRelation.PARENT, son, 1, true));
+            Future<?> asChild = executor.submit(() ->
+                    family.connectPersons(father, GenericRelation.CHILD, son, -1, true));
+            int failures = 0;
+            for (Future<?> connect : new Future<?>[]{asParent, asChild}) {
+                try {
+                    connect.get(30, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalArgumentException);
+                    failures++;
+                }
+            }
+            assertEquals(1, failures);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, family.getAllNeighbourConnections(father).size());
+    }
+
+    @Test
+    void testSnapshotIsIsolatedFromLaterWrites() {
+        var family = new FamilyGraph(new GenderValidator(), new ConcurrentGraphStore());
+        var father = new Member("1", "Dasaratha", 90, true);
+        var son = new Member("2", "Rama", 60, true);
+        var grandSon = new Member("3", "Lava", 30, true);
+        family.connectPersons(father, GenericRelation.PARENT, son, 1, false);
+
+        FamilyGraph snapshot = family.snapshot();
+        family.connectPersons(son, GenericRelation.PARENT, grandSon, 1, false);
+        family.removeDirectConnection(father, son);
+
+        assertEquals(1, family.getEpoch());
+        assertEquals(2, snapshot.getAllPersonsInFamily().size());
+        assertEquals(1, snapshot.getAllConnectionsInFamilyForPerson(father, false).size());
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getPersonById("3"));
+        assertThrows(UnsupportedOperationException.class,
+                () -> snapshot.connectPersons(son, GenericRelation.PARENT, grandSon, 1, false));
+        assertEquals(2, family.getAllConnectionsInFamilyForPerson(son, false).size());
+    }
+
+    @Test
+    void testSnapshotsNeverSeeHalfPairedEdges() throws Exception {
+        var store = new ConcurrentGraphStore();
+        int members = 2_000;
+        for (int i = 0; i < members; i++) {
+            store.addMember(new Member(String.valueOf(i), "Member", 30, true));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        try {
+            for (int writer = 0; writer < WRITERS; writer++) {
+                int firstMember = writer;
+                executor.submit(() -> {
+                    for (int i = firstMember; i + 1 < members; i += WRITERS) {
+                        store.addEdgePair(i, GenericRelation.SIBLING, i + 1, 0);
+                    }
+                });
+            }
+            var cursor = new AdjacencyCursor();
+            var mirrorCursor = new AdjacencyCursor();
+            for (int round = 0; round < 50; round++) {
+                GraphStore snapshot = store.snapshot();
+                for (int node = 0; node < members; node++) {
+                    snapshot.openAdjacency(node, cursor);
+                    for (int i = 0; i < cursor.degree(); i++) {
+                        snapshot.openAdjacency(cursor.neighbourAt(i), mirrorCursor);
+                        assertTrue(mirrorCursor.positionOf(node) >= 0);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        }
+    }
+
+    private static final class BarrierValidator implements Validator {
+        private final CyclicBarrier barrier;
+        private final Validator nextValidator;
+
+        private BarrierValidator(CyclicBarrier barrier, Validator nextValidator) {
+            this.barrier = barrier;
+            this.nextValidator = nextValidator;
+        }
+
+        @Override
+        public void setNextValidatorInChain(Validator validator) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean validate(Member p1, GenericRelation genericRelation, Member p2, int relationLevel,
+                                Family family) {
+            boolean isValid = nextValidator.validate(p1, genericRelation, p2, relationLevel, family);
+            try {
+                barrier.await(500, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | BrokenBarrierException e) {
+                // The other connect waits for this one, as expected
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return isValid;
+        }
+
+        @Override
+        public boolean validate(Member p1, SpecificRelation specificRelation, Member p2, int relationLevel,
+                                Family family) {
+            return validate(p1, specificRelation.getGenericRelation(), p2, relationLevel, family);
+        }
+    }
+}
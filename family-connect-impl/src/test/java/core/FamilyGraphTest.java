@@ -0,0 +1,264 @@
+package core;
+
+import entities.Member;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import entities.ConnectionEdge;
+import relationship.GenericRelation;
+import relationship.SpecificRelation;
+import validation.AgeValidator;
+import validation.GenderValidator;
+import validation.RelationshipValidator;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FamilyGraphTest {
+    private FamilyGraph family;
+
+    @BeforeEach
+    void prepareFamily() {
+        var genderValidator = new GenderValidator();
+        var ageValidator = new AgeValidator();
+        genderValidator.setNextValidatorInChain(ageValidator);
+        ageValidator.setNextValidatorInChain(new RelationshipValidator());
+        family = new FamilyGraph(genderValidator, new CompactGraphStore());
+
+        family.addPerson("1", "Rama", "80", "true");
+        family.addPerson("2", "Sita", "78", "false");
+        family.addPerson("3", "Lava", "50", "true");
+        family.addPerson("4", "Kusha", "48", "true");
+        family.addPerson("5", "Vasu", "20", "true");
+        family.addPerson("6", "Ravi", "70", "true");
+        family.connectPersons("1", "HUSBAND", "2");
+        family.connectPersons("1", "FATHER", "3");
+        family.connectPersons("2", "MOTHER", "3");
+        family.connectPersons("1", "FATHER", "4");
+        family.connectPersons("4", "FATHER", "5");
+    }
+
+    @Test
+    void testConnectionInBothSearchModes() {
+        for (SearchMode searchMode : SearchMode.values()) {
+            family.setSearchMode(searchMode);
+            var connection = family.getConnection(family.getPersonById("2"), family.getPersonById("5"), false);
+            assertEquals(GenericRelation.GRANDPARENT, connection.relation());
+            assertEquals(2, connection.relationLevel());
+            assertEquals(GenericRelation.KIN, family.getConnection(family.getPersonById("3"),
+                    family.getPersonById("5"), false).relation());
+            assertEquals(3, family.getShortestRelationChain(family.getPersonById("2"), family.getPersonById("5")).size());
+            assertNull(family.getConnection(family.getPersonById("1"), family.getPersonById("6"), false));
+        }
+    }
+
+    @Test
+    void testSearchModesAgreeAfterOneDirectionRemoved() {
+        var sita = family.getPersonById("2");
+        var vasu = family.getPersonById("5");
+        family.removeDirectConnection(family.getPersonById("4"), vasu);
+        Map<SearchMode, List<ConnectionEdge>> chains = new HashMap<>();
+        for (SearchMode searchMode : SearchMode.values()) {
+            family.setSearchMode(searchMode);
+            assertNull(family.getConnection(sita, vasu, false));
+            assertEquals(GenericRelation.GRANDCHILD, family.getConnection(vasu, sita, false).relation());
+            chains.put(searchMode, family.getShortestRelationChain(vasu, sita));
+        }
+        assertEquals(chains.get(SearchMode.FORWARD), chains.get(SearchMode.BIDIRECTIONAL));
+    }
+
+    @Test
+    void testSearchModesAgreeOverConnectionsLeftInOneDirection() {
+        family.addPerson("7", "Kavi", "1", "true");
+        family.connectPersons("5", "FATHER", "7"); // Widens the backward side, so it is expanded first
+        var sita = family.getPersonById("2");
+        var vasu = family.getPersonById("5");
+        family.removeDirectConnection(sita, family.getPersonById("1"));
+        family.removeDirectConnection(family.getPersonById("3"), sita);
+        Map<SearchMode, List<ConnectionEdge>> chains = new HashMap<>();
+        for (SearchMode searchMode : SearchMode.values()) {
+            family.setSearchMode(searchMode);
+            assertEquals(GenericRelation.GRANDCHILD, family.getConnection(vasu, sita, false).relation());
+            chains.put(searchMode, family.getShortestRelationChain(vasu, sita));
+        }
+        assertFalse(chains.get(SearchMode.FORWARD).isEmpty());
+        assertEquals(chains.get(SearchMode.FORWARD), chains.get(SearchMode.BIDIRECTIONAL));
+    }
+
+    @Test
+    void testMembersOfDifferentComponentsAreNotRelated() {
+        var rama = family.getPersonById("1");
+        var ravi = family.getPersonById("6");
+        assertTrue(family.mayBeRelated(rama, family.getPersonById("5")));
+        assertFalse(family.mayBeRelated(rama, ravi));
+
+        family.connectPersons("6", "BROTHER", "1");
+        assertTrue(family.mayBeRelated(ravi, family.getPersonById("5")));
+        assertEquals(GenericRelation.SIBLING, family.getConnection(ravi, rama, false).relation());
+
+        // Components split only once no connection is left between two members
+        var kusha = family.getPersonById("4");
+        var vasu = family.getPersonById("5");
+        family.removeDirectConnection(kusha, vasu);
+        assertTrue(family.areRelated(rama, vasu));
+        family.removeDirectConnection(vasu, kusha);
+        assertFalse(family.areRelated(rama, vasu));
+        assertNull(family.getConnection(vasu, rama, false));
+        assertTrue(family.getShortestRelationChain(rama, vasu).isEmpty());
+    }
+
+    @Test
+    void testRecordedConnectionsStayOutOfAdjacency() {
+        var sita = family.getPersonById("2");
+        var vasu = family.getPersonById("5");
+        assertEquals(GenericRelation.GRANDPARENT, family.getConnection(sita, vasu, true).relation());
+        family.getAllConnectionsInFamilyForPerson(family.getPersonById("1"), true);
+        assertEquals(2, family.getAllNeighbourConnections(sita).size());
+        assertEquals(3, family.getAllNeighbourConnections(family.getPersonById("1")).size());
+        assertEquals(GenericRelation.GRANDPARENT, family.getConnection(sita, vasu, false).relation());
+
+        // Removal invalidates the recorded connections of the family
+        family.removeDirectConnection(family.getPersonById("4"), vasu);
+        assertNull(family.getConnection(sita, vasu, false));
+    }
+
+    @Test
+    void testAgeAndGenderIndexes() {
+        family.addPerson("7", "Urmila", "50", "false");
+        assertEquals(List.of("5", "4", "3", "7", "6", "2", "1"), idsOf(family.getFamilyInOrderOfAge(true)));
+        assertEquals(List.of("1", "2", "6", "3", "7", "4", "5"), idsOf(family.getFamilyInOrderOfAge(false)));
+        assertEquals(List.of("4", "3", "7"), idsOf(family.getFamilyInAgeRange(45, 50, true)));
+        assertEquals(List.of("2", "7"), idsOf(family.getAllFamilyMembersOfGender(false)));
+        assertEquals(5, family.getAllFamilyMembersOfGender(true).size());
+    }
+
+    @Test
+    void testSnapshotIsolatedFromLaterWrites() {
+        var rama = family.getPersonById("1");
+        var vasu = family.getPersonById("5");
+        assertTrue(family.areRelated(rama, vasu));
+        FamilyGraph snapshot = family.snapshot();
+        family.addPerson("7", "Urmila", "50", "false");
+        family.connectPersons("6", "BROTHER", "1");
+        family.removeDirectConnection(family.getPersonById("4"), vasu);
+        family.removeDirectConnection(vasu, family.getPersonById("4"));
+
+        assertTrue(snapshot.areRelated(rama, vasu));
+        assertFalse(snapshot.areRelated(rama, family.getPersonById("6")));
+        assertEquals(GenericRelation.GRANDPARENT, snapshot.getConnection(family.getPersonById("2"), vasu, false)
+                .relation());
+        assertEquals(List.of("5", "4", "3", "6", "2", "1"), idsOf(snapshot.getFamilyInOrderOfAge(true)));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.connectPersons("6", "BROTHER", "2"));
+    }
+
+    private static List<String> idsOf(Collection<Member> members) {
+        return members.stream().map(Member::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void testStreamedConnectionsSameAsCollected() throws Exception {
+        var rama = family.getPersonById("1");
+        var collected = family.getAllConnectionsInFamilyForPerson(rama, false);
+        List<ConnectionEdge> streamed = family.streamAllConnectionsInFamilyForPerson(rama).collect(Collectors.toList());
+        assertEquals(collected, new HashSet<>(streamed));
+        assertEquals(collected.size(), streamed.size());
+        var neighbours = family.getAllNeighbourConnections(rama); // Nearest first
+        assertEquals(neighbours, new HashSet<>(streamed.subList(0, neighbours.size())));
+        assertEquals(family.getAllPersonsByRelation(rama, SpecificRelation.SON, -1),
+                family.streamAllPersonsByRelation(rama, SpecificRelation.SON, -1).collect(Collectors.toList()));
+
+        // Requests one connection at a time, and cancels after two
+        var received = new ArrayList<ConnectionEdge>();
+        var done = new CompletableFuture<Void>();
+        family.publishAllConnectionsInFamilyForPerson(rama, ForkJoinPool.commonPool()).subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ConnectionEdge connection) {
+                received.add(connection);
+                if (received.size() == 2) {
+                    subscription.cancel();
+                    done.complete(null);
+                } else {
+                    subscription.request(1);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.completeExceptionally(new AssertionError("Completed after cancel"));
+            }
+        });
+        done.get(10, TimeUnit.SECONDS);
+        assertEquals(streamed.subList(0, 2), received);
+    }
+
+    @Test
+    void testQueryPushedIntoSearch() {
+        var rama = family.getPersonById("1");
+        var vasu = family.getPersonById("5");
+        assertEquals(List.of(vasu), family.getAllPersonsByRelation(rama, SpecificRelation.GRANDSON, -2, 2));
+        assertEquals(List.of(), family.getAllPersonsByRelation(rama, SpecificRelation.GRANDSON, -2, 1));
+        assertEquals(List.of(), family.getAllPersonsByRelation(rama, SpecificRelation.GRANDDAUGHTER, -2, 2));
+        // A generic relation matches relatives of any gender, with or without max hops
+        assertEquals(List.of(vasu), family.getAllPersonsByRelation(rama, GenericRelation.GRANDCHILD, -2, 2));
+        assertEquals(Set.of(vasu), Set.copyOf(family.getAllPersonsByRelation(rama, GenericRelation.GRANDCHILD, -2)));
+        assertEquals(Set.copyOf(family.getAllPersonsByRelation(rama, GenericRelation.CHILD, -1, 1)),
+                Set.copyOf(family.getAllPersonsByRelation(rama, GenericRelation.CHILD, -1)));
+
+        var sons = family.streamConnections(rama, new TraversalQuery().setRelation(GenericRelation.PARENT)
+                .setRelationLevel(1).setIsRelativeMale(true).setLimit(1)).collect(Collectors.toList());
+        assertEquals(1, sons.size());
+        assertEquals(GenericRelation.PARENT, sons.get(0).relation());
+        assertEquals(family.streamAllConnectionsInFamilyForPerson(vasu).collect(Collectors.toList()),
+                family.streamConnections(vasu, new TraversalQuery()).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testAllConnectionsComputedInParallel(@TempDir Path spillDirectory) {
+        Map<Member, Set<ConnectionEdge>> expected = new HashMap<>();
+        family.getAllPersonsInFamily().forEach(member ->
+                expected.put(member, new HashSet<>(family.getAllConnectionsInFamilyForPerson(member, false))));
+
+        Map<Member, Set<ConnectionEdge>> computed = new ConcurrentHashMap<>();
+        var computation = family.computeAllConnections(ForkJoinPool.commonPool(),
+                (member, connections) -> computed.put(member, new HashSet<>(connections)));
+        computation.join();
+        assertEquals(expected, computed);
+        assertEquals(1.0, computation.getProgress());
+
+        Map<Member, Set<ConnectionEdge>> spilled = new HashMap<>();
+        family.computeAllConnections(ForkJoinPool.commonPool(), spillDirectory)
+                .forEachSpilled((member, connections) -> spilled.put(member, new HashSet<>(connections)));
+        assertEquals(expected, spilled);
+    }
+}
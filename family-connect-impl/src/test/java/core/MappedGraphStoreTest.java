@@ -0,0 +1,71 @@
+package core;
+
+import entities.Member;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import relationship.GenericRelation;
+import validation.GenderValidator;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedGraphStoreTest {
+
+    @Test
+    void testSameAdjacencyAsWrittenStore(@TempDir Path directory) {
+        var random = new Random(42);
+        var relations = GenericRelation.values();
+        var store = new CompactGraphStore();
+        int members = 500;
+        for (int i = 0; i < members; i++) {
+            store.addMember(new Member("Id-" + i, "M\u00e9mber " + i, i % 90, i % 2 == 0));
+        }
+        for (int i = 0; i < 5_000; i++) {
+            var relation = relations[random.nextInt(relations.length)];
+            store.addEdge(random.nextInt(members), relation, random.nextInt(members), relation.getRelationLevel());
+        }
+        Path file = directory.resolve("family.snapshot");
+        MappedGraphStore.write(store, file);
+        var mappedStore = MappedGraphStore.open(file);
+
+        assertEquals(members, mappedStore.size());
+        assertEquals(-1, mappedStore.indexOf("Id-" + members));
+        var cursor = new AdjacencyCursor();
+        var mappedCursor = new AdjacencyCursor();
+        for (int node = 0; node < members; node++) {
+            assertEquals(node, mappedStore.indexOf("Id-" + node));
+            assertTrue(store.getMember(node).areAllAttributesMatching(mappedStore.getMember(node)));
+            store.openAdjacency(node, cursor);
+            mappedStore.openAdjacency(node, mappedCursor);
+            assertEquals(cursor.degree(), mappedCursor.degree());
+            for (int i = 0; i < cursor.degree(); i++) {
+                assertEquals(cursor.neighbourAt(i), mappedCursor.neighbourAt(i));
+                assertEquals(cursor.relationOrdinalAt(i), mappedCursor.relationOrdinalAt(i));
+                assertEquals(cursor.relationLevelAt(i), mappedCursor.relationLevelAt(i));
+            }
+        }
+        assertEquals(store.degree(7), mappedStore.copyTo(new HashGraphStore()).degree(7));
+    }
+
+    @Test
+    void testFamilyServedFromSnapshot(@TempDir Path directory) {
+        var family = new FamilyGraph(new GenderValidator(), new ConcurrentGraphStore());
+        var rama = new Member("1", "Rama", 80, true);
+        var lava = new Member("2", "Lava", 50, true);
+        var kusha = new Member("3", "Kusha", 48, true);
+        family.connectPersons(rama, GenericRelation.PARENT, lava, 1, true);
+        family.connectPersons(rama, GenericRelation.PARENT, kusha, 1, true);
+        Path file = directory.resolve("family.snapshot");
+        family.writeSnapshot(file);
+
+        var restored = new FamilyGraph(new GenderValidator(), MappedGraphStore.open(file));
+        assertEquals(GenericRelation.SIBLING, restored.getConnection(lava, kusha, false).relation());
+        assertEquals(2, restored.getAllMembersFromGenerationLevel(rama, -1).size());
+        assertThrows(UnsupportedOperationException.class,
+                () -> restored.connectPersons(lava, GenericRelation.SIBLING, kusha, 0, false));
+    }
+}
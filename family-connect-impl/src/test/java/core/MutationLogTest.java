@@ -0,0 +1,96 @@
+package core;
+
+import entities.Member;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import relationship.GenericRelation;
+import validation.GenderValidator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MutationLogTest {
+    private final Member rama = new Member("1", "Rama", 80, true);
+    private final Member lava = new Member("2", "Lava", 50, true);
+    private final Member kusha = new Member("3", "Kusha", 48, true);
+    private final Member ravi = new Member("4", "Ravi", 70, true);
+
+    @Test
+    void testReplayAfterRestart(@TempDir Path directory) throws IOException {
+        Path logFile = directory.resolve("family.log");
+        var family = new FamilyGraph(new GenderValidator());
+        family.setMutationLog(MutationLog.open(logFile, Durability.SYNC));
+        family.connectPersons(rama, GenericRelation.PARENT, lava, 1, true);
+        family.connectPersons(rama, GenericRelation.PARENT, kusha, 1, true);
+        family.addPerson(ravi);
+        family.removeDirectConnection(rama, kusha);
+        family.getMutationLog().close();
+
+        // A crash in the middle of a write leaves a torn record at the end
+        try (var channel = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2}));
+        }
+
+        var restored = new FamilyGraph(new GenderValidator());
+        var log = MutationLog.open(logFile, Durability.SYNC);
+        assertEquals(7, log.replay(restored));
+        assertEquals(4, restored.getAllPersonsInFamily().size());
+        assertTrue(restored.arePersonsDirectlyConnected(rama, lava));
+        assertFalse(restored.arePersonsDirectlyConnected(rama, kusha));
+        assertTrue(restored.arePersonsDirectlyConnected(kusha, rama));
+        log.close();
+    }
+
+    @Test
+    void testCompactionIntoSnapshot(@TempDir Path directory) {
+        Path logFile = directory.resolve("family.log");
+        Path snapshotFile = directory.resolve("family.snapshot");
+        var family = new FamilyGraph(new GenderValidator(), new CompactGraphStore());
+        var log = MutationLog.open(logFile, Durability.PERIODIC_SYNC);
+        family.setMutationLog(log);
+        family.connectPersons(rama, GenericRelation.PARENT, lava, 1, true);
+        log.compact(family, snapshotFile);
+        family.connectPersons(rama, GenericRelation.PARENT, kusha, 1, true);
+        log.close();
+
+        var store = MappedGraphStore.open(snapshotFile).copyTo(new CompactGraphStore());
+        var restored = new FamilyGraph(new GenderValidator(), store);
+        var restoredLog = MutationLog.open(logFile, Durability.PERIODIC_SYNC);
+        assertEquals(2, restoredLog.replay(restored));
+        assertEquals(GenericRelation.SIBLING, restored.getConnection(lava, kusha, false).relation());
+        restoredLog.close();
+    }
+
+    @Test
+    void testCompactionAboveSize(@TempDir Path directory) {
+        Path logFile = directory.resolve("family.log");
+        Path snapshotFile = directory.resolve("family.snapshot");
+        var family = new FamilyGraph(new GenderValidator(), new CompactGraphStore());
+        var log = MutationLog.open(logFile, Durability.PERIODIC_SYNC);
+        log.compactAbove(64, snapshotFile);
+        family.setMutationLog(log);
+        family.connectPersons(rama, GenericRelation.PARENT, lava, 1, true);
+        family.connectPersons(rama, GenericRelation.PARENT, kusha, 1, true);
+        family.addPerson(ravi);
+        assertTrue(log.getSize() <= 64);
+        family.close();
+        assertThrows(IllegalStateException.class, () -> family.connectPersons(rama, GenericRelation.SIBLING, ravi, 0,
+                true));
+
+        var store = MappedGraphStore.open(snapshotFile).copyTo(new CompactGraphStore());
+        var restored = new FamilyGraph(new GenderValidator(), store);
+        var restoredLog = MutationLog.open(logFile, Durability.PERIODIC_SYNC);
+        restoredLog.replay(restored);
+        assertEquals(4, restored.getAllPersonsInFamily().size());
+        assertEquals(GenericRelation.SIBLING, restored.getConnection(lava, kusha, false).relation());
+        restoredLog.close();
+    }
+}
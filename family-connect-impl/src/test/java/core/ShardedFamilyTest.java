@@ -0,0 +1,87 @@
+package core;
+
+import entities.Member;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import relationship.GenericRelation;
+import validation.AgeValidator;
+import validation.GenderValidator;
+import validation.RelationshipValidator;
+import validation.Validator;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedFamilyTest {
+    private final Validator validator = Validator.chain(new GenderValidator(), new AgeValidator(),
+            new RelationshipValidator());
+
+    @Test
+    void testShardsMergeWhenFamiliesGetConnected() {
+        var family = new ShardedFamily(validator);
+        var rama = new Member("1", "Rama", 80, true);
+        var lava = new Member("2", "Lava", 50, true);
+        var krishna = new Member("3", "Krishna", 70, true);
+        var pradyumna = new Member("4", "Pradyumna", 40, true);
+        family.connectPersons(rama, GenericRelation.PARENT, lava, 1, true);
+        family.connectPersons(krishna, GenericRelation.PARENT, pradyumna, 1, true);
+
+        assertEquals(2, family.getShardCount());
+        assertFalse(family.mayBeRelated(rama, pradyumna));
+        assertNull(family.getConnection(lava, pradyumna, false));
+
+        family.connectPersons(lava, GenericRelation.SIBLING, pradyumna, 1, true);
+
+        assertEquals(1, family.getShardCount());
+        assertTrue(family.areRelated(rama, krishna));
+        var connection = family.getConnection(rama, pradyumna, false);
+        assertNotNull(connection);
+        assertEquals(GenericRelation.PARENT, connection.relation());
+        // Validated across the merged family, Rama is already a parent of Pradyumna
+        assertThrows(IllegalArgumentException.class,
+                () -> family.connectPersons(rama, GenericRelation.CHILD, pradyumna, 1, true));
+    }
+
+    @Test
+    void testEvictedShardsAreLoadedBack(@TempDir Path directory) {
+        var family = new ShardedFamily(validator, CompactGraphStore::new, directory);
+        for (int i = 0; i < 10; i++) {
+            family.connectPersons(new Member("P" + i, "Parent " + i, 60, true), GenericRelation.PARENT,
+                    new Member("C" + i, "Child " + i, 30, false), 1, true);
+        }
+        long bytesPerShard = family.getResidentBytes() / 10;
+        family.getPersonById("P9"); // Shard used last stays in memory
+
+        assertEquals(9, family.evictColdShards(bytesPerShard));
+        assertEquals(bytesPerShard, family.getResidentBytes());
+
+        assertEquals("Child 3", family.getPersonById("C3").getName());
+        assertTrue(family.areRelated(family.getPersonById("P3"), family.getPersonById("C3")));
+        family.removeDirectConnection(family.getPersonById("P3"), family.getPersonById("C3"));
+        family.connectPersons("P3", "PARENT", "C9");
+        assertEquals(9, family.getShardCount());
+        assertThrows(IllegalArgumentException.class, () -> family.getPersonById("C10"));
+    }
+
+    @Test
+    void testColdShardsEvictedPeriodically(@TempDir Path directory) throws InterruptedException {
+        var family = new ShardedFamily(validator, CompactGraphStore::new, directory);
+        family.connectPersons(new Member("P", "Parent", 60, true), GenericRelation.PARENT,
+                new Member("C", "Child", 30, false), 1, true);
+        family.evictColdShardsEvery(0, 10);
+        assertThrows(IllegalStateException.class, () -> family.evictColdShardsEvery(0, 10));
+        for (int wait = 0; wait < 500 && family.getResidentBytes() > 0; wait++) {
+            Thread.sleep(10);
+        }
+        family.close();
+        assertEquals(0, family.getResidentBytes());
+        assertNull(family.getEvictionFailure());
+        assertEquals("Child", family.getPersonById("C").getName());
+    }
+}
@@ -0,0 +1,66 @@
+package importer;
+
+import config.Config;
+import core.ConcurrentGraphStore;
+import core.FamilyGraph;
+import entities.ConnectionEdge;
+import entities.Member;
+import org.junit.jupiter.api.Test;
+import relationship.GenericRelation;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FamilyImporterTest {
+
+    @Test
+    void testImportWithRejectedRows() {
+        var family = new FamilyGraph(new Config().prepareValidator(), new ConcurrentGraphStore());
+        var importer = new FamilyImporter(family);
+        importer.setBatchSize(2);
+        importer.setParallelism(2);
+
+        var membersReport = importer.importMembers(new StringReader("id,name,age,isMale\n"
+                + "1,Rama,80,true\n"
+                + "2,\"Sita, Janaki\",78,false\n"
+                + "3,Lava,50,true\n"
+                + "4,Ravi,70,yes\n"
+                + "5,Vasu,20,true\n"), ImportFormat.CSV);
+        assertEquals(5, membersReport.getRowsRead());
+        assertEquals(4, membersReport.getMembersImported());
+        assertEquals(5, membersReport.getRejectedRows().get(0).getLineNumber());
+        assertEquals("Sita, Janaki", family.getPersonById("2").getName());
+
+        var relationsReport = importer.importRelations(new StringReader(
+                "{\"from\": \"1\", \"relation\": \"husband\", \"to\": \"2\"}\n"
+                        + "{\"from\": \"1\", \"relation\": \"FATHER\", \"to\": \"3\"}\n"
+                        + "\n"
+                        + "{\"from\": \"3\", \"relation\": \"FATHER\", \"to\": \"1\"}\n"
+                        + "{\"from\": \"5\", \"relation\": \"FRIEND\", \"to\": \"1\"}\n"
+                        + "{\"from\": \"5\", \"to\": \"1\"}\n"
+                        + "{\"from\": \"2\", \"relation\": \"MOTHER\", \"to\": \"3\", \"note\": null}\n"), ImportFormat.NDJSON);
+        assertEquals(6, relationsReport.getRowsRead());
+        assertEquals(3, relationsReport.getRelationsImported());
+        assertEquals(3, relationsReport.getRowsRejected());
+        assertEquals(GenericRelation.PARENT, family.getConnection(family.getPersonById("2"),
+                family.getPersonById("3"), false).relation());
+    }
+
+    @Test
+    void testImportConnectionsWithoutValidation() {
+        var family = new FamilyGraph(new Config().prepareValidator(), new ConcurrentGraphStore());
+        var rama = new Member("1", "Rama", 80, true);
+        var lava = new Member("2", "Lava", 50, true);
+        var kusha = new Member("3", "Kusha", 48, true);
+        List.of(rama, lava, kusha).forEach(family::addPerson);
+        var importer = new FamilyImporter(family);
+        importer.setDoValidate(false);
+
+        var report = importer.importConnections(List.of(new ConnectionEdge(rama, GenericRelation.PARENT, lava, 1),
+                new ConnectionEdge(kusha, GenericRelation.SIBLING, lava, 0)).iterator());
+        assertEquals(2, report.getRelationsImported());
+        assertEquals(GenericRelation.CHILD, family.getConnection(kusha, rama, false).relation());
+    }
+}
@@ -1,4 +1,67 @@
 package com.gakshintala.mylabspace.familyconnectrest;
 
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+
+@Configuration
+@Import(config.Config.class)
 public class Config {
+    /**
+     * Executor running the requests, selected with property family.rest.threads
+     * virtual - A virtual thread per request, so requests blocked on the family don't hold a platform thread. Falls back
+     * to platform threads on JVMs without virtual threads.
+     * platform - Bounded pool of family.rest.max-threads threads, queueing up to family.rest.queue-capacity requests
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService requestExecutor(@Value("${family.rest.threads:virtual}") String threads,
+                                           @Value("${family.rest.max-threads:200}") int maxThreads,
+                                           @Value("${family.rest.queue-capacity:1000}") int queueCapacity) {
+        switch (threads.toLowerCase()) {
+            case "virtual":
+                ExecutorService executor = RequestExecutors.newVirtualThreadPerTaskExecutor();
+                return executor != null ? executor : RequestExecutors.newBoundedExecutor(maxThreads, queueCapacity);
+            case "platform":
+                return RequestExecutors.newBoundedExecutor(maxThreads, queueCapacity);
+            default:
+                throw new IllegalArgumentException("Unknown request threads: " + threads);
+        }
+    }
+
+    /**
+     * Tomcat hands the requests to the request executor, instead of its own thread pool
+     */
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> requestExecutorCustomizer(
+            ExecutorService requestExecutor) {
+        return factory -> factory.addConnectorCustomizers(connector -> {
+            if (connector.getProtocolHandler() instanceof AbstractProtocol) {
+                ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(requestExecutor);
+            }
+        });
+    }
+
+    /**
+     * Streamed responses are written on the request executor too, and may take up to family.rest.async-timeout-ms
+     */
+    @Bean
+    public WebMvcConfigurer asyncRequestConfigurer(ExecutorService requestExecutor,
+                                                   @Value("${family.rest.async-timeout-ms:600000}") long timeoutMillis) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(new TaskExecutorAdapter(requestExecutor));
+                configurer.setDefaultTimeout(timeoutMillis);
+            }
+        };
+    }
 }
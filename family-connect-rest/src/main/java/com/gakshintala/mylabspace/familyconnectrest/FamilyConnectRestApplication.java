@@ -1,7 +1,9 @@
 package com.gakshintala.mylabspace.familyconnectrest;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+@SpringBootApplication
 public class FamilyConnectRestApplication {
 
 	public static void main(String[] args) {
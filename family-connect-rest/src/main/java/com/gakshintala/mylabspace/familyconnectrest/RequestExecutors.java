@@ -0,0 +1,56 @@
+package com.gakshintala.mylabspace.familyconnectrest;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors to run requests on. Virtual threads are looked up reflectively, as the service is built for JVMs that may
+ * not have them.
+ */
+public final class RequestExecutors {
+    private RequestExecutors() {
+    }
+
+    /**
+     * @return Executor starting a virtual thread per task, null if the JVM has no virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Virtual threads are present but could not be started", e);
+        }
+    }
+
+    /**
+     * Executor with a bounded number of platform threads, started on demand and stopped when idle. Tasks beyond the
+     * threads wait in a bounded queue, and are rejected once it is full, so an overloaded service fails fast instead of
+     * running out of memory.
+     *
+     * @param maxThreads    Maximum number of threads
+     * @param queueCapacity Maximum number of tasks waiting for a thread
+     * @return Executor
+     */
+    public static ExecutorService newBoundedExecutor(int maxThreads, int queueCapacity) {
+        if (maxThreads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Max threads and queue capacity should be positive, but got "
+                    + maxThreads + ", " + queueCapacity);
+        }
+        var threadCount = new AtomicInteger();
+        var executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+            var thread = new Thread(task, "family-request-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
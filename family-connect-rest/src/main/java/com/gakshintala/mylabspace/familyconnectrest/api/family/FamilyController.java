@@ -0,0 +1,135 @@
+package com.gakshintala.mylabspace.familyconnectrest.api.family;
+
+import com.gakshintala.mylabspace.familyconnectrest.api.model.ConnectRequest;
+import com.gakshintala.mylabspace.familyconnectrest.api.model.ConnectionView;
+import com.gakshintala.mylabspace.familyconnectrest.api.model.MemberView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import entities.ConnectionEdge;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/family")
+public class FamilyController {
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int NDJSON_BUFFER_SIZE = 1 << 16;
+
+    private final FamilyService familyService;
+    private final ObjectWriter objectWriter;
+
+    public FamilyController(FamilyService familyService, ObjectMapper objectMapper) {
+        this.familyService = familyService;
+        this.objectWriter = objectMapper.writer();
+    }
+
+    @PostMapping("/connections")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void connect(@RequestBody ConnectRequest request) {
+        if (request.getFrom() == null || request.getTo() == null || request.getRelation() == null) {
+            throw new IllegalArgumentException("Connection needs from, relation and to");
+        }
+        familyService.connect(request.getFrom().toMember(), request.getRelation(), request.getTo().toMember(),
+                request.getRelationLevel());
+    }
+
+    @GetMapping("/connection")
+    public ResponseEntity<ConnectionView> getConnection(@RequestParam("from") String fromId,
+                                                        @RequestParam("to") String toId) {
+        ConnectionEdge connection = familyService.getConnection(fromId, toId);
+        return connection == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(ConnectionView.of(connection));
+    }
+
+    @GetMapping("/chain")
+    public List<ConnectionView> getRelationChain(@RequestParam("from") String fromId, @RequestParam("to") String toId) {
+        return familyService.getRelationChain(fromId, toId).stream()
+                .map(ConnectionView::of)
+                .collect(Collectors.toList());
+    }
+
+    @GetMapping("/members/{id}/relatives")
+    public List<MemberView> getRelativesByRelation(@PathVariable("id") String id,
+                                                   @RequestParam("relation") String relation,
+                                                   @RequestParam(value = "level", required = false) Integer level,
+                                                   @RequestParam(value = "maxHops", required = false) Integer maxHops,
+                                                   @RequestParam(value = "limit", required = false) Integer limit) {
+        return familyService.getRelativesByRelation(id, relation, level, maxHops, limit).stream()
+                .map(MemberView::of)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Streams relatives by relation as newline delimited JSON, written as they are found
+     */
+    @GetMapping(value = "/members/{id}/relatives", produces = NDJSON)
+    public StreamingResponseBody streamRelativesByRelation(
+            @PathVariable("id") String id,
+            @RequestParam("relation") String relation,
+            @RequestParam(value = "level", required = false) Integer level,
+            @RequestParam(value = "maxHops", required = false) Integer maxHops,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        familyService.getMember(id); // Fails while the status can still be set
+        return ndjson(row -> familyService.forEachRelativeByRelation(id, relation, level, maxHops, limit,
+                member -> row.accept(MemberView.of(member))));
+    }
+
+    /**
+     * Streams all connections of a member as newline delimited JSON, written as they are found, for exports of families
+     * too large to hold in a response
+     */
+    @GetMapping(value = "/members/{id}/connections", produces = NDJSON)
+    public StreamingResponseBody streamConnections(@PathVariable("id") String id) {
+        familyService.getMember(id);
+        return ndjson(row -> familyService.forEachConnection(id, connection -> row.accept(ConnectionView.of(connection))));
+    }
+
+    @GetMapping("/members/{id}/generation")
+    public List<ConnectionView> getGeneration(@PathVariable("id") String id, @RequestParam("level") int level,
+                                              @RequestParam(value = "maxHops", required = false) Integer maxHops,
+                                              @RequestParam(value = "limit", required = false) Integer limit) {
+        return familyService.getGeneration(id, level, maxHops, limit).stream()
+                .map(ConnectionView::of)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Response body with a JSON line for every row written by the writer, run on the async request executor
+     */
+    private StreamingResponseBody ndjson(Consumer<Consumer<Object>> writer) {
+        return out -> {
+            var buffered = new BufferedOutputStream(out, NDJSON_BUFFER_SIZE);
+            try {
+                writer.accept(row -> {
+                    try {
+                        buffered.write(objectWriter.writeValueAsBytes(row));
+                        buffered.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause(); // Client went away, the search is dropped
+            }
+            buffered.flush();
+        };
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> onInvalidRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(UnsupportedOperationException.class)
+    public ResponseEntity<String> onUnsupportedRequest(UnsupportedOperationException e) {
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).body(e.getMessage());
+    }
+}
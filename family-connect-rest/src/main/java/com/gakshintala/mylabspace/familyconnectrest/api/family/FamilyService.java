@@ -0,0 +1,155 @@
+package com.gakshintala.mylabspace.familyconnectrest.api.family;
+
+import core.Family;
+import core.FamilyGraph;
+import core.ShardedFamily;
+import entities.ConnectionEdge;
+import entities.Member;
+import org.springframework.stereotype.Service;
+import relationship.LeveledRelation;
+import relationship.Relation;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static utils.RelationUtils.parseToLeveledRelation;
+
+/**
+ * Family served to requests running concurrently. A family that is not thread-safe is guarded with a read-write lock,
+ * so reads still run at once and only writes are exclusive. Thread-safe families are not locked at all.
+ */
+@Service
+public class FamilyService {
+    private final Family family;
+    private final ReadWriteLock lock;
+
+    public FamilyService(Family family) {
+        this.family = family;
+        boolean isThreadSafe = family instanceof ShardedFamily
+                || (family instanceof FamilyGraph && ((FamilyGraph) family).isThreadSafe());
+        this.lock = isThreadSafe ? null : new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Connects two members with validation, adding them if they are new
+     *
+     * @param relationLevel Level of relation, null for the level the relation name implies
+     */
+    public void connect(Member from, String relation, Member to, Integer relationLevel) {
+        LeveledRelation leveledRelation = parseToLeveledRelation(relation);
+        int level = relationLevel == null ? leveledRelation.relationLevel() : relationLevel;
+        locked(lock == null ? null : lock.writeLock(), () -> {
+            family.connectPersons(from, leveledRelation.genericRelation(), to, level, true);
+            return null;
+        });
+    }
+
+    public Member getMember(String memberId) {
+        return read(() -> family.getPersonById(memberId));
+    }
+
+    /**
+     * @return Connection between members, null if they are not connected
+     */
+    public ConnectionEdge getConnection(String fromId, String toId) {
+        return read(() -> family.getConnection(family.getPersonById(fromId), family.getPersonById(toId), false));
+    }
+
+    public List<ConnectionEdge> getRelationChain(String fromId, String toId) {
+        return query(fromId, graph -> graph.getShortestRelationChain(graph.getPersonById(fromId),
+                graph.getPersonById(toId)));
+    }
+
+    /**
+     * @param relationLevel Level of relation, null for the level the relation name implies
+     * @param maxHops       Maximum number of connections between member and a relative, null for no bound
+     * @param limit         Maximum number of relatives, null for all
+     */
+    public Collection<Member> getRelativesByRelation(String memberId, String relation, Integer relationLevel,
+                                                     Integer maxHops, Integer limit) {
+        LeveledRelation leveledRelation = parseToLeveledRelation(relation);
+        Relation parsedRelation = leveledRelation.relation();
+        int level = relationLevel == null ? leveledRelation.relationLevel() : relationLevel;
+        return query(memberId, graph -> graph.getAllPersonsByRelation(graph.getPersonById(memberId), parsedRelation,
+                level, orUnbounded(maxHops), orUnbounded(limit)));
+    }
+
+    /**
+     * @param maxHops Maximum number of connections between member and a relative, null for no bound
+     * @param limit   Maximum number of connections, null for all
+     */
+    public Collection<ConnectionEdge> getGeneration(String memberId, int generationLevel, Integer maxHops,
+                                                    Integer limit) {
+        return query(memberId, graph -> graph.getAllMembersFromGenerationLevel(graph.getPersonById(memberId),
+                generationLevel, orUnbounded(maxHops), orUnbounded(limit)));
+    }
+
+    /**
+     * Passes all connections of the member to the action as the search finds them, without collecting them. The family
+     * is locked for reading until all are passed, if it is locked at all, so a slow action holds writers back.
+     */
+    public void forEachConnection(String memberId, Consumer<ConnectionEdge> action) {
+        query(memberId, graph -> {
+            graph.streamAllConnectionsInFamilyForPerson(graph.getPersonById(memberId)).forEach(action);
+            return null;
+        });
+    }
+
+    /**
+     * Passes all relatives of the member by relation to the action as the search finds them, without collecting them
+     *
+     * @param relationLevel Level of relation, null for the level the relation name implies
+     * @param maxHops       Maximum number of connections between member and a relative, null for no bound
+     * @param limit         Maximum number of relatives, null for all
+     */
+    public void forEachRelativeByRelation(String memberId, String relation, Integer relationLevel, Integer maxHops,
+                                          Integer limit, Consumer<Member> action) {
+        LeveledRelation leveledRelation = parseToLeveledRelation(relation);
+        Relation parsedRelation = leveledRelation.relation();
+        int level = relationLevel == null ? leveledRelation.relationLevel() : relationLevel;
+        query(memberId, graph -> {
+            graph.streamAllPersonsByRelation(graph.getPersonById(memberId), parsedRelation, level,
+                    orUnbounded(maxHops), orUnbounded(limit)).forEach(action);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a query of {@link FamilyGraph}, on the shard of the member if the family is sharded
+     */
+    private <T> T query(String memberId, Function<FamilyGraph, T> query) {
+        if (family instanceof ShardedFamily) {
+            return ((ShardedFamily) family).query(family.getPersonById(memberId), query);
+        }
+        if (family instanceof FamilyGraph) {
+            return read(() -> query.apply((FamilyGraph) family));
+        }
+        throw new UnsupportedOperationException(family.getClass().getSimpleName() + " does not support this query");
+    }
+
+    private static int orUnbounded(Integer bound) {
+        return bound == null ? Integer.MAX_VALUE : bound;
+    }
+
+    private <T> T read(Supplier<T> read) {
+        return locked(lock == null ? null : lock.readLock(), read);
+    }
+
+    private static <T> T locked(Lock lock, Supplier<T> action) {
+        if (lock == null) {
+            return action.get();
+        }
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
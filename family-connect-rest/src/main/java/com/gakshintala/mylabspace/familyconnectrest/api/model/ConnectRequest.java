@@ -0,0 +1,15 @@
+package com.gakshintala.mylabspace.familyconnectrest.api.model;
+
+import lombok.Data;
+
+/**
+ * Request to connect two members, who are added to the family if they are new. Relation level defaults to the level
+ * of the relation.
+ */
+@Data
+public class ConnectRequest {
+    private MemberView from;
+    private String relation;
+    private MemberView to;
+    private Integer relationLevel;
+}
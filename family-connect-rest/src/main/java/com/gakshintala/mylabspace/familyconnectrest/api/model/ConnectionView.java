@@ -0,0 +1,20 @@
+package com.gakshintala.mylabspace.familyconnectrest.api.model;
+
+import entities.ConnectionEdge;
+import lombok.Value;
+
+/**
+ * Connection between two members, as sent over REST
+ */
+@Value
+public class ConnectionView {
+    private String fromId;
+    private String relation;
+    private String toId;
+    private int relationLevel;
+
+    public static ConnectionView of(ConnectionEdge connection) {
+        return new ConnectionView(connection.from().getId(), connection.relation().name(), connection.to().getId(),
+                connection.relationLevel());
+    }
+}
@@ -0,0 +1,27 @@
+package com.gakshintala.mylabspace.familyconnectrest.api.model;
+
+import entities.Member;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Member of the family, as sent and received over REST
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemberView {
+    private String id;
+    private String name;
+    private int age;
+    private boolean male;
+
+    public static MemberView of(Member member) {
+        return new MemberView(member.getId(), member.getName(), member.getAge(), member.isGenderMale());
+    }
+
+    public Member toMember() {
+        return new Member(id, name, age, male);
+    }
+}
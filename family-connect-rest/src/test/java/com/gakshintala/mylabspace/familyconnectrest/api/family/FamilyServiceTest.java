@@ -0,0 +1,43 @@
+package com.gakshintala.mylabspace.familyconnectrest.api.family;
+
+import core.FamilyGraph;
+import core.HashGraphStore;
+import core.ShardedFamily;
+import entities.ConnectionEdge;
+import entities.Member;
+import org.junit.jupiter.api.Test;
+import validation.GenderValidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FamilyServiceTest {
+
+    @Test
+    void testQueriesOnFamilyGraphAndShardedFamily() {
+        for (var family : new core.Family[]{new FamilyGraph(new GenderValidator(), new HashGraphStore()),
+                new ShardedFamily(new GenderValidator())}) {
+            var familyService = new FamilyService(family);
+            var rama = new Member("1", "Rama", 80, true);
+            var lava = new Member("2", "Lava", 50, true);
+            var krishna = new Member("3", "Krishna", 70, true);
+            familyService.connect(rama, "FATHER", lava, null);
+            familyService.connect(krishna, "PARENT", new Member("4", "Pradyumna", 40, true), 1);
+
+            assertEquals("PARENT", familyService.getConnection("1", "2").relation().name());
+            assertNull(familyService.getConnection("1", "4"));
+            assertEquals(1, familyService.getRelationChain("1", "2").size());
+            assertEquals(lava, familyService.getRelativesByRelation("1", "SON", null, null, null).iterator().next());
+            assertEquals(1, familyService.getGeneration("1", -1, null, null).size());
+            List<ConnectionEdge> streamed = new ArrayList<>();
+            familyService.forEachConnection("4", streamed::add);
+            assertEquals(List.of(krishna), streamed.stream().map(ConnectionEdge::to).collect(Collectors.toList()));
+            assertThrows(IllegalArgumentException.class, () -> familyService.getConnection("1", "5"));
+        }
+    }
+}